@@ -2,6 +2,7 @@ package com.redhat.gpte.appmod;
 
 import io.vertx.core.AbstractVerticle;
 import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.Router;
 import io.vertx.ext.web.RoutingContext;
@@ -12,12 +13,34 @@ public class HelloHttpVerticle extends AbstractVerticle {
     public void start() {
         Router router = Router.router(vertx);
 
+        // Per client rate limit, with the rate.limit options, e.g. {"rate": 50, "burst": 100}.
+        if (config().containsKey("rate.limit")) {
+            router.route().handler(RateLimitHandler.create(vertx, config().getJsonObject("rate.limit")));
+        }
         router.get("/").handler(this::hello);
         router.get("/:name").handler(this::hello);
         
-        vertx.createHttpServer()
+        vertx.createHttpServer(serverOptions())
             .requestHandler(router::accept)
-            .listen(8080);
+            .listen(8080, ar -> {
+                if (ar.succeeded()) {
+                    StartupReport.listening("hello-microservice", ar.result().actualPort());
+                }
+            });
+    }
+
+    /**
+     * The server options from the {@code http.server} configuration, e.g.
+     * {@code {"reusePort": true, "tcpFastOpen": true, "tcpQuickAck": true}}. These socket options need the native
+     * transport, enabled with {@code -Dvertx.options.preferNativeTransport=true}, and are ignored otherwise.
+     */
+    private HttpServerOptions serverOptions() {
+        HttpServerOptions options = new HttpServerOptions(config().getJsonObject("http.server", new JsonObject()));
+        if (!vertx.isNativeTransportEnabled()
+            && (options.isReusePort() || options.isTcpFastOpen() || options.isTcpQuickAck() || options.isTcpCork())) {
+            System.out.println("Native transport not enabled, reusePort, tcpFastOpen, tcpQuickAck and tcpCork are ignored");
+        }
+        return options;
     }
 
     private void hello(RoutingContext rc) {
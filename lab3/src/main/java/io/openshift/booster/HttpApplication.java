@@ -23,11 +23,28 @@ import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
  */
 public class HttpApplication extends AbstractVerticle {
 
+    /**
+     * Delay during which further configuration changes are coalesced before being applied.
+     */
+    private static final long RELOAD_DEBOUNCE = 500;
+
+    /**
+     * Duration from which a request is logged whatever the sampling rate, in milliseconds.
+     */
+    private static final long DEFAULT_LOG_SLOW_MS = 100;
+
     private ConfigRetriever conf;
-    private String message;
+    /**
+     * The compiled message template, swapped as a whole on configuration changes, {@code null} without config map.
+     */
+    private volatile MessageTemplate template;
+    private String level;
+    private int version;
+    private long pendingReload = -1;
+    private final StringBuilder rendering = new StringBuilder();
+    private LogSampler greetingLogSampler = LogSampler.of(1, DEFAULT_LOG_SLOW_MS);
 
     private static final Logger LOGGER = LogManager.getLogger(HttpApplication.class);
-    private JsonObject config;
 
     @Override
     public void start() {
@@ -38,41 +55,61 @@ public class HttpApplication extends AbstractVerticle {
         router.get("/health").handler(rc -> rc.response().end("OK"));
         router.get("/").handler(StaticHandler.create());
 
-        retrieveMessageTemplateFromConfiguration()
+        retrieveConfiguration()
             .setHandler(ar -> {
-                // Once retrieved, store it and start the HTTP server.
-                message = ar.result();
+                // Once retrieved, compile the template and start the HTTP server.
+                applyConfiguration(ar.result());
                 vertx
                     .createHttpServer()
                     .requestHandler(router::accept)
                     .listen(
                         // Retrieve the port from the configuration,
                         // default to 8080.
-                        config().getInteger("http.port", 8080));
+                        config().getInteger("http.port", 8080),
+                        listen -> {
+                            if (listen.succeeded()) {
+                                StartupReport.listening("configmap-vertx", listen.result().actualPort());
+                            }
+                        });
 
             });
 
-        // It should use the retrieve.listen method, however it does not catch the deletion of the config map.
-        // https://github.com/vert-x3/vertx-config/issues/7
-        vertx.setPeriodic(2000, l -> {
-            conf.getConfig(ar -> {
-                if (ar.succeeded()) {
-                    if (config == null || !config.encode().equals(ar.result().encode())) {
-                        config = ar.result();
-                        LOGGER.info("New configuration retrieved: {}",
-                            ar.result().getString("message"));
-                        message = ar.result().getString("message");
-                        String level = ar.result().getString("level", "INFO");
-                        LOGGER.info("New log level: {}", level);
-                        setLogLevel(level);
-                    }
-                } else {
-                    message = null;
-                }
+        // The config map store is optional, so a deletion is reported as a change to an empty configuration.
+        conf.listen(change -> {
+            if (pendingReload != -1) {
+                vertx.cancelTimer(pendingReload);
+            }
+            JsonObject json = change.getNewConfiguration();
+            pendingReload = vertx.setTimer(RELOAD_DEBOUNCE, l -> {
+                pendingReload = -1;
+                applyConfiguration(json);
             });
         });
     }
 
+    private void applyConfiguration(JsonObject json) {
+        String message = json == null ? null : json.getString("message");
+        MessageTemplate current = template;
+        if (message == null) {
+            template = null;
+        } else if (current == null || !current.format().equals(message)) {
+            template = MessageTemplate.compile(++version, message);
+            LOGGER.info("New configuration retrieved: {} (version {})", message, template.version());
+        }
+
+        // Fraction of the requests logged per route, e.g. {"/api/greeting": 0.1}, the failed and slow ones are always logged
+        JsonObject sampling = json == null ? null : json.getJsonObject("log-sampling");
+        long slowMs = json == null ? DEFAULT_LOG_SLOW_MS : json.getLong("log-slow-ms", DEFAULT_LOG_SLOW_MS);
+        greetingLogSampler = LogSampler.of(sampling == null ? 1 : sampling.getDouble("/api/greeting", 1.0), slowMs);
+
+        String newLevel = json == null ? "INFO" : json.getString("level", "INFO");
+        if (!newLevel.equals(level)) {
+            level = newLevel;
+            LOGGER.info("New log level: {}", level);
+            setLogLevel(level);
+        }
+    }
+
     private void setLogLevel(String level) {
         LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
         Configuration config = ctx.getConfiguration();
@@ -82,10 +119,15 @@ public class HttpApplication extends AbstractVerticle {
     }
 
     private void greeting(RoutingContext rc) {
-        if (message == null) {
+        long start = System.nanoTime();
+        MessageTemplate template = this.template;
+        if (template == null) {
             rc.response().setStatusCode(500)
                 .putHeader(CONTENT_TYPE, "application/json; charset=utf-8")
                 .end(new JsonObject().put("content", "no config map").encode());
+            if (LOGGER.isDebugEnabled() && greetingLogSampler.sample(true, System.nanoTime() - start)) {
+                LOGGER.debug("Failed to reply to request, no config map");
+            }
             return;
         }
         String name = rc.request().getParam("name");
@@ -93,21 +135,17 @@ public class HttpApplication extends AbstractVerticle {
             name = "World";
         }
 
-        LOGGER.debug("Replying to request, parameter={}", name);
-        JsonObject response = new JsonObject()
-            .put("content", String.format(message, name));
-
         rc.response()
             .putHeader(CONTENT_TYPE, "application/json; charset=utf-8")
-            .end(response.encodePrettily());
+            .end(template.render(name, rendering));
+        if (LOGGER.isDebugEnabled() && greetingLogSampler.sample(false, System.nanoTime() - start)) {
+            LOGGER.debug("Replied to request, parameter={}", name);
+        }
     }
 
-    private Future<String> retrieveMessageTemplateFromConfiguration() {
-        Future<String> future = Future.future();
-        conf.getConfig(ar ->
-            future.handle(ar
-                .map(json -> json.getString("message"))
-                .otherwise(t -> null)));
+    private Future<JsonObject> retrieveConfiguration() {
+        Future<JsonObject> future = Future.future();
+        conf.getConfig(ar -> future.handle(ar.otherwise((JsonObject) null)));
         return future;
     }
 
@@ -117,9 +155,11 @@ public class HttpApplication extends AbstractVerticle {
             .setFormat("yaml")
             .setConfig(new JsonObject()
                 .put("name", "app-config")
-                .put("key", "app-config.yml"));
+                .put("key", "app-config.yml")
+                .put("optional", true));
 
         conf = ConfigRetriever.create(vertx, new ConfigRetrieverOptions()
+            .setScanPeriod(2000)
             .addStore(appStore));
     }
 }
\ No newline at end of file
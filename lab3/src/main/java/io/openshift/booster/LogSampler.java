@@ -0,0 +1,51 @@
+package io.openshift.booster;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a request log statement is emitted, so verbose levels can be enabled on busy routes.
+ * <p>
+ * With a rate of {@code 0.1}, one request out of ten is logged. The failed and slow requests are always logged, whatever
+ * the rate. Instances are not thread-safe, they are meant to be used from the verticle event loop.
+ */
+final class LogSampler {
+
+    private final int period;
+    private final long slowNanos;
+    private int count;
+
+    private LogSampler(int period, long slowNanos) {
+        this.period = period;
+        this.slowNanos = slowNanos;
+    }
+
+    /**
+     * @param rate   the fraction of requests to log, between 0 (none) and 1 (all)
+     * @param slowMs the duration from which a request is always logged, in milliseconds
+     */
+    static LogSampler of(double rate, long slowMs) {
+        long slowNanos = TimeUnit.MILLISECONDS.toNanos(slowMs);
+        if (rate <= 0) {
+            return new LogSampler(0, slowNanos);
+        }
+        return new LogSampler((int) Math.max(1, Math.round(1 / Math.min(rate, 1))), slowNanos);
+    }
+
+    /**
+     * @param failed       whether the request failed
+     * @param elapsedNanos the time spent on the request
+     */
+    boolean sample(boolean failed, long elapsedNanos) {
+        if (failed || elapsedNanos >= slowNanos) {
+            return true;
+        }
+        if (period <= 1) {
+            return period == 1;
+        }
+        if (++count >= period) {
+            count = 0;
+            return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,100 @@
+package io.openshift.booster;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A greeting message template, such as {@code "Hello, %s!"}, compiled once per configuration version.
+ * <p>
+ * The template is split into literal segments, already escaped for JSON, and {@code %s} placeholders replaced by the
+ * name. Rendering appends the segments to a reused builder, instead of parsing the format string on each request as
+ * {@link String#format(String, Object...)} does. Templates using other conversions are rendered with
+ * {@link String#format(String, Object...)}.
+ */
+final class MessageTemplate {
+
+    private static final String PREFIX = "{\n  \"content\" : \"";
+    private static final String SUFFIX = "\"\n}";
+
+    private final int version;
+    private final String format;
+    /**
+     * Literal segments, a {@code null} entry stands for the name.
+     */
+    private final String[] segments;
+
+    private MessageTemplate(int version, String format, String[] segments) {
+        this.version = version;
+        this.format = format;
+        this.segments = segments;
+    }
+
+    static MessageTemplate compile(int version, String format) {
+        List<String> segments = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < format.length(); i++) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                continue;
+            }
+            char next = i + 1 < format.length() ? format.charAt(i + 1) : 0;
+            if (next == '%') {
+                literal.append('%');
+            } else if (next == 'n') {
+                literal.append(System.lineSeparator());
+            } else if (next == 's') {
+                segments.add(escape(literal));
+                literal.setLength(0);
+                segments.add(null);
+            } else {
+                // Width, precision, other conversions... keep the String.format semantic.
+                return new MessageTemplate(version, format, null);
+            }
+            i++;
+        }
+        segments.add(escape(literal));
+        return new MessageTemplate(version, format, segments.toArray(new String[segments.size()]));
+    }
+
+    int version() {
+        return version;
+    }
+
+    String format() {
+        return format;
+    }
+
+    /**
+     * Renders the JSON greeting for the given name, formatted as {@code JsonObject#encodePrettily()} would.
+     *
+     * @param name the name, escaped while appended
+     * @param out  a builder owned by the caller and reset by this method
+     */
+    String render(String name, StringBuilder out) {
+        out.setLength(0);
+        out.append(PREFIX);
+        if (segments == null) {
+            out.append(JsonStringEncoder.getInstance().quoteAsString(String.format(format, name)));
+        } else {
+            char[] escapedName = null;
+            for (String segment : segments) {
+                if (segment != null) {
+                    out.append(segment);
+                } else {
+                    if (escapedName == null) {
+                        escapedName = JsonStringEncoder.getInstance().quoteAsString(name);
+                    }
+                    out.append(escapedName);
+                }
+            }
+        }
+        return out.append(SUFFIX).toString();
+    }
+
+    private static String escape(CharSequence literal) {
+        return new String(JsonStringEncoder.getInstance().quoteAsString(literal.toString()));
+    }
+}
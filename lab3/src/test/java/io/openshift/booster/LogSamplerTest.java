@@ -0,0 +1,57 @@
+package io.openshift.booster;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the sampling rate, and that the failed and slow requests are always logged.
+ */
+public class LogSamplerTest {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Test
+    public void testLogsOneRequestPerPeriod() {
+        assertThat(sampled(LogSampler.of(0.1, 100), 100)).isEqualTo(10);
+        assertThat(sampled(LogSampler.of(0.25, 100), 100)).isEqualTo(25);
+        assertThat(sampled(LogSampler.of(0.3, 100), 99)).isEqualTo(33);
+    }
+
+    @Test
+    public void testLogsAllOrNone() {
+        assertThat(sampled(LogSampler.of(1, 100), 50)).isEqualTo(50);
+        assertThat(sampled(LogSampler.of(2, 100), 50)).isEqualTo(50);
+        assertThat(sampled(LogSampler.of(0, 100), 50)).isZero();
+        assertThat(sampled(LogSampler.of(-1, 100), 50)).isZero();
+    }
+
+    @Test
+    public void testAlwaysLogsFailedAndSlowRequests() {
+        LogSampler none = LogSampler.of(0, 100);
+        assertThat(none.sample(true, FAST)).isTrue();
+        assertThat(none.sample(false, SLOW)).isTrue();
+        assertThat(none.sample(false, SLOW - 1)).isFalse();
+
+        // They do not count towards the rate.
+        LogSampler tenth = LogSampler.of(0.1, 100);
+        for (int i = 0; i < 9; i++) {
+            assertThat(tenth.sample(false, FAST)).isFalse();
+            assertThat(tenth.sample(true, SLOW)).isTrue();
+        }
+        assertThat(tenth.sample(false, FAST)).isTrue();
+    }
+
+    private static int sampled(LogSampler sampler, int requests) {
+        int sampled = 0;
+        for (int i = 0; i < requests; i++) {
+            if (sampler.sample(false, FAST)) {
+                sampled++;
+            }
+        }
+        return sampled;
+    }
+}
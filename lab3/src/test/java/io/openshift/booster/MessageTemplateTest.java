@@ -0,0 +1,74 @@
+package io.openshift.booster;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the compiled templates render as {@link String#format(String, Object...)} and
+ * {@link JsonObject#encodePrettily()} would.
+ */
+public class MessageTemplateTest {
+
+    private static final String[] NAMES = {
+        "World", "", "a \"quoted\" name", "back\\slash", "tab\tand\nnewline", "\u0001", "Zoë", "日本語", "emoji \uD83D\uDE00",
+        "%s", "</script>"
+    };
+
+    @Test
+    public void testRendersPlaceholders() {
+        assertRendersAsFormat("Hello, %s!");
+        assertRendersAsFormat("%s");
+        assertRendersAsFormat("Hello, %s from a ConfigMap !");
+        assertRendersAsFormat("No name");
+        assertRendersAsFormat("");
+    }
+
+    @Test
+    public void testRendersEscapes() {
+        assertRendersAsFormat("100%% sure, %s");
+        assertRendersAsFormat("Hello,%n%s%n");
+        assertRendersAsFormat("%%s is not %s");
+    }
+
+    @Test
+    public void testRendersOtherConversionsWithFormat() {
+        assertRendersAsFormat("Hello, %5s!");
+        assertRendersAsFormat("Hello, %-10s|");
+        assertRendersAsFormat("Hello, %.2s!");
+        assertRendersAsFormat("Hello, %S!");
+        assertRendersAsFormat("Hello, %1$s and %1$s!");
+    }
+
+    @Test
+    public void testEscapesTheLiterals() {
+        assertRendersAsFormat("\"Hello\", %s");
+        assertRendersAsFormat("C:\\Users\\%s");
+        assertRendersAsFormat("Grüße, %s ☺");
+        assertRendersAsFormat("\t%s\u0007");
+    }
+
+    @Test
+    public void testReusesTheBuilder() {
+        MessageTemplate template = MessageTemplate.compile(1, "Hello, %s!");
+        StringBuilder out = new StringBuilder("left over");
+        assertThat(template.render("a", out)).isEqualTo(expected("Hello, %s!", "a"));
+        assertThat(template.render("b", out)).isEqualTo(expected("Hello, %s!", "b"));
+        assertThat(template.version()).isEqualTo(1);
+        assertThat(template.format()).isEqualTo("Hello, %s!");
+    }
+
+    private static void assertRendersAsFormat(String format) {
+        MessageTemplate template = MessageTemplate.compile(1, format);
+        for (String name : NAMES) {
+            assertThat(template.render(name, new StringBuilder()))
+                .as("%s with %s", format, name)
+                .isEqualTo(expected(format, name));
+        }
+    }
+
+    private static String expected(String format, String name) {
+        return new JsonObject().put("content", String.format(format, name)).encodePrettily();
+    }
+}
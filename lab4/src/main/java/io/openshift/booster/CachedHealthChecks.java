@@ -0,0 +1,180 @@
+package io.openshift.booster;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.healthchecks.Status;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+/**
+ * Health checks executed in the background on a schedule, each with its own timeout.
+ * <p>
+ * The aggregated outcome is encoded once per run, in the same format as the {@code HealthCheckHandler}, and probes
+ * are answered with this snapshot. The probe rate is therefore independent of the cost of the checks, and probes never
+ * hit the checked dependencies.
+ */
+public class CachedHealthChecks implements Handler<RoutingContext> {
+
+  private static final Snapshot NOT_RUN = new Snapshot(503,
+    new JsonObject().put("checks", new JsonArray()).put("outcome", "DOWN"));
+
+  private final Vertx vertx;
+  private final List<Check> checks = new ArrayList<>();
+  private volatile Snapshot snapshot = NOT_RUN;
+  private boolean running;
+  private boolean pending;
+  private long timer = -1;
+
+  public static CachedHealthChecks create(Vertx vertx) {
+    return new CachedHealthChecks(vertx);
+  }
+
+  private CachedHealthChecks(Vertx vertx) {
+    this.vertx = vertx;
+  }
+
+  /**
+   * Registers a check.
+   *
+   * @param name      the check name
+   * @param timeout   the time in ms after which the check is considered as failed
+   * @param procedure the check, completing the future with a {@link Status}
+   */
+  public CachedHealthChecks register(String name, long timeout, Handler<Future<Status>> procedure) {
+    checks.add(new Check(name, timeout, procedure));
+    return this;
+  }
+
+  /**
+   * Runs the checks now, and then every {@code period} ms.
+   */
+  public CachedHealthChecks start(long period) {
+    refresh();
+    timer = vertx.setPeriodic(period, l -> refresh());
+    return this;
+  }
+
+  public void stop() {
+    if (timer != -1) {
+      vertx.cancelTimer(timer);
+      timer = -1;
+    }
+  }
+
+  /**
+   * @return whether the last run reported all checks as up
+   */
+  public boolean isUp() {
+    return snapshot.status == 200;
+  }
+
+  /**
+   * Runs the checks immediately, or once the run in progress completes, as its checks may have started before the
+   * change to report.
+   */
+  @SuppressWarnings("rawtypes")
+  public void refresh() {
+    if (running) {
+      pending = true;
+      return;
+    }
+    running = true;
+    List<Future> results = new ArrayList<>(checks.size());
+    for (Check check : checks) {
+      results.add(check.run());
+    }
+    CompositeFuture.join(results).setHandler(ar -> {
+      JsonArray array = new JsonArray();
+      boolean up = true;
+      for (int i = 0; i < checks.size(); i++) {
+        Future<Status> result = results.get(i);
+        Status status = result.succeeded() ? result.result() : procedureFailure(result.cause());
+        up &= status.isOk();
+        JsonObject json = new JsonObject()
+          .put("id", checks.get(i).name)
+          .put("status", status.isOk() ? "UP" : "DOWN");
+        if (status.getData() != null) {
+          json.put("data", status.getData());
+        }
+        array.add(json);
+      }
+      snapshot = new Snapshot(up ? 200 : 503,
+        new JsonObject().put("checks", array).put("outcome", up ? "UP" : "DOWN"));
+      running = false;
+      if (pending) {
+        pending = false;
+        refresh();
+      }
+    });
+  }
+
+  @Override
+  public void handle(RoutingContext rc) {
+    Snapshot current = snapshot;
+    rc.response()
+      .setStatusCode(current.status)
+      .putHeader(CONTENT_TYPE, "application/json;charset=UTF-8")
+      .end(current.body);
+  }
+
+  private static Status procedureFailure(Throwable cause) {
+    return Status.KO(new JsonObject().put("procedure-execution-failure", true)
+      .put("cause", cause.getMessage()));
+  }
+
+  private class Check {
+    private final String name;
+    private final long timeout;
+    private final Handler<Future<Status>> procedure;
+
+    private Check(String name, long timeout, Handler<Future<Status>> procedure) {
+      this.name = name;
+      this.timeout = timeout;
+      this.procedure = procedure;
+    }
+
+    private Future<Status> run() {
+      Future<Status> result = Future.future();
+      long timeoutTimer = vertx.setTimer(timeout,
+        l -> result.tryComplete(Status.KO(new JsonObject().put("cause", "timeout"))));
+      // A separate future, so a procedure completing after its timeout does not fail.
+      Future<Status> procedureResult = Future.future();
+      procedureResult.setHandler(ar -> {
+        vertx.cancelTimer(timeoutTimer);
+        if (ar.succeeded()) {
+          result.tryComplete(ar.result());
+        } else {
+          result.tryFail(ar.cause());
+        }
+      });
+      try {
+        procedure.handle(procedureResult);
+      } catch (Exception e) {
+        procedureResult.tryFail(e);
+      }
+      return result;
+    }
+  }
+
+  private static class Snapshot {
+    private final int status;
+    /**
+     * Written as is to each probe, Vert.x writes a duplicate of the underlying buffer.
+     */
+    private final Buffer body;
+
+    private Snapshot(int status, JsonObject json) {
+      this.status = status;
+      this.body = Buffer.buffer(json.encode());
+    }
+  }
+}
@@ -0,0 +1,132 @@
+package io.openshift.booster;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpHeaders;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.concurrent.TimeUnit;
+
+import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
+
+/**
+ * Drains the HTTP server before closing it, so a rolling deploy does not cut in-flight requests.
+ * <p>
+ * Installed as the first route handler, it counts the in-flight requests. Once {@link #drain(HttpServer)} is called:
+ * <ol>
+ * <li>{@link #isDraining()} becomes {@code true}, to be reported by the readiness check,</li>
+ * <li>responses get a {@code Connection: close} header so clients stop reusing their keep-alive connections,</li>
+ * <li>requests keep being served during the propagation delay, while the readiness change reaches the routers,</li>
+ * <li>the in-flight requests are then given up to the grace period to complete,</li>
+ * <li>and the server is closed, dropping the requests still in flight.</li>
+ * </ol>
+ * Must be used from the verticle event loop.
+ */
+public class ConnectionDrain implements Handler<RoutingContext> {
+
+  private final Vertx vertx;
+  private final long propagationDelay;
+  private final long gracePeriod;
+
+  private int inFlight;
+  private HttpServer server;
+  private Future<Void> drained;
+  private boolean waitingForInFlight;
+  private long graceTimer = -1;
+  private long drainStart;
+  private long drainDuration = -1;
+  private int dropped;
+
+  /**
+   * @param propagationDelay the time in ms during which requests are still accepted once the drain started
+   * @param gracePeriod      the maximum time in ms given to in-flight requests after the propagation delay
+   */
+  public static ConnectionDrain create(Vertx vertx, long propagationDelay, long gracePeriod) {
+    return new ConnectionDrain(vertx, propagationDelay, gracePeriod);
+  }
+
+  private ConnectionDrain(Vertx vertx, long propagationDelay, long gracePeriod) {
+    this.vertx = vertx;
+    this.propagationDelay = propagationDelay;
+    this.gracePeriod = gracePeriod;
+  }
+
+  @Override
+  public void handle(RoutingContext rc) {
+    inFlight++;
+    boolean[] completed = {false};
+    Handler<Void> onCompleted = v -> {
+      if (!completed[0]) {
+        completed[0] = true;
+        inFlight--;
+        if (waitingForInFlight && inFlight == 0) {
+          closeServer();
+        }
+      }
+    };
+    rc.addBodyEndHandler(onCompleted);
+    rc.response().closeHandler(onCompleted);
+    if (drained != null) {
+      rc.response().putHeader(HttpHeaders.CONNECTION, HttpHeaders.CLOSE);
+    }
+    rc.next();
+  }
+
+  public boolean isDraining() {
+    return drained != null;
+  }
+
+  /**
+   * Starts draining, subsequent calls return the same future.
+   *
+   * @return a future completed when the server is closed
+   */
+  public Future<Void> drain(HttpServer server) {
+    if (drained != null) {
+      return drained;
+    }
+    this.server = server;
+    drained = Future.future();
+    drainStart = System.nanoTime();
+    vertx.setTimer(Math.max(1, propagationDelay), l -> {
+      if (inFlight == 0) {
+        closeServer();
+        return;
+      }
+      waitingForInFlight = true;
+      graceTimer = vertx.setTimer(Math.max(1, gracePeriod), t -> closeServer());
+    });
+    return drained;
+  }
+
+  private void closeServer() {
+    if (drainDuration != -1) {
+      return;
+    }
+    waitingForInFlight = false;
+    if (graceTimer != -1) {
+      vertx.cancelTimer(graceTimer);
+    }
+    dropped = inFlight;
+    drainDuration = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainStart);
+    System.out.println("HTTP server drained in " + drainDuration + "ms, " + dropped + " request(s) dropped");
+    server.close(drained.completer());
+  }
+
+  /**
+   * Exposes the drain metrics.
+   */
+  public void metrics(RoutingContext rc) {
+    rc.response()
+      .putHeader(CONTENT_TYPE, "application/json; charset=utf-8")
+      .end(new JsonObject()
+        .put("draining", isDraining())
+        .put("inFlight", inFlight)
+        .put("drainDuration", drainDuration)
+        .put("droppedRequests", dropped)
+        .encodePrettily());
+  }
+}
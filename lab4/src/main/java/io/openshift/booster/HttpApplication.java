@@ -18,18 +18,36 @@ public class HttpApplication extends AbstractVerticle {
 
   private boolean online = false;
   private HttpServer server;
+  private CachedHealthChecks readiness;
+  private ConnectionDrain drain;
+  /**
+   * Summary of the warm-up, {@code null} while it is running.
+   */
+  private JsonObject warmUp;
 
   @Override
   public void start(Future<Void> future) {
     Router router = Router.router(vertx);
 
+    drain = ConnectionDrain.create(vertx,
+        config().getLong("drain.propagation-delay", 5000L),
+        config().getLong("drain.grace-period", 10000L));
+    router.route().handler(drain);
+
     HealthCheckHandler healthCheckHandler = HealthCheckHandler.create(vertx)
         .register("server-online", fut -> fut.complete(online ? Status.OK() : Status.KO()));
 
+    // Readiness probes are answered from the last run of the checks, add dependency checks here.
+    readiness = CachedHealthChecks.create(vertx)
+        .register("server-online", 100, fut -> fut.complete(online ? Status.OK() : Status.KO()))
+        .register("not-draining", 100, fut -> fut.complete(drain.isDraining() ? Status.KO() : Status.OK()))
+        .register("warmed-up", 100, fut -> fut.complete(warmUp == null ? Status.KO() : Status.OK(warmUp)));
+
     router.get("/api/greeting").handler(this::greeting);
     router.get("/api/killme").handler(this::killMe);
-    router.get("/api/health/readiness").handler(rc -> rc.response().end("OK"));
+    router.get("/api/health/readiness").handler(readiness);
     router.get("/api/health/liveness").handler(healthCheckHandler);
+    router.get("/api/health/drain").handler(drain::metrics);
     router.get("/").handler(StaticHandler.create());
 
     server = vertx
@@ -38,13 +56,46 @@ public class HttpApplication extends AbstractVerticle {
         .listen(
             config().getInteger("http.port", 8080), ar -> {
               online = ar.succeeded();
+              if (ar.succeeded()) {
+                StartupReport.listening("health-check-vertx", ar.result().actualPort());
+                warmUp();
+              }
+              readiness.start(config().getLong("health.period", 1000L));
               future.handle(ar.mapEmpty());
             });
   }
 
+  /**
+   * Exercises the routes until the throughput stabilizes, readiness stays down meanwhile. Disabled by default.
+   */
+  private void warmUp() {
+    if (!config().getBoolean("warmup.enabled", false)) {
+      warmUp = new JsonObject().put("rounds", 0).put("requests", 0);
+      return;
+    }
+    WarmUp.create(vertx, server.actualPort())
+        .addRequest("/api/greeting")
+        .addRequest("/api/greeting?name=Warm-up")
+        .setTimeBudget(config().getLong("warmup.time-budget", 30000L))
+        .run()
+        .setHandler(ar -> {
+          warmUp = ar.result();
+          System.out.println("Warm-up completed: " + warmUp.encode());
+          readiness.refresh();
+        });
+  }
+
+  @Override
+  public void stop(Future<Void> future) {
+    drain.drain(server).setHandler(future);
+    readiness.refresh();
+  }
+
   private void killMe(RoutingContext rc) {
     rc.response().end("Stopping HTTP server, Bye bye world !");
     online = false;
+    drain.drain(server);
+    readiness.refresh();
   }
 
   private void greeting(RoutingContext rc) {
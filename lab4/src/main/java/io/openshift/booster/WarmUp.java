@@ -0,0 +1,210 @@
+package io.openshift.booster;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends synthetic requests to the application routes over the loopback interface, until the throughput stabilizes or
+ * the time budget runs out. A request failing or not answered in time counts as completed, so that a broken route
+ * cannot stall the warm-up.
+ * <p>
+ * Meant to run before the application reports ready, so the first client requests do not pay for the interpreted
+ * code, cold caches and connection pools.
+ */
+public class WarmUp {
+
+  private static final int STABLE_ROUNDS = 3;
+
+  private final Vertx vertx;
+  private final int port;
+  private final List<String> uris = new ArrayList<>();
+  private long timeBudget = 30000;
+  private long requestTimeout = 5000;
+  private int batchSize = 200;
+  private int concurrency = 8;
+  private double tolerance = 0.1;
+
+  private HttpClient client;
+  private long start;
+  private long budgetTimer;
+  // Set before closing the client, whose closing fails the requests in flight.
+  private boolean finished;
+  private int rounds;
+  private long requests;
+  private final double[] throughputs = new double[STABLE_ROUNDS];
+
+  public static WarmUp create(Vertx vertx, int port) {
+    return new WarmUp(vertx, port);
+  }
+
+  private WarmUp(Vertx vertx, int port) {
+    this.vertx = vertx;
+    this.port = port;
+  }
+
+  /**
+   * Adds a GET request to the warm-up rounds, requests must not have side effects.
+   */
+  public WarmUp addRequest(String uri) {
+    uris.add(uri);
+    return this;
+  }
+
+  /**
+   * @param timeBudget the maximum duration of the warm-up in ms
+   */
+  public WarmUp setTimeBudget(long timeBudget) {
+    this.timeBudget = timeBudget;
+    return this;
+  }
+
+  /**
+   * @param requestTimeout the time in ms after which a request without response is considered as completed
+   */
+  public WarmUp setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+    return this;
+  }
+
+  /**
+   * @param batchSize the number of requests of a round, the throughput is measured per round
+   */
+  public WarmUp setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * @param concurrency the number of requests in flight
+   */
+  public WarmUp setConcurrency(int concurrency) {
+    this.concurrency = concurrency;
+    return this;
+  }
+
+  /**
+   * @param tolerance the maximum relative throughput variation over the last rounds to consider it stable
+   */
+  public WarmUp setTolerance(double tolerance) {
+    this.tolerance = tolerance;
+    return this;
+  }
+
+  /**
+   * Runs the warm-up.
+   *
+   * @return a future completed with a summary of the warm-up, it never fails
+   */
+  public Future<JsonObject> run() {
+    Future<JsonObject> done = Future.future();
+    if (uris.isEmpty()) {
+      done.complete(new JsonObject().put("rounds", 0).put("requests", 0));
+      return done;
+    }
+    client = vertx.createHttpClient(new HttpClientOptions()
+      .setDefaultHost("localhost")
+      .setDefaultPort(port)
+      .setMaxPoolSize(concurrency));
+    start = System.nanoTime();
+    budgetTimer = vertx.setTimer(timeBudget, l -> complete(done, false));
+    round(done);
+    return done;
+  }
+
+  private void round(Future<JsonObject> done) {
+    long roundStart = System.nanoTime();
+    int[] sent = {0};
+    int[] completed = {0};
+    Runnable[] next = new Runnable[1];
+    next[0] = () -> {
+      if (finished) {
+        return;
+      }
+      if (completed[0] == batchSize) {
+        onRoundCompleted(done, System.nanoTime() - roundStart);
+        return;
+      }
+      if (sent[0] < batchSize) {
+        String uri = uris.get(sent[0]++ % uris.size());
+        // The response may end, fail or time out, the request counts once whichever comes first.
+        boolean[] counted = {false};
+        Handler<Void> onCompleted = v -> {
+          if (!counted[0]) {
+            counted[0] = true;
+            completed[0]++;
+            requests++;
+            next[0].run();
+          }
+        };
+        try {
+          client.get(uri, resp -> resp
+            .exceptionHandler(t -> onCompleted.handle(null))
+            .bodyHandler(body -> onCompleted.handle(null)))
+            .setTimeout(requestTimeout)
+            .exceptionHandler(t -> onCompleted.handle(null))
+            .end();
+        } catch (IllegalStateException e) {
+          // The client was closed with the Vert.x instance, the warm-up is over.
+          finished = true;
+          done.tryComplete(summary(false));
+        }
+      }
+    };
+    for (int i = 0; i < Math.min(concurrency, batchSize); i++) {
+      next[0].run();
+    }
+  }
+
+  private void onRoundCompleted(Future<JsonObject> done, long roundDuration) {
+    throughputs[rounds++ % STABLE_ROUNDS] = batchSize * 1e9 / roundDuration;
+    if (isStable()) {
+      complete(done, true);
+    } else {
+      round(done);
+    }
+  }
+
+  /**
+   * Completes the warm-up once stable, or when the time budget runs out, possibly in the middle of a round.
+   */
+  private void complete(Future<JsonObject> done, boolean stable) {
+    if (finished) {
+      return;
+    }
+    finished = true;
+    JsonObject summary = summary(stable);
+    vertx.cancelTimer(budgetTimer);
+    client.close();
+    done.complete(summary);
+  }
+
+  private JsonObject summary(boolean stable) {
+    return new JsonObject()
+      .put("rounds", rounds)
+      .put("requests", requests)
+      .put("duration", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start))
+      .put("throughput", rounds == 0 ? 0 : Math.round(throughputs[(rounds - 1) % STABLE_ROUNDS]))
+      .put("stable", stable);
+  }
+
+  private boolean isStable() {
+    if (rounds < STABLE_ROUNDS) {
+      return false;
+    }
+    double min = Double.MAX_VALUE;
+    double max = 0;
+    for (double throughput : throughputs) {
+      min = Math.min(min, throughput);
+      max = Math.max(max, throughput);
+    }
+    return max <= min * (1 + tolerance);
+  }
+}
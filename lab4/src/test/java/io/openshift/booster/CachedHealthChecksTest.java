@@ -0,0 +1,62 @@
+package io.openshift.booster;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.healthchecks.Status;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(VertxUnitRunner.class)
+public class CachedHealthChecksTest {
+
+    private Vertx vertx;
+
+    @Before
+    public void before(TestContext context) {
+        vertx = Vertx.vertx();
+        vertx.exceptionHandler(context.exceptionHandler());
+    }
+
+    @After
+    public void after(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void rerunsARefreshRequestedDuringARun(TestContext context) {
+        Async async = context.async();
+        AtomicBoolean up = new AtomicBoolean();
+        AtomicInteger runs = new AtomicInteger();
+        vertx.runOnContext(v -> {
+            CachedHealthChecks checks = CachedHealthChecks.create(vertx)
+                .register("slow", 1000, future -> {
+                    runs.incrementAndGet();
+                    // Reads the state when starting, as a real check would.
+                    Status status = up.get() ? Status.OK() : Status.KO();
+                    vertx.setTimer(200, l -> future.complete(status));
+                });
+            checks.refresh();
+            vertx.setTimer(50, l -> {
+                up.set(true);
+                checks.refresh();
+                checks.refresh();
+            });
+            vertx.setPeriodic(50, id -> {
+                if (checks.isUp()) {
+                    vertx.cancelTimer(id);
+                    assertThat(runs.get()).isEqualTo(2);
+                    async.complete();
+                }
+            });
+        });
+    }
+}
@@ -1,6 +1,8 @@
 package io.openshift.booster;
 
+import io.vertx.core.DeploymentOptions;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
 import io.vertx.ext.unit.Async;
 import io.vertx.ext.unit.TestContext;
 import io.vertx.ext.unit.junit.VertxUnitRunner;
@@ -22,7 +24,9 @@ public class HttpApplicationTest {
     public void before(TestContext context) {
         vertx = Vertx.vertx();
         vertx.exceptionHandler(context.exceptionHandler());
-        vertx.deployVerticle(HttpApplication.class.getName(), context.asyncAssertSuccess());
+        vertx.deployVerticle(HttpApplication.class.getName(),
+            new DeploymentOptions().setConfig(new JsonObject().put("drain.propagation-delay", 500)),
+            context.asyncAssertSuccess());
         client = WebClient.create(vertx);
     }
 
@@ -73,6 +77,55 @@ public class HttpApplicationTest {
             });
     }
 
+    @Test
+    public void callReadinessCheck(TestContext context) {
+        Async async = context.async();
+        client.get(8080, "localhost", "/api/health/readiness")
+            .send(resp -> {
+                assertThat(resp.succeeded()).isTrue();
+                assertThat(resp.result().statusCode()).isEqualTo(200);
+                assertThat(resp.result().bodyAsJsonObject().getString("outcome")).isEqualTo("UP");
+
+                client.get(8080, "localhost", "/api/killme")
+                    .send(resp2 -> {
+                        assertThat(resp2.succeeded()).isTrue();
+
+                        // Served from the snapshot refreshed by killme
+                        client.get(8080, "localhost", "/api/health/readiness")
+                            .send(ar -> {
+                                assertThat(ar.succeeded()).isTrue();
+                                assertThat(ar.result().statusCode()).isEqualTo(503);
+                                assertThat(ar.result().bodyAsJsonObject().getString("outcome")).isEqualTo("DOWN");
+                                async.complete();
+                            });
+                    });
+            });
+    }
+
+    @Test
+    public void callKillMeDrainsConnections(TestContext context) {
+        Async async = context.async();
+        client.get(8080, "localhost", "/api/killme")
+            .send(resp -> {
+                assertThat(resp.succeeded()).isTrue();
+
+                // Still served during the propagation delay, but the connection is not reused
+                client.get(8080, "localhost", "/api/health/drain")
+                    .send(ar -> {
+                        assertThat(ar.succeeded()).isTrue();
+                        assertThat(ar.result().getHeader("Connection")).isEqualTo("close");
+                        assertThat(ar.result().bodyAsJsonObject().getBoolean("draining")).isTrue();
+
+                        // Closed after the propagation delay
+                        vertx.setTimer(1000, l -> client.get(8080, "localhost", "/api/health/drain")
+                            .send(ar2 -> {
+                                assertThat(ar2.failed()).isTrue();
+                                async.complete();
+                            }));
+                    });
+            });
+    }
+
     @Test
     public void callKillMe(TestContext context) {
         Async async = context.async();
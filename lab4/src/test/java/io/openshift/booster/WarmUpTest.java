@@ -0,0 +1,81 @@
+package io.openshift.booster;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.ext.web.client.WebClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(VertxUnitRunner.class)
+public class WarmUpTest {
+
+    private Vertx vertx;
+    private WebClient client;
+
+    @Before
+    public void before(TestContext context) {
+        vertx = Vertx.vertx();
+        vertx.exceptionHandler(context.exceptionHandler());
+        vertx.deployVerticle(HttpApplication.class.getName(),
+            new DeploymentOptions().setConfig(new JsonObject()
+                .put("warmup.enabled", true)
+                .put("warmup.time-budget", 2000)
+                .put("drain.propagation-delay", 0)),
+            context.asyncAssertSuccess());
+        client = WebClient.create(vertx);
+    }
+
+    @After
+    public void after(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Test
+    public void readyOnceWarmedUp(TestContext context) {
+        Async async = context.async();
+        vertx.setPeriodic(100, id -> client.get(8080, "localhost", "/api/health/readiness")
+            .send(resp -> {
+                assertThat(resp.succeeded()).isTrue();
+                if (resp.result().statusCode() == 200) {
+                    vertx.cancelTimer(id);
+                    JsonObject check = resp.result().bodyAsJsonObject().getJsonArray("checks").getJsonObject(2);
+                    assertThat(check.getString("id")).isEqualTo("warmed-up");
+                    assertThat(check.getJsonObject("data").getLong("requests")).isPositive();
+                    async.complete();
+                }
+            }));
+    }
+
+    @Test
+    public void stopsAtTheTimeBudgetWhenRequestsHang(TestContext context) {
+        Async async = context.async();
+        // Never answers, each request times out, and the budget runs out with requests in flight: closing the client
+        // fails them, which must not send more, the vertx exception handler fails the test otherwise.
+        vertx.createHttpServer().requestHandler(request -> { }).listen(8081, context.asyncAssertSuccess(server -> {
+            long start = System.nanoTime();
+            WarmUp.create(vertx, 8081)
+                .addRequest("/")
+                .setTimeBudget(500)
+                .setRequestTimeout(200)
+                .run()
+                .setHandler(context.asyncAssertSuccess(summary -> {
+                    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(2000);
+                    assertThat(summary.getInteger("rounds")).isZero();
+                    assertThat(summary.getLong("requests")).isPositive();
+                    assertThat(summary.getBoolean("stable")).isFalse();
+                    // Leaves the time to fail the closed requests.
+                    vertx.setTimer(200, l -> async.complete());
+                }));
+        }));
+    }
+}
@@ -0,0 +1,25 @@
+package io.openshift.booster;
+
+/**
+ * The reply of the name service when called over the event bus.
+ * <p>
+ * Instances are immutable, so the {@link NameReplyCodec} passes them by reference when the sender and the name service
+ * run in the same Vert.x instance.
+ */
+public final class NameReply {
+
+    /**
+     * The default event bus address of the name service.
+     */
+    public static final String ADDRESS = "name-service";
+
+    private final String name;
+
+    public NameReply(String name) {
+        this.name = name;
+    }
+
+    public String name() {
+        return name;
+    }
+}
@@ -0,0 +1,54 @@
+package io.openshift.booster;
+
+import java.nio.charset.StandardCharsets;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.eventbus.MessageCodec;
+
+/**
+ * Encodes a {@link NameReply} as a length-prefixed UTF-8 string when it crosses the cluster, and does not copy it at
+ * all for local delivery.
+ */
+public class NameReplyCodec implements MessageCodec<NameReply, NameReply> {
+
+    /**
+     * Registers the codec as default codec for {@link NameReply}, unless another verticle of the same Vert.x instance
+     * already did it.
+     */
+    public static void register(EventBus eventBus) {
+        try {
+            eventBus.registerDefaultCodec(NameReply.class, new NameReplyCodec());
+        } catch (IllegalStateException e) {
+            // Already registered, the greeting and name services are co-deployed.
+        }
+    }
+
+    @Override
+    public void encodeToWire(Buffer buffer, NameReply reply) {
+        byte[] bytes = reply.name().getBytes(StandardCharsets.UTF_8);
+        buffer.appendInt(bytes.length).appendBytes(bytes);
+    }
+
+    @Override
+    public NameReply decodeFromWire(int pos, Buffer buffer) {
+        int length = buffer.getInt(pos);
+        int start = pos + 4;
+        return new NameReply(buffer.getString(start, start + length, "UTF-8"));
+    }
+
+    @Override
+    public NameReply transform(NameReply reply) {
+        return reply;
+    }
+
+    @Override
+    public String name() {
+        return "name-reply";
+    }
+
+    @Override
+    public byte systemCodecID() {
+        return -1;
+    }
+}
@@ -0,0 +1,178 @@
+package io.openshift.booster;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * A timed operation of a trace, created by a {@link Tracer}. The spans of the traces which are neither sampled nor
+ * recorded for the tail sampling are {@link #NOOP}, they cost nothing.
+ */
+public class Span {
+
+    /**
+     * The W3C Trace Context header, {@code 00-<trace id>-<parent span id>-<flags>}.
+     */
+    public static final String TRACEPARENT = "traceparent";
+
+    /**
+     * The span which records nothing.
+     */
+    public static final Span NOOP = new Span();
+
+    static final String KEY = Span.class.getName();
+
+    private final Tracer.Trace trace;
+    private final String spanId;
+    private final String parentId;
+    private final String name;
+    private final String kind;
+    private final long startMicros;
+    private final long startNanos;
+    // Guarded by this.
+    private Map<String, Object> tags;
+    private boolean error;
+    private long durationNanos = -1;
+
+    private Span() {
+        this(null, null, null, null);
+    }
+
+    Span(Tracer.Trace trace, String parentId, String name, String kind) {
+        this.trace = trace;
+        this.spanId = trace == null ? null : newId();
+        this.parentId = parentId;
+        this.name = name;
+        this.kind = kind;
+        this.startMicros = trace == null ? 0 : System.currentTimeMillis() * 1000;
+        this.startNanos = trace == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * @return the span of the request, {@link #NOOP} when not traced
+     */
+    public static Span of(RoutingContext rc) {
+        Span span = rc.get(KEY);
+        return span == null ? NOOP : span;
+    }
+
+    /**
+     * @return a new span within this one
+     */
+    public Span child(String name) {
+        return trace == null ? NOOP : new Span(trace, spanId, name, null);
+    }
+
+    /**
+     * @return a new span for a call to another service, which continues the trace with the {@link #traceparent()} of
+     * the span
+     */
+    public Span client(String name) {
+        return trace == null ? NOOP : new Span(trace, spanId, name, "CLIENT");
+    }
+
+    public Span tag(String key, Object value) {
+        if (trace != null) {
+            synchronized (this) {
+                if (tags == null) {
+                    tags = new LinkedHashMap<>();
+                }
+                tags.put(key, String.valueOf(value));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Marks the span as failed, its trace is then kept by the tail sampling.
+     */
+    public Span error(Throwable cause) {
+        return error(String.valueOf(cause.getMessage()));
+    }
+
+    public Span error(String message) {
+        if (trace != null) {
+            tag("error", message);
+            synchronized (this) {
+                error = true;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span, only the first call counts.
+     */
+    public void end() {
+        if (trace == null) {
+            return;
+        }
+        synchronized (this) {
+            if (durationNanos >= 0) {
+                return;
+            }
+            durationNanos = System.nanoTime() - startNanos;
+        }
+        trace.ended(this);
+    }
+
+    /**
+     * @return the {@code traceparent} header of the calls made within this span, {@code null} when not traced
+     */
+    public String traceparent() {
+        if (trace == null) {
+            return null;
+        }
+        return "00-" + trace.traceId + "-" + spanId + (trace.sampled ? "-01" : "-00");
+    }
+
+    synchronized boolean failed() {
+        return error;
+    }
+
+    synchronized long durationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return the span in the Zipkin v2 JSON format
+     */
+    synchronized JsonObject toJson(String service) {
+        JsonObject json = new JsonObject()
+            .put("traceId", trace.traceId)
+            .put("id", spanId)
+            .put("name", name)
+            .put("timestamp", startMicros)
+            .put("duration", Math.max(1, durationNanos / 1000))
+            .put("localEndpoint", new JsonObject().put("serviceName", service));
+        if (parentId != null) {
+            json.put("parentId", parentId);
+        }
+        if (kind != null) {
+            json.put("kind", kind);
+        }
+        if (tags != null) {
+            json.put("tags", new JsonObject(new LinkedHashMap<>(tags)));
+        }
+        return json;
+    }
+
+    /**
+     * @return 16 random hex digits, not all zeros
+     */
+    static String newId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return hex(id);
+    }
+
+    static String hex(long value) {
+        String hex = Long.toHexString(value);
+        return "0000000000000000".substring(hex.length()) + hex;
+    }
+}
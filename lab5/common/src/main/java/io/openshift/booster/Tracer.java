@@ -0,0 +1,326 @@
+package io.openshift.booster;
+
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.RoutingContext;
+
+/**
+ * Traces the requests across the services, with the W3C {@code traceparent} header, and exports their spans in the
+ * Zipkin v2 JSON format.
+ * <p>
+ * A trace is sampled by the service receiving it first, with the {@code sampleRate} probability, and the services it
+ * calls follow this decision. The other traces are recorded, and kept when they fail or when their root span lasts at
+ * least {@code slowThreshold} ms. The services called by such a trace decide on their own spans.
+ * <p>
+ * The kept spans are queued, up to {@code maxQueue}, and written every {@code flushInterval} ms by batches of
+ * {@code batchSize}, off the event loop, appended as lines to {@code exportPath}, or posted to a collector at
+ * {@code exportUrl}, e.g. {@code http://localhost:9411/api/v2/spans}.
+ * <p>
+ * Without options, the tracer and its spans do nothing.
+ */
+public class Tracer implements Handler<RoutingContext> {
+
+    public static final Tracer NOOP = new Tracer();
+
+    private final Vertx vertx;
+    private final String service;
+    private final double sampleRate;
+    private final long slowNanos;
+    private final boolean sampleErrors;
+    private final int batchSize;
+    private final int maxQueue;
+    private final String exportPath;
+    private final URL exportUrl;
+    private final HttpClient http;
+
+    private final Queue<Span> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private Tracer() {
+        this.vertx = null;
+        this.service = null;
+        this.sampleRate = 0;
+        this.slowNanos = 0;
+        this.sampleErrors = false;
+        this.batchSize = 0;
+        this.maxQueue = 0;
+        this.exportPath = null;
+        this.exportUrl = null;
+        this.http = null;
+    }
+
+    private Tracer(Vertx vertx, String service, JsonObject options) {
+        this.vertx = vertx;
+        this.service = service;
+        this.sampleRate = options.getDouble("sampleRate", 0.01);
+        this.slowNanos = TimeUnit.MILLISECONDS.toNanos(options.getLong("slowThreshold", 1000L));
+        this.sampleErrors = options.getBoolean("sampleErrors", true);
+        this.batchSize = options.getInteger("batchSize", 512);
+        this.maxQueue = options.getInteger("maxQueue", 8192);
+        if (options.containsKey("exportUrl")) {
+            try {
+                this.exportUrl = new URL(options.getString("exportUrl"));
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid export URL: " + options.getString("exportUrl"), e);
+            }
+            this.exportPath = null;
+            this.http = vertx.createHttpClient();
+        } else {
+            this.exportUrl = null;
+            this.exportPath = options.getString("exportPath", service + "-spans.ndjson");
+            this.http = null;
+        }
+        vertx.setPeriodic(options.getLong("flushInterval", 1000L), id -> flush());
+    }
+
+    /**
+     * @param options the {@code tracing} configuration, {@code null} to trace nothing
+     * @return a tracer flushing its spans on a timer of the calling context
+     */
+    public static Tracer create(Vertx vertx, String service, JsonObject options) {
+        return options == null ? NOOP : new Tracer(vertx, service, options);
+    }
+
+    public boolean enabled() {
+        return this != NOOP;
+    }
+
+    /**
+     * Starts the span of a request or message received from another service, or from a client.
+     *
+     * @param kind {@code SERVER} or {@code CONSUMER}
+     * @param traceparent the {@code traceparent} header received, may be {@code null} or invalid
+     * @return the root span of the trace in this service, {@link Span#NOOP} when neither sampled nor recorded
+     */
+    public Span receive(String kind, String name, String traceparent) {
+        if (this == NOOP) {
+            return Span.NOOP;
+        }
+        String traceId;
+        String parentId;
+        boolean sampled;
+        if (isValid(traceparent)) {
+            traceId = traceparent.substring(3, 35);
+            parentId = traceparent.substring(36, 52);
+            sampled = (Character.digit(traceparent.charAt(54), 16) & 1) != 0;
+        } else {
+            traceId = Span.newId() + Span.newId();
+            parentId = null;
+            sampled = sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate;
+        }
+        if (!sampled && slowNanos <= 0 && !sampleErrors) {
+            return Span.NOOP;
+        }
+        Trace trace = new Trace(this, traceId, sampled);
+        trace.root = new Span(trace, parentId, name, kind);
+        return trace.root;
+    }
+
+    /**
+     * Spans the request, with its status, as the parent of the spans of its handlers, see {@link Span#of}.
+     */
+    @Override
+    public void handle(RoutingContext rc) {
+        Span span = receive("SERVER", rc.request().method() + " " + rc.request().path(),
+            rc.request().getHeader(Span.TRACEPARENT));
+        if (span != Span.NOOP) {
+            rc.put(Span.KEY, span);
+            rc.addBodyEndHandler(v -> {
+                int status = rc.response().getStatusCode();
+                span.tag("http.status_code", status);
+                if (status >= 500) {
+                    span.error("HTTP " + status);
+                }
+                span.end();
+            });
+        }
+        rc.next();
+    }
+
+    /**
+     * @return the number of spans dropped as the queue was full
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    private static boolean isValid(String traceparent) {
+        if (traceparent == null || traceparent.length() < 55 || !traceparent.startsWith("00-")
+            || traceparent.charAt(35) != '-' || traceparent.charAt(52) != '-') {
+            return false;
+        }
+        String traceId = traceparent.substring(3, 35);
+        String parentId = traceparent.substring(36, 52);
+        return isHex(traceId) && isHex(parentId) && isHex(traceparent.substring(53, 55))
+            && !traceId.equals("00000000000000000000000000000000") && !parentId.equals("0000000000000000");
+    }
+
+    private static boolean isHex(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean keep(Span root, List<Span> spans) {
+        if (slowNanos > 0 && root.durationNanos() >= slowNanos) {
+            return true;
+        }
+        if (sampleErrors) {
+            for (Span span : spans) {
+                if (span.failed()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void export(List<Span> spans) {
+        for (Span span : spans) {
+            if (queued.incrementAndGet() > maxQueue) {
+                queued.decrementAndGet();
+                dropped.incrementAndGet();
+            } else {
+                queue.add(span);
+            }
+        }
+        if (queued.get() >= batchSize) {
+            vertx.runOnContext(v -> flush());
+        }
+    }
+
+    /**
+     * Writes a batch of spans, converted and written on a worker thread, then the next batch if any.
+     */
+    private void flush() {
+        if (queued.get() == 0 || !flushing.compareAndSet(false, true)) {
+            return;
+        }
+        List<Span> batch = new ArrayList<>();
+        Span span;
+        while (batch.size() < batchSize && (span = queue.poll()) != null) {
+            batch.add(span);
+        }
+        queued.addAndGet(-batch.size());
+        vertx.<Buffer>executeBlocking(future -> {
+            JsonArray spans = new JsonArray();
+            batch.forEach(s -> spans.add(s.toJson(service)));
+            if (exportUrl != null) {
+                future.complete(spans.toBuffer());
+                return;
+            }
+            StringBuilder lines = new StringBuilder();
+            for (Object json : spans) {
+                lines.append(((JsonObject) json).encode()).append('\n');
+            }
+            try {
+                Files.write(Paths.get(exportPath), lines.toString().getBytes("UTF-8"),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                future.complete();
+            } catch (IOException e) {
+                future.fail(e);
+            }
+        }, false, ar -> {
+            if (ar.failed()) {
+                System.out.println("Spans not exported: " + ar.cause().getMessage());
+                flushed();
+            } else if (exportUrl != null) {
+                post(ar.result());
+            } else {
+                flushed();
+            }
+        });
+    }
+
+    private void post(Buffer spans) {
+        int port = exportUrl.getPort() < 0 ? exportUrl.getDefaultPort() : exportUrl.getPort();
+        HttpClientRequest request = http.post(port, exportUrl.getHost(), exportUrl.getFile(), response -> {
+            if (response.statusCode() >= 300) {
+                System.out.println("Spans not exported: HTTP " + response.statusCode());
+            }
+            flushed();
+        });
+        request.exceptionHandler(err -> {
+            System.out.println("Spans not exported: " + err.getMessage());
+            flushed();
+        });
+        request.putHeader("Content-Type", "application/json").end(spans);
+    }
+
+    private void flushed() {
+        flushing.set(false);
+        if (queued.get() >= batchSize) {
+            flush();
+        }
+    }
+
+    /**
+     * The spans of a trace within this service, kept or dropped once its root span ends.
+     */
+    static final class Trace {
+        final String traceId;
+        final boolean sampled;
+        Span root;
+        private final Tracer tracer;
+        // Guarded by this, the ended spans until the root ends.
+        private List<Span> ended = new ArrayList<>();
+        private boolean kept;
+
+        private Trace(Tracer tracer, String traceId, boolean sampled) {
+            this.tracer = tracer;
+            this.traceId = traceId;
+            this.sampled = sampled;
+        }
+
+        void ended(Span span) {
+            List<Span> export;
+            boolean keep;
+            synchronized (this) {
+                if (ended != null) {
+                    ended.add(span);
+                    if (span != root) {
+                        return;
+                    }
+                    kept = sampled || tracer.keep(root, ended);
+                    export = ended;
+                    ended = null;
+                } else {
+                    // Ended after the root, e.g. a call given up on timeout.
+                    export = Collections.singletonList(span);
+                }
+                keep = kept;
+            }
+            if (keep) {
+                tracer.export(export);
+            }
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package io.openshift.booster;
 
 import io.vertx.circuitbreaker.CircuitBreakerOptions;
+import io.vertx.circuitbreaker.CircuitBreakerState;
 import io.vertx.core.Handler;
+import io.vertx.core.eventbus.DeliveryOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.ext.web.client.WebClientOptions;
 import io.vertx.ext.web.handler.sockjs.BridgeOptions;
@@ -9,12 +11,18 @@ import io.vertx.ext.web.handler.sockjs.PermittedOptions;
 import io.vertx.rxjava.circuitbreaker.CircuitBreaker;
 import io.vertx.rxjava.circuitbreaker.HystrixMetricHandler;
 import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.core.Future;
+import io.vertx.rxjava.core.buffer.Buffer;
 import io.vertx.rxjava.ext.web.Router;
 import io.vertx.rxjava.ext.web.RoutingContext;
+import io.vertx.rxjava.ext.web.client.HttpRequest;
 import io.vertx.rxjava.ext.web.client.HttpResponse;
 import io.vertx.rxjava.ext.web.client.WebClient;
 import io.vertx.rxjava.ext.web.handler.StaticHandler;
 import io.vertx.rxjava.ext.web.handler.sockjs.SockJSHandler;
+import rx.Single;
+
+import java.util.function.Supplier;
 
 import static io.netty.handler.codec.http.HttpHeaderValues.APPLICATION_JSON;
 import static io.vertx.core.http.HttpHeaders.CONTENT_TYPE;
@@ -24,60 +32,146 @@ public class GreetingServiceVerticle extends AbstractVerticle {
     protected static final String template = "Hello, %s!";
 
     private CircuitBreaker circuit;
+    private SlidingWindowCircuitBreaker slidingWindowCircuit;
     private WebClient client;
+    private String nameServiceAddress;
+    private Tracer tracer;
 
     @Override
     public void start() throws Exception {
-        circuit = CircuitBreaker.create("circuit-breaker", vertx,
-            new CircuitBreakerOptions()
-                .setFallbackOnFailure(true)
-                .setMaxFailures(3)
-                .setResetTimeout(5000)
-                .setNotificationAddress("circuit-breaker")
-                .setTimeout(1000)
-        );
-
-        client = WebClient.create(vertx, new WebClientOptions()
-            .setDefaultHost("name-service")
-            .setDefaultPort(8080));
+        JsonObject circuitConfig = config().getJsonObject("circuit-breaker", new JsonObject());
+        if ("sliding-window".equals(circuitConfig.getString("mode"))) {
+            // Opens on the failure and slow call rates over the last calls instead of a fixed number of failures.
+            slidingWindowCircuit = SlidingWindowCircuitBreaker.create("circuit-breaker", vertx,
+                new SlidingWindowCircuitBreakerOptions(circuitConfig)
+                    .setNotificationAddress("circuit-breaker")
+            );
+        } else {
+            circuit = CircuitBreaker.create("circuit-breaker", vertx,
+                new CircuitBreakerOptions()
+                    .setFallbackOnFailure(true)
+                    .setMaxFailures(3)
+                    .setResetTimeout(5000)
+                    .setNotificationAddress("circuit-breaker")
+                    .setTimeout(1000)
+            );
+        }
+
+        if ("event-bus".equals(config().getString("name-service.transport"))) {
+            // Request-reply with the name service, local when co-deployed, over the cluster otherwise.
+            nameServiceAddress = config().getString("name-service.address", NameReply.ADDRESS);
+            NameReplyCodec.register(vertx.eventBus().getDelegate());
+        } else {
+            client = WebClient.create(vertx, new WebClientOptions()
+                .setDefaultHost(config().getString("name-service.host", "name-service"))
+                .setDefaultPort(config().getInteger("name-service.port", 8080)));
+        }
+
+        // Traces the requests with the tracing options, e.g. {"sampleRate": 0.1, "slowThreshold": 500}.
+        tracer = Tracer.create(vertx.getDelegate(), "greeting-service", config().getJsonObject("tracing"));
 
         Router router = Router.router(vertx);
 
         router.get("/health").handler(rc -> rc.response().end("OK"));
-        router.get("/eventbus/*").handler(getSockJsHandler());
+        if (tracer.enabled()) {
+            router.route().handler(rc -> tracer.handle(rc.getDelegate()));
+        }
+        // Per client rate limit of the API, with the rate.limit options, e.g. {"rate": 50, "burst": 100}.
+        if (config().containsKey("rate.limit")) {
+            RateLimitHandler rateLimit = RateLimitHandler.create(vertx.getDelegate(),
+                config().getJsonObject("rate.limit"));
+            router.route("/api/*").handler(rc -> rateLimit.handle(rc.getDelegate()));
+        }
+        // The dashboard handlers are only created on first use, their classes are not loaded at startup.
+        router.get("/eventbus/*").handler(lazy(this::getSockJsHandler));
         // The address is the circuit breaker notification address configured above.
-        router.get("/metrics").handler(HystrixMetricHandler.create(vertx, "circuit-breaker"));
+        router.get("/metrics").handler(lazy(() -> HystrixMetricHandler.create(vertx, "circuit-breaker")));
 
 
         router.get("/api/greeting").handler(this::greeting);
         router.get("/api/cb-state").handler(
             rc -> rc.response()
                 .putHeader(CONTENT_TYPE.toString(), APPLICATION_JSON.toString())
-                .end(new JsonObject().put("state", circuit.state()).encodePrettily()));
+                .end(new JsonObject().put("state", circuitState()).encodePrettily()));
         router.get("/*").handler(StaticHandler.create());
 
         vertx.createHttpServer()
             .requestHandler(router::accept)
-            .listen(8080);
+            .listen(config().getInteger("http.port", 8080), ar -> {
+                if (ar.succeeded()) {
+                    StartupReport.listening("greeting-service", ar.result().actualPort());
+                }
+            });
     }
 
-    private void greeting(RoutingContext rc) {
-        circuit.rxExecuteCommandWithFallback(
-            future ->
-                client.get("/api/name").rxSend()
-                    .doOnEach(r -> System.out.println(r.getValue().bodyAsString()))
-                    .map(HttpResponse::bodyAsJsonObject)
-                    .map(json -> json.getString("name"))
-                    .subscribe(
-                        future::complete,
-                        future::fail
-                    ),
-            error -> {
-                System.out.println("Fallback called for " + error.getMessage());
-                error.printStackTrace();
-                return "Fallback";
+    private CircuitBreakerState circuitState() {
+        return slidingWindowCircuit != null ? slidingWindowCircuit.state() : circuit.state();
+    }
+
+    private Single<String> name(Span parent) {
+        Span span = parent.child("circuit-breaker").tag("circuit.state", circuitState());
+        Single<String> name;
+        if (slidingWindowCircuit != null) {
+            name = slidingWindowCircuit.rxExecuteCommandWithFallback(
+                future -> callNameService(future, span), error -> fallback(error, span));
+        } else {
+            name = circuit.rxExecuteCommandWithFallback(
+                future -> callNameService(future, span), error -> fallback(error, span));
+        }
+        return name
+            .doOnSuccess(n -> span.end())
+            .doOnError(err -> span.error(err).end());
+    }
+
+    private void callNameService(Future<String> future, Span parent) {
+        if (nameServiceAddress != null) {
+            Span span = parent.client("send " + nameServiceAddress);
+            DeliveryOptions options = new DeliveryOptions();
+            if (span.traceparent() != null) {
+                options.addHeader(Span.TRACEPARENT, span.traceparent());
             }
-        )
+            vertx.eventBus().<NameReply>rxSend(nameServiceAddress, null, options)
+                .map(msg -> msg.body().name())
+                .doOnSuccess(name -> span.end())
+                .doOnError(err -> span.error(err).end())
+                .subscribe(
+                    future::complete,
+                    future::fail
+                );
+            return;
+        }
+        Span span = parent.client("GET /api/name");
+        HttpRequest<Buffer> request = client.get("/api/name");
+        if (span.traceparent() != null) {
+            request.putHeader(Span.TRACEPARENT, span.traceparent());
+        }
+        request.rxSend()
+            .doOnEach(r -> System.out.println(r.getValue().bodyAsString()))
+            .doOnSuccess(response -> {
+                span.tag("http.status_code", response.statusCode());
+                if (response.statusCode() >= 500) {
+                    span.error("HTTP " + response.statusCode());
+                }
+                span.end();
+            })
+            .doOnError(err -> span.error(err).end())
+            .map(HttpResponse::bodyAsJsonObject)
+            .map(json -> json.getString("name"))
+            .subscribe(
+                future::complete,
+                future::fail
+            );
+    }
+
+    private String fallback(Throwable error, Span parent) {
+        parent.tag("fallback", true).child("fallback").error(error).end();
+        System.out.println("Fallback called for " + error.getMessage());
+        error.printStackTrace();
+        return "Fallback";
+    }
+
+    private void greeting(RoutingContext rc) {
+        name(Span.of(rc.getDelegate()))
             .subscribe(
                 name -> {
                     JsonObject response = new JsonObject()
@@ -89,6 +183,23 @@ public class GreetingServiceVerticle extends AbstractVerticle {
             );
     }
 
+    /**
+     * Creates the handler on the first request it receives, must be used from the verticle event loop.
+     */
+    private static Handler<RoutingContext> lazy(Supplier<Handler<RoutingContext>> factory) {
+        return new Handler<RoutingContext>() {
+            private Handler<RoutingContext> handler;
+
+            @Override
+            public void handle(RoutingContext rc) {
+                if (handler == null) {
+                    handler = factory.get();
+                }
+                handler.handle(rc);
+            }
+        };
+    }
+
     private Handler<RoutingContext> getSockJsHandler() {
         SockJSHandler sockJSHandler = SockJSHandler.create(vertx);
         BridgeOptions options = new BridgeOptions();
@@ -0,0 +1,205 @@
+package io.openshift.booster;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+import io.vertx.ext.web.RoutingContext;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Limits the requests of each client with a token bucket of {@code burst} tokens, refilled with {@code rate} tokens
+ * per second. A request finding no token is answered with 429 and the seconds to wait in {@code Retry-After}.
+ * <p>
+ * A bucket is a single long, the time at which it is full again, moved forward by each request with a compare and set
+ * (the GCRA form of the token bucket). The refill is computed on the next request, and the buckets need no lock. A full
+ * bucket is the same as no bucket, so the full ones are evicted off the event loop every {@code sweepInterval} ms. At
+ * most {@code maxClients} buckets are kept, the clients beyond share one bucket until the next eviction.
+ * <p>
+ * The clients are told apart by their address, by default, by a header with {@code "key": "header:<name>"}, or by
+ * their {@code X-API-Key} with {@code "key": "api-key"}, by address without the header. Behind a proxy,
+ * {@code "trustForwarded": true} takes the address from {@code X-Forwarded-For}, the one appended by the outermost of
+ * the {@code trustedProxies} (default 1) proxies, counted from the right. The entries on its left are sent by the
+ * client, which could otherwise pick a new bucket for each request.
+ * <p>
+ * The handlers are shared by name through a local map, so that the verticle instances of the application count the
+ * requests together.
+ */
+public class RateLimitHandler implements Handler<RoutingContext>, Shareable {
+
+    static final String OVERFLOW = "";
+
+    // The time of a bucket being evicted, the requests find a new one.
+    private static final long EVICTED = Long.MIN_VALUE;
+    // The time of a new bucket, full.
+    private static final long FULL = Long.MIN_VALUE + 1;
+
+    private final Vertx vertx;
+    // The ns between two tokens.
+    private final long interval;
+    // How far ahead of now a bucket can be, the ns to refill burst - 1 tokens.
+    private final long tolerance;
+    private final int maxClients;
+    private final long sweepInterval;
+    private final Function<RoutingContext, String> key;
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>();
+    private final AtomicLong nextSweep;
+    private final AtomicBoolean sweeping = new AtomicBoolean();
+
+    RateLimitHandler(Vertx vertx, JsonObject options, long now) {
+        double rate = options.getDouble("rate", 100.0);
+        int burst = options.getInteger("burst", (int) Math.max(1, Math.ceil(rate)));
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate and burst must be positive: " + options.encode());
+        }
+        this.vertx = vertx;
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        this.tolerance = interval * (burst - 1);
+        this.maxClients = options.getInteger("maxClients", 100000);
+        this.sweepInterval = TimeUnit.MILLISECONDS.toNanos(options.getLong("sweepInterval", 10000L));
+        int trustedProxies = options.getInteger("trustedProxies", 1);
+        if (trustedProxies < 1) {
+            throw new IllegalArgumentException("The trusted proxies must be positive: " + options.encode());
+        }
+        this.key = key(options.getString("key", "ip"), options.getBoolean("trustForwarded", false), trustedProxies);
+        this.nextSweep = new AtomicLong(now + sweepInterval);
+    }
+
+    /**
+     * @param options {@code rate}, {@code burst}, {@code key}, {@code trustForwarded}, {@code trustedProxies},
+     * {@code maxClients} and
+     * {@code sweepInterval}, the handler of the same {@code name} is returned if already created
+     */
+    public static RateLimitHandler create(Vertx vertx, JsonObject options) {
+        LocalMap<String, RateLimitHandler> handlers = vertx.sharedData().getLocalMap(RateLimitHandler.class.getName());
+        RateLimitHandler created = new RateLimitHandler(vertx, options, System.nanoTime());
+        RateLimitHandler existing = handlers.putIfAbsent(options.getString("name", "default"), created);
+        return existing != null ? existing : created;
+    }
+
+    @Override
+    public void handle(RoutingContext rc) {
+        long wait = acquire(key.apply(rc), System.nanoTime());
+        if (wait == 0) {
+            rc.next();
+            return;
+        }
+        rc.response()
+            .setStatusCode(429)
+            .putHeader("Retry-After", String.valueOf(TimeUnit.NANOSECONDS.toSeconds(wait - 1) + 1))
+            .end();
+    }
+
+    /**
+     * Takes a token from the bucket of the client.
+     *
+     * @return 0 when taken, else the ns until the next token
+     */
+    long acquire(String client, long now) {
+        if (now - nextSweep.get() >= 0) {
+            sweepLater(now);
+        }
+        for (;;) {
+            AtomicLong bucket = bucket(client, now);
+            long full = bucket.get();
+            if (full == EVICTED) {
+                buckets.remove(client, bucket);
+                continue;
+            }
+            long start = Math.max(full, now);
+            if (start - now > tolerance) {
+                return start - tolerance - now;
+            }
+            if (bucket.compareAndSet(full, start + interval)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Evicts the full buckets.
+     */
+    void sweep(long now) {
+        buckets.forEach((client, bucket) -> {
+            long full = bucket.get();
+            if (full != EVICTED && full <= now && bucket.compareAndSet(full, EVICTED)) {
+                buckets.remove(client, bucket);
+            }
+        });
+    }
+
+    int clients() {
+        return buckets.size();
+    }
+
+    private AtomicLong bucket(String client, long now) {
+        AtomicLong bucket = buckets.get(client);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= maxClients) {
+            sweepLater(now);
+            client = OVERFLOW;
+        }
+        return buckets.computeIfAbsent(client, c -> new AtomicLong(FULL));
+    }
+
+    private void sweepLater(long now) {
+        if (sweeping.compareAndSet(false, true)) {
+            vertx.<Void>executeBlocking(future -> {
+                sweep(now);
+                future.complete();
+            }, false, ar -> {
+                nextSweep.set(System.nanoTime() + sweepInterval);
+                sweeping.set(false);
+            });
+        }
+    }
+
+    private static Function<RoutingContext, String> key(String key, boolean trustForwarded, int trustedProxies) {
+        Function<RoutingContext, String> address = rc -> {
+            String forwarded = trustForwarded ? rc.request().getHeader("X-Forwarded-For") : null;
+            String client = forwarded != null ? forwardedFor(forwarded, trustedProxies) : "";
+            return !client.isEmpty() ? client : rc.request().remoteAddress().host();
+        };
+        if ("ip".equals(key)) {
+            return address;
+        }
+        String header;
+        if ("api-key".equals(key)) {
+            header = "X-API-Key";
+        } else if (key.startsWith("header:")) {
+            header = key.substring("header:".length());
+        } else {
+            throw new IllegalArgumentException("Unknown rate limit key: " + key);
+        }
+        return rc -> {
+            String value = rc.request().getHeader(header);
+            // Prefixed, a header value cannot take the bucket of an address.
+            return value != null ? "#" + value : address.apply(rc);
+        };
+    }
+
+    /**
+     * @return the entry of {@code X-Forwarded-For} appended by the outermost trusted proxy, the leftmost one when the
+     * header has fewer entries
+     */
+    static String forwardedFor(String forwarded, int trustedProxies) {
+        int end = forwarded.length();
+        for (int i = 1; i < trustedProxies; i++) {
+            int comma = forwarded.lastIndexOf(',', end - 1);
+            if (comma < 0) {
+                break;
+            }
+            end = comma;
+        }
+        return forwarded.substring(forwarded.lastIndexOf(',', end - 1) + 1, end).trim();
+    }
+}
@@ -0,0 +1,281 @@
+package io.openshift.booster;
+
+import io.vertx.circuitbreaker.CircuitBreakerState;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Future;
+import io.vertx.rxjava.core.Vertx;
+import rx.Single;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A circuit breaker opening on the failure rate and the slow call rate observed over a sliding window of the most
+ * recent calls, rather than on a fixed number of failures.
+ * <p>
+ * The state transitions are the same as the Vert.x circuit breaker: {@code CLOSED -> OPEN} when a threshold is
+ * reached, {@code OPEN -> HALF_OPEN} after the reset timeout, and {@code HALF_OPEN -> CLOSED} or {@code OPEN}
+ * depending on the outcome of the permitted probing calls. Notifications are published on the notification address
+ * using the same fields as the Vert.x circuit breaker, so the {@code HystrixMetricHandler} keeps working.
+ * <p>
+ * This class is not thread-safe, it must be used from the context of the verticle that created it.
+ */
+public class SlidingWindowCircuitBreaker {
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final Vertx vertx;
+    private final SlidingWindowCircuitBreakerOptions options;
+    private final long slowCallDurationNanos;
+
+    /**
+     * Ring buffer of the outcomes of the last calls, each slot is a combination of {@link #FAILED} and {@link #SLOW}.
+     */
+    private final byte[] window;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+
+    private CircuitBreakerState state = CircuitBreakerState.CLOSED;
+    /**
+     * Incremented on each transition so the outcome of a call started in a previous state is ignored.
+     */
+    private long generation;
+    private int halfOpenPermits;
+    private int halfOpenCalls;
+    private int halfOpenFailures;
+    private int halfOpenSlowCalls;
+
+    private long resetTimer = -1;
+    private long notificationTimer = -1;
+
+    public static SlidingWindowCircuitBreaker create(String name, Vertx vertx,
+                                                     SlidingWindowCircuitBreakerOptions options) {
+        return new SlidingWindowCircuitBreaker(name, vertx, options);
+    }
+
+    private SlidingWindowCircuitBreaker(String name, Vertx vertx, SlidingWindowCircuitBreakerOptions options) {
+        this.name = name;
+        this.vertx = vertx;
+        this.options = options;
+        this.slowCallDurationNanos = TimeUnit.MILLISECONDS.toNanos(options.getSlowCallDuration());
+        this.window = new byte[options.getSlidingWindowSize()];
+        if (options.getNotificationAddress() != null && options.getNotificationPeriod() > 0) {
+            notificationTimer = vertx.setPeriodic(options.getNotificationPeriod(), l -> sendNotification());
+        }
+    }
+
+    public CircuitBreakerState state() {
+        return state;
+    }
+
+    /**
+     * @return the failure percentage over the sliding window, -1 if the minimum number of calls is not reached
+     */
+    public int failureRate() {
+        return calls < options.getMinimumNumberOfCalls() ? -1 : failures * 100 / calls;
+    }
+
+    /**
+     * @return the slow call percentage over the sliding window, -1 if the minimum number of calls is not reached
+     */
+    public int slowCallRate() {
+        return calls < options.getMinimumNumberOfCalls() ? -1 : slowCalls * 100 / calls;
+    }
+
+    /**
+     * Executes the given command if the circuit lets it through. The fallback is called when the circuit is open, or
+     * when the command fails or times out.
+     */
+    public <T> Single<T> rxExecuteCommandWithFallback(Handler<Future<T>> command, Function<Throwable, T> fallback) {
+        return Single.create(subscriber -> executeWithFallback(command, fallback, ar -> {
+            if (ar.succeeded()) {
+                subscriber.onSuccess(ar.result());
+            } else {
+                subscriber.onError(ar.cause());
+            }
+        }));
+    }
+
+    public <T> void executeWithFallback(Handler<Future<T>> command, Function<Throwable, T> fallback,
+                                        Handler<AsyncResult<T>> resultHandler) {
+        if (!tryAcquirePermission()) {
+            resultHandler.handle(fallback(fallback, new RuntimeException("open circuit")));
+            return;
+        }
+
+        long callGeneration = generation;
+        long start = System.nanoTime();
+        Future<T> operation = Future.future();
+        long timer = options.getTimeout() > 0
+            ? vertx.setTimer(options.getTimeout(), l -> operation.tryFail(new TimeoutException("operation timeout")))
+            : -1;
+
+        operation.setHandler(ar -> {
+            if (timer != -1) {
+                vertx.cancelTimer(timer);
+            }
+            onCallCompleted(callGeneration, ar.failed(), System.nanoTime() - start);
+            if (ar.succeeded()) {
+                resultHandler.handle(io.vertx.core.Future.succeededFuture(ar.result()));
+            } else {
+                resultHandler.handle(fallback(fallback, ar.cause()));
+            }
+        });
+
+        try {
+            command.handle(operation);
+        } catch (Throwable e) {
+            operation.tryFail(e);
+        }
+    }
+
+    /**
+     * Cancels the timers of this circuit breaker.
+     */
+    public void close() {
+        if (resetTimer != -1) {
+            vertx.cancelTimer(resetTimer);
+        }
+        if (notificationTimer != -1) {
+            vertx.cancelTimer(notificationTimer);
+        }
+    }
+
+    private <T> AsyncResult<T> fallback(Function<Throwable, T> fallback, Throwable cause) {
+        if (fallback == null) {
+            return io.vertx.core.Future.failedFuture(cause);
+        }
+        try {
+            return io.vertx.core.Future.succeededFuture(fallback.apply(cause));
+        } catch (Exception e) {
+            return io.vertx.core.Future.failedFuture(e);
+        }
+    }
+
+    private boolean tryAcquirePermission() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case HALF_OPEN:
+                if (halfOpenPermits > 0) {
+                    halfOpenPermits--;
+                    return true;
+                }
+                return false;
+            default:
+                return false;
+        }
+    }
+
+    private void onCallCompleted(long callGeneration, boolean failed, long durationNanos) {
+        if (callGeneration != generation) {
+            // The circuit changed state while the call was in flight.
+            return;
+        }
+        boolean slow = durationNanos >= slowCallDurationNanos;
+        if (state == CircuitBreakerState.HALF_OPEN) {
+            halfOpenCalls++;
+            if (failed) {
+                halfOpenFailures++;
+            }
+            if (slow) {
+                halfOpenSlowCalls++;
+            }
+            if (halfOpenCalls == options.getPermittedCallsInHalfOpenState()) {
+                if (exceedsThresholds(halfOpenFailures, halfOpenSlowCalls, halfOpenCalls)) {
+                    open();
+                } else {
+                    reset();
+                }
+            }
+        } else if (state == CircuitBreakerState.CLOSED) {
+            record(failed, slow);
+            if (calls >= options.getMinimumNumberOfCalls() && exceedsThresholds(failures, slowCalls, calls)) {
+                open();
+            }
+        }
+    }
+
+    private void record(boolean failed, boolean slow) {
+        if (calls == window.length) {
+            byte evicted = window[next];
+            if ((evicted & FAILED) != 0) {
+                failures--;
+            }
+            if ((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+        } else {
+            calls++;
+        }
+        byte outcome = (byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0));
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if (failed) {
+            failures++;
+        }
+        if (slow) {
+            slowCalls++;
+        }
+    }
+
+    private boolean exceedsThresholds(int failed, int slow, int total) {
+        return failed * 100 >= options.getFailureRateThreshold() * total
+            || slow * 100 >= options.getSlowCallRateThreshold() * total;
+    }
+
+    private void open() {
+        transition(CircuitBreakerState.OPEN);
+        resetTimer = vertx.setTimer(options.getResetTimeout(), l -> {
+            resetTimer = -1;
+            halfOpen();
+        });
+    }
+
+    private void halfOpen() {
+        halfOpenPermits = options.getPermittedCallsInHalfOpenState();
+        halfOpenCalls = 0;
+        halfOpenFailures = 0;
+        halfOpenSlowCalls = 0;
+        transition(CircuitBreakerState.HALF_OPEN);
+    }
+
+    private void reset() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+        transition(CircuitBreakerState.CLOSED);
+    }
+
+    private void transition(CircuitBreakerState newState) {
+        generation++;
+        state = newState;
+        sendNotification();
+    }
+
+    private void sendNotification() {
+        if (options.getNotificationAddress() == null) {
+            return;
+        }
+        // Same field names as the Vert.x circuit breaker, so the Hystrix metric stream can consume them.
+        vertx.eventBus().publish(options.getNotificationAddress(), new JsonObject()
+            .put("name", name)
+            .put("node", "local")
+            .put("state", state.name())
+            .put("rollingOperationCount", calls)
+            .put("rollingErrorCount", failures)
+            .put("rollingFailureCount", failures)
+            .put("rollingSuccessCount", calls - failures)
+            .put("rollingErrorPercentage", calls == 0 ? 0 : failures * 100 / calls)
+            .put("failureRate", failureRate())
+            .put("slowCallRate", slowCallRate()));
+    }
+}
@@ -0,0 +1,192 @@
+package io.openshift.booster;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Options of the {@link SlidingWindowCircuitBreaker}.
+ * <p>
+ * Instead of a fixed number of failures, the circuit opens when the failure rate or the slow call rate measured over
+ * the last {@code slidingWindowSize} calls reaches its threshold, provided at least {@code minimumNumberOfCalls} calls
+ * have been recorded.
+ */
+public class SlidingWindowCircuitBreakerOptions {
+
+    public static final int DEFAULT_SLIDING_WINDOW_SIZE = 100;
+    public static final int DEFAULT_MINIMUM_NUMBER_OF_CALLS = 10;
+    public static final int DEFAULT_FAILURE_RATE_THRESHOLD = 50;
+    public static final int DEFAULT_SLOW_CALL_RATE_THRESHOLD = 100;
+    public static final long DEFAULT_SLOW_CALL_DURATION = 500;
+    public static final int DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE = 3;
+    public static final long DEFAULT_TIMEOUT = 1000;
+    public static final long DEFAULT_RESET_TIMEOUT = 5000;
+    public static final String DEFAULT_NOTIFICATION_ADDRESS = "vertx.circuit-breaker";
+    public static final long DEFAULT_NOTIFICATION_PERIOD = 2000;
+
+    private int slidingWindowSize = DEFAULT_SLIDING_WINDOW_SIZE;
+    private int minimumNumberOfCalls = DEFAULT_MINIMUM_NUMBER_OF_CALLS;
+    private int failureRateThreshold = DEFAULT_FAILURE_RATE_THRESHOLD;
+    private int slowCallRateThreshold = DEFAULT_SLOW_CALL_RATE_THRESHOLD;
+    private long slowCallDuration = DEFAULT_SLOW_CALL_DURATION;
+    private int permittedCallsInHalfOpenState = DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE;
+    private long timeout = DEFAULT_TIMEOUT;
+    private long resetTimeout = DEFAULT_RESET_TIMEOUT;
+    private String notificationAddress = DEFAULT_NOTIFICATION_ADDRESS;
+    private long notificationPeriod = DEFAULT_NOTIFICATION_PERIOD;
+
+    public SlidingWindowCircuitBreakerOptions() {
+    }
+
+    public SlidingWindowCircuitBreakerOptions(JsonObject json) {
+        setSlidingWindowSize(json.getInteger("slidingWindowSize", DEFAULT_SLIDING_WINDOW_SIZE));
+        setMinimumNumberOfCalls(json.getInteger("minimumNumberOfCalls", DEFAULT_MINIMUM_NUMBER_OF_CALLS));
+        setFailureRateThreshold(json.getInteger("failureRateThreshold", DEFAULT_FAILURE_RATE_THRESHOLD));
+        setSlowCallRateThreshold(json.getInteger("slowCallRateThreshold", DEFAULT_SLOW_CALL_RATE_THRESHOLD));
+        setSlowCallDuration(json.getLong("slowCallDuration", DEFAULT_SLOW_CALL_DURATION));
+        setPermittedCallsInHalfOpenState(
+            json.getInteger("permittedCallsInHalfOpenState", DEFAULT_PERMITTED_CALLS_IN_HALF_OPEN_STATE));
+        setTimeout(json.getLong("timeout", DEFAULT_TIMEOUT));
+        setResetTimeout(json.getLong("resetTimeout", DEFAULT_RESET_TIMEOUT));
+        setNotificationAddress(json.getString("notificationAddress", DEFAULT_NOTIFICATION_ADDRESS));
+        setNotificationPeriod(json.getLong("notificationPeriod", DEFAULT_NOTIFICATION_PERIOD));
+    }
+
+    public int getSlidingWindowSize() {
+        return slidingWindowSize;
+    }
+
+    /**
+     * @param slidingWindowSize the number of most recent calls used to compute the failure and slow call rates
+     */
+    public SlidingWindowCircuitBreakerOptions setSlidingWindowSize(int slidingWindowSize) {
+        if (slidingWindowSize < 1) {
+            throw new IllegalArgumentException("The sliding window size must be at least 1");
+        }
+        this.slidingWindowSize = slidingWindowSize;
+        return this;
+    }
+
+    public int getMinimumNumberOfCalls() {
+        return minimumNumberOfCalls;
+    }
+
+    /**
+     * @param minimumNumberOfCalls the number of calls to record before the rates are evaluated, so a few errors at
+     *                             low traffic do not open the circuit
+     */
+    public SlidingWindowCircuitBreakerOptions setMinimumNumberOfCalls(int minimumNumberOfCalls) {
+        if (minimumNumberOfCalls < 1) {
+            throw new IllegalArgumentException("The minimum number of calls must be at least 1");
+        }
+        this.minimumNumberOfCalls = minimumNumberOfCalls;
+        return this;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * @param failureRateThreshold the failure percentage (1-100) at which the circuit opens
+     */
+    public SlidingWindowCircuitBreakerOptions setFailureRateThreshold(int failureRateThreshold) {
+        this.failureRateThreshold = checkPercentage(failureRateThreshold);
+        return this;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    /**
+     * @param slowCallRateThreshold the percentage (1-100) of calls slower than {@link #getSlowCallDuration()} at which
+     *                              the circuit opens
+     */
+    public SlidingWindowCircuitBreakerOptions setSlowCallRateThreshold(int slowCallRateThreshold) {
+        this.slowCallRateThreshold = checkPercentage(slowCallRateThreshold);
+        return this;
+    }
+
+    public long getSlowCallDuration() {
+        return slowCallDuration;
+    }
+
+    /**
+     * @param slowCallDuration the duration in ms above which a call is considered slow, even if it succeeds
+     */
+    public SlidingWindowCircuitBreakerOptions setSlowCallDuration(long slowCallDuration) {
+        this.slowCallDuration = slowCallDuration;
+        return this;
+    }
+
+    public int getPermittedCallsInHalfOpenState() {
+        return permittedCallsInHalfOpenState;
+    }
+
+    /**
+     * @param permittedCallsInHalfOpenState the number of probing calls let through in the half-open state, the
+     *                                      outcome of these calls decides whether the circuit closes or re-opens
+     */
+    public SlidingWindowCircuitBreakerOptions setPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+        if (permittedCallsInHalfOpenState < 1) {
+            throw new IllegalArgumentException("At least one call must be permitted in the half-open state");
+        }
+        this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+        return this;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * @param timeout the time in ms after which a call is failed, -1 to disable
+     */
+    public SlidingWindowCircuitBreakerOptions setTimeout(long timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public long getResetTimeout() {
+        return resetTimeout;
+    }
+
+    /**
+     * @param resetTimeout the time in ms spent in the open state before switching to half-open
+     */
+    public SlidingWindowCircuitBreakerOptions setResetTimeout(long resetTimeout) {
+        this.resetTimeout = resetTimeout;
+        return this;
+    }
+
+    public String getNotificationAddress() {
+        return notificationAddress;
+    }
+
+    /**
+     * @param notificationAddress the event bus address on which state and metrics are published, {@code null} to
+     *                            disable notifications
+     */
+    public SlidingWindowCircuitBreakerOptions setNotificationAddress(String notificationAddress) {
+        this.notificationAddress = notificationAddress;
+        return this;
+    }
+
+    public long getNotificationPeriod() {
+        return notificationPeriod;
+    }
+
+    /**
+     * @param notificationPeriod the period in ms between two metrics notifications
+     */
+    public SlidingWindowCircuitBreakerOptions setNotificationPeriod(long notificationPeriod) {
+        this.notificationPeriod = notificationPeriod;
+        return this;
+    }
+
+    private static int checkPercentage(int value) {
+        if (value < 1 || value > 100) {
+            throw new IllegalArgumentException("The threshold must be a percentage between 1 and 100");
+        }
+        return value;
+    }
+}
@@ -0,0 +1,250 @@
+package io.openshift.booster;
+
+import static org.hamcrest.Matchers.is;
+
+import static com.jayway.awaitility.Awaitility.await;
+
+import static io.restassured.RestAssured.get;
+import static io.restassured.RestAssured.given;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import io.restassured.RestAssured;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Checks the greeting service against a co-deployed name service and its failure toggle.
+ */
+public class GreetingServiceVerticleTest {
+
+    private static final String NAME_SERVICE = "http://localhost:8081";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Vertx vertx;
+
+    @Before
+    public void setUp() {
+        vertx = Vertx.vertx();
+        vertx.deployVerticle(NameServiceVerticle.class.getName(),
+            new DeploymentOptions().setConfig(new JsonObject().put("http.port", 8081)));
+
+        RestAssured.baseURI = "http://localhost:8080";
+    }
+
+    private void deployGreetingService(JsonObject config) {
+        vertx.deployVerticle(GreetingServiceVerticle.class.getName(),
+            new DeploymentOptions().setConfig(config.put("http.port", 8080)));
+
+        await().until(() -> {
+            try {
+                return get("/health").statusCode() == 200 && get(NAME_SERVICE + "/health").statusCode() == 200;
+            } catch (Exception e) {
+                return false;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        AtomicBoolean closed = new AtomicBoolean();
+        vertx.close(x -> closed.set(x.succeeded()));
+        await().untilAtomic(closed, is(true));
+    }
+
+    @Test
+    public void testCircuitOpensOnFailureRateAndClosesAfterProbing() {
+        deployGreetingService(new JsonObject()
+            .put("name-service.host", "localhost")
+            .put("name-service.port", 8081)
+            .put("circuit-breaker", new JsonObject()
+                .put("mode", "sliding-window")
+                .put("slidingWindowSize", 10)
+                .put("minimumNumberOfCalls", 5)
+                .put("failureRateThreshold", 50)
+                .put("permittedCallsInHalfOpenState", 2)
+                .put("resetTimeout", 1000)));
+
+        for (int i = 0; i < 5; i++) {
+            get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+        }
+        get("/api/cb-state").then().body("state", is("CLOSED"));
+
+        changeNameServiceState("fail");
+        // 5 failures out of the last 10 calls reach the 50% threshold.
+        for (int i = 0; i < 4; i++) {
+            get("/api/greeting").then().statusCode(200).body("content", is("Hello, Fallback!"));
+            get("/api/cb-state").then().body("state", is("CLOSED"));
+        }
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, Fallback!"));
+        get("/api/cb-state").then().body("state", is("OPEN"));
+
+        changeNameServiceState("ok");
+        // Still open, calls are not let through.
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, Fallback!"));
+
+        await().atMost(5, TimeUnit.SECONDS)
+            .until(() -> get("/api/cb-state").jsonPath().getString("state").equals("HALF_OPEN"));
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+        get("/api/cb-state").then().body("state", is("HALF_OPEN"));
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+        get("/api/cb-state").then().body("state", is("CLOSED"));
+    }
+
+    @Test
+    public void testEventBusTransport() {
+        deployGreetingService(new JsonObject().put("name-service.transport", "event-bus"));
+
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+        changeNameServiceState("fail");
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, Fallback!"));
+        changeNameServiceState("ok");
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+    }
+
+    @Test
+    public void testRateLimitsEachClient() {
+        deployGreetingService(new JsonObject()
+            .put("name-service.transport", "event-bus")
+            .put("rate.limit", new JsonObject().put("rate", 0.1).put("burst", 2)));
+
+        get("/api/greeting").then().statusCode(200);
+        get("/api/cb-state").then().statusCode(200);
+        get("/api/greeting").then().statusCode(429).header("Retry-After", is("10"));
+        // Not limited.
+        get("/health").then().statusCode(200);
+    }
+
+    @Test
+    public void testIgnoresTheForwardedAddressesSentByTheClient() {
+        deployGreetingService(new JsonObject()
+            .put("name-service.transport", "event-bus")
+            .put("rate.limit", new JsonObject().put("rate", 0.1).put("burst", 1).put("trustForwarded", true)));
+
+        // The proxy appends the address of the client to the header it received.
+        given().header("X-Forwarded-For", "6.6.6.1, 10.0.0.1").get("/api/greeting").then().statusCode(200);
+        given().header("X-Forwarded-For", "6.6.6.2, 10.0.0.1").get("/api/greeting").then().statusCode(429);
+        given().header("X-Forwarded-For", "10.0.0.2").get("/api/greeting").then().statusCode(200);
+    }
+
+    @Test
+    public void testTracesTheCallsAcrossServices() throws IOException {
+        File greetingSpans = folder.newFile();
+        File nameSpans = folder.newFile();
+        deployTracedNameService(nameSpans, 1);
+        deployGreetingService(new JsonObject()
+            .put("name-service.host", "localhost")
+            .put("name-service.port", 8082)
+            .put("tracing", tracing(greetingSpans, 1)));
+
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+
+        Map<String, JsonObject> greeting = spans(greetingSpans, 3);
+        Map<String, JsonObject> name = spans(nameSpans, 1);
+        JsonObject server = greeting.get("GET /api/greeting");
+        JsonObject breaker = greeting.get("circuit-breaker");
+        JsonObject client = greeting.get("GET /api/name");
+        JsonObject called = name.get("GET /api/name");
+        assertNull(server.getString("parentId"));
+        assertEquals(server.getString("id"), breaker.getString("parentId"));
+        assertEquals(breaker.getString("id"), client.getString("parentId"));
+        assertEquals("CLIENT", client.getString("kind"));
+        // The name service continues the trace of the greeting service.
+        assertEquals(client.getString("id"), called.getString("parentId"));
+        assertEquals(server.getString("traceId"), called.getString("traceId"));
+        assertEquals("200", called.getJsonObject("tags").getString("http.status_code"));
+    }
+
+    @Test
+    public void testKeepsTheFailedTracesOnly() throws IOException {
+        File greetingSpans = folder.newFile();
+        File nameSpans = folder.newFile();
+        deployTracedNameService(nameSpans, 0);
+        deployGreetingService(new JsonObject()
+            .put("name-service.host", "localhost")
+            .put("name-service.port", 8082)
+            .put("tracing", tracing(greetingSpans, 0)));
+
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, World!"));
+        changeNameServiceState("http://localhost:8082", "fail");
+        get("/api/greeting").then().statusCode(200).body("content", is("Hello, Fallback!"));
+
+        Map<String, JsonObject> greeting = spans(greetingSpans, 4);
+        Map<String, JsonObject> name = spans(nameSpans, 1);
+        // Only the spans of the failed trace, the successful one was dropped.
+        assertEquals(1, greeting.values().stream().map(span -> span.getString("traceId")).distinct().count());
+        assertTrue(greeting.get("GET /api/name").getJsonObject("tags").containsKey("error"));
+        assertEquals("true", greeting.get("circuit-breaker").getJsonObject("tags").getString("fallback"));
+        assertTrue(greeting.containsKey("fallback"));
+        assertEquals("500", name.get("GET /api/name").getJsonObject("tags").getString("http.status_code"));
+        assertEquals(greeting.get("GET /api/greeting").getString("traceId"),
+            name.get("GET /api/name").getString("traceId"));
+    }
+
+    private void deployTracedNameService(File spans, double sampleRate) {
+        AtomicBoolean deployed = new AtomicBoolean();
+        vertx.deployVerticle(NameServiceVerticle.class.getName(),
+            new DeploymentOptions().setConfig(new JsonObject()
+                .put("http.port", 8082)
+                .put("name-service.address", "traced-name-service")
+                .put("tracing", tracing(spans, sampleRate))),
+            ar -> deployed.set(ar.succeeded()));
+        await().untilAtomic(deployed, is(true));
+    }
+
+    private static JsonObject tracing(File spans, double sampleRate) {
+        return new JsonObject()
+            .put("sampleRate", sampleRate)
+            .put("exportPath", spans.getAbsolutePath())
+            .put("flushInterval", 100);
+    }
+
+    /**
+     * @return the spans exported to the file by name, once there are {@code count} of them
+     */
+    private static Map<String, JsonObject> spans(File file, int count) throws IOException {
+        await().atMost(5, TimeUnit.SECONDS).until(() -> Files.readAllLines(file.toPath()).size() >= count);
+        List<JsonObject> spans = Files.readAllLines(file.toPath()).stream()
+            .map(JsonObject::new)
+            .collect(Collectors.toList());
+        assertEquals(count, spans.size());
+        Map<String, JsonObject> byName = new HashMap<>();
+        spans.forEach(span -> byName.put(span.getString("name"), span));
+        return byName;
+    }
+
+    private void changeNameServiceState(String state) {
+        changeNameServiceState(NAME_SERVICE, state);
+    }
+
+    private void changeNameServiceState(String nameService, String state) {
+        given()
+            .body(new JsonObject().put("state", state).encode())
+            .when()
+            .put(nameService + "/api/state")
+            .then()
+            .statusCode(200)
+            .body("state", is(state));
+    }
+}
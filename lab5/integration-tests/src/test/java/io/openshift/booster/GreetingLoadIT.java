@@ -0,0 +1,224 @@
+package io.openshift.booster;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.HdrHistogram.Histogram;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientOptions;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Drives {@code /api/greeting} at a fixed arrival rate against in-process name and greeting services, fails the name
+ * service for a while, and reports the latency distribution and the circuit breaker transitions.
+ * <p>
+ * Requests are issued on schedule whether or not the previous ones completed (open model), and latencies are measured
+ * from the intended send time, so time spent queued behind slow requests is not omitted from the results.
+ * <p>
+ * Run with {@code mvn verify -Pload-test}, tuned with the {@code load.rate} (requests per second),
+ * {@code load.duration} (seconds), {@code load.connections} and {@code load.circuitMode} ({@code classic} or
+ * {@code sliding-window}) system properties. The HDR report is written to {@code target/load-test}.
+ */
+public class GreetingLoadIT {
+
+	private static final int RATE = Integer.getInteger("load.rate", 200);
+	private static final int DURATION = Integer.getInteger("load.duration", 15);
+	private static final int CONNECTIONS = Integer.getInteger("load.connections", 64);
+	private static final String CIRCUIT_MODE = System.getProperty("load.circuitMode", "classic");
+
+	private static final int GREETING_PORT = 8080;
+	private static final int NAME_PORT = 8081;
+
+	private static final String[] PHASES = { "ok", "fail", "recovered" };
+
+	private Vertx services;
+	private Vertx loader;
+
+	private final List<String> transitions = Collections.synchronizedList(new ArrayList<>());
+	private volatile String circuitState = "CLOSED";
+
+	// Only accessed from the loader event loop.
+	private final Histogram overall = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+	private final Histogram[] phases = new Histogram[PHASES.length];
+	private HttpClient client;
+	private long sent;
+	private long completed;
+	private long fallbacks;
+	private long errors;
+
+	@Before
+	public void deploy() throws Exception {
+		for (int i = 0; i < phases.length; i++) {
+			phases[i] = new Histogram(TimeUnit.MINUTES.toNanos(1), 3);
+		}
+
+		services = Vertx.vertx();
+		loader = Vertx.vertx();
+
+		CompletableFuture<String> name = new CompletableFuture<>();
+		services.deployVerticle(NameServiceVerticle.class.getName(),
+				new DeploymentOptions().setConfig(new JsonObject().put("http.port", NAME_PORT)),
+				ar -> complete(name, ar.succeeded(), ar.result(), ar.cause()));
+		name.get(30, TimeUnit.SECONDS);
+
+		CompletableFuture<String> greeting = new CompletableFuture<>();
+		services.deployVerticle(GreetingServiceVerticle.class.getName(),
+				new DeploymentOptions().setConfig(new JsonObject()
+						.put("http.port", GREETING_PORT)
+						.put("name-service.host", "localhost")
+						.put("name-service.port", NAME_PORT)
+						.put("circuit-breaker", new JsonObject().put("mode", CIRCUIT_MODE))),
+				ar -> complete(greeting, ar.succeeded(), ar.result(), ar.cause()));
+		greeting.get(30, TimeUnit.SECONDS);
+
+		long origin = System.nanoTime();
+		services.eventBus().<JsonObject>consumer("circuit-breaker", msg -> {
+			String state = msg.body().getString("state");
+			if (!state.equals(circuitState)) {
+				transitions.add(String.format("+%6dms %s -> %s",
+						TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin), circuitState, state));
+				circuitState = state;
+			}
+		});
+	}
+
+	@After
+	public void close() throws Exception {
+		CompletableFuture<Void> closed = new CompletableFuture<>();
+		loader.close(x -> services.close(y -> closed.complete(null)));
+		closed.get(30, TimeUnit.SECONDS);
+	}
+
+	@Test
+	public void greetingUnderLoad() throws Exception {
+		long total = (long) RATE * DURATION;
+		CompletableFuture<Void> done = new CompletableFuture<>();
+		loader.runOnContext(v -> start(total, done));
+		done.get(DURATION + 60, TimeUnit.SECONDS);
+
+		report(total);
+
+		assertThat(errors).isZero();
+		assertThat(fallbacks).isPositive();
+		assertThat(transitions.stream().anyMatch(t -> t.endsWith("-> OPEN"))).isTrue();
+	}
+
+	private void start(long total, CompletableFuture<Void> done) {
+		client = loader.createHttpClient(new HttpClientOptions()
+				.setDefaultHost("localhost")
+				.setDefaultPort(GREETING_PORT)
+				.setMaxPoolSize(CONNECTIONS)
+				.setMaxWaitQueueSize(-1));
+		long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+		// The name service fails during the second quarter, and the rest of the run shows the recovery.
+		long failAt = total / 4;
+		long recoverAt = total / 2;
+		long start = System.nanoTime();
+
+		loader.setPeriodic(1, id -> {
+			long due = Math.min(total, (System.nanoTime() - start) / interval + 1);
+			while (sent < due) {
+				if (sent == failAt) {
+					changeNameServiceState("fail");
+				} else if (sent == recoverAt) {
+					changeNameServiceState("ok");
+				}
+				int phase = sent < failAt ? 0 : sent < recoverAt ? 1 : 2;
+				send(start + sent * interval, phase, total, done);
+				sent++;
+			}
+			if (sent == total) {
+				loader.cancelTimer(id);
+			}
+		});
+	}
+
+	private void send(long intended, int phase, long total, CompletableFuture<Void> done) {
+		client.get("/api/greeting", resp -> resp.bodyHandler(body -> {
+			long latency = System.nanoTime() - intended;
+			overall.recordValue(latency);
+			phases[phase].recordValue(latency);
+			if (resp.statusCode() != 200) {
+				errors++;
+			} else if (body.toJsonObject().getString("content").contains("Fallback")) {
+				fallbacks++;
+			}
+			onCompleted(total, done);
+		}))
+				.exceptionHandler(t -> {
+					errors++;
+					onCompleted(total, done);
+				})
+				.setTimeout(TimeUnit.SECONDS.toMillis(30))
+				.end();
+	}
+
+	private void onCompleted(long total, CompletableFuture<Void> done) {
+		if (++completed == total) {
+			done.complete(null);
+		}
+	}
+
+	private void changeNameServiceState(String state) {
+		client.put(NAME_PORT, "localhost", "/api/state", resp -> transitions.add(String.format("name-service -> %s (%d)",
+				state, resp.statusCode())))
+				.end(new JsonObject().put("state", state).encode());
+	}
+
+	private void report(long total) throws Exception {
+		PrintStream out = System.out;
+		out.printf("%nGreeting load test: %d req/s for %ds (%d requests, %d connections, %s circuit breaker)%n",
+				RATE, DURATION, total, CONNECTIONS, CIRCUIT_MODE);
+		out.printf("completed=%d fallbacks=%d errors=%d%n%n", completed, fallbacks, errors);
+		out.printf("%-10s %8s %9s %9s %9s %9s %9s%n", "phase", "count", "p50(ms)", "p90(ms)", "p99(ms)", "p99.9(ms)",
+				"max(ms)");
+		for (int i = 0; i < phases.length; i++) {
+			printSummary(out, PHASES[i], phases[i]);
+		}
+		printSummary(out, "all", overall);
+
+		out.println();
+		out.println("Circuit breaker transitions:");
+		synchronized (transitions) {
+			transitions.forEach(t -> out.println("  " + t));
+		}
+
+		File dir = new File("target/load-test");
+		dir.mkdirs();
+		try (PrintStream hgrm = new PrintStream(new File(dir, "greeting-latency.hgrm"), "UTF-8")) {
+			overall.outputPercentileDistribution(hgrm, 1_000_000.0);
+		}
+	}
+
+	private static void printSummary(PrintStream out, String name, Histogram histogram) {
+		out.printf("%-10s %8d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(),
+				millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+				millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+				millis(histogram.getMaxValue()));
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+
+	private static <T> void complete(CompletableFuture<T> future, boolean succeeded, T result, Throwable cause) {
+		if (succeeded) {
+			future.complete(result);
+		} else {
+			future.completeExceptionally(cause);
+		}
+	}
+}
@@ -23,9 +23,14 @@ public class NameServiceVerticle extends AbstractVerticle {
     public void start() throws Exception {
 
         Router router = Router.router(vertx);
+        // Traces the requests with the tracing options, e.g. {"sampleRate": 0.1, "slowThreshold": 500}.
+        Tracer tracer = Tracer.create(vertx, "name-service", config().getJsonObject("tracing"));
 
         router.route().handler(BodyHandler.create());
         router.get("/health").handler(rc -> rc.response().end("OK"));
+        if (tracer.enabled()) {
+            router.route().handler(tracer);
+        }
         router.route().handler(CorsHandler.create("*").allowedMethod(HttpMethod.GET).allowedMethod(HttpMethod.PUT));
         router.get("/api/state").handler(rc ->
             rc.response()
@@ -53,8 +58,31 @@ public class NameServiceVerticle extends AbstractVerticle {
                     break;
             }
         });
+
+        // Same service over the event bus, replies are delivered without copy when co-deployed.
+        NameReplyCodec.register(vertx.eventBus());
+        NameReply reply = new NameReply(NAME);
+        String address = config().getString("name-service.address", NameReply.ADDRESS);
+        vertx.eventBus().consumer(address, msg -> {
+            Span span = tracer.receive("CONSUMER", address, msg.headers().get(Span.TRACEPARENT));
+            switch (state) {
+                case "ok":
+                    msg.reply(reply);
+                    break;
+                default:
+                    span.error("Name Service Down");
+                    msg.fail(500, "Name Service Down");
+                    break;
+            }
+            span.end();
+        });
+
         vertx.createHttpServer()
             .requestHandler(router::accept)
-            .listen(8080);
+            .listen(config().getInteger("http.port", 8080), ar -> {
+                if (ar.succeeded()) {
+                    StartupReport.listening("name-service", ar.result().actualPort());
+                }
+            });
     }
 }
@@ -1,37 +1,113 @@
 package io.openshift.booster;
 
 import io.openshift.booster.service.Store;
+import io.openshift.booster.service.StoreErrors;
+import io.openshift.booster.service.impl.BatchedReadStore;
+import io.openshift.booster.service.impl.BlockingJdbcProductStore;
+import io.openshift.booster.service.impl.CachedCatalogueStore;
+import io.openshift.booster.service.impl.CombinedStockStore;
+import io.openshift.booster.service.impl.InMemoryProductStore;
 import io.openshift.booster.service.impl.JdbcProductStore;
-import io.vertx.core.json.JsonArray;
+import io.openshift.booster.service.impl.LogProductStore;
+import io.openshift.booster.service.impl.ProductCopy;
+import io.openshift.booster.service.impl.QueryStats;
+import io.openshift.booster.service.impl.SearchIndexStore;
+import io.openshift.booster.service.impl.ShardedProductStore;
+import io.openshift.booster.service.impl.SnowflakeIdGenerator;
+import io.vertx.core.Future;
+import io.vertx.core.http.HttpServerOptions;
 import io.vertx.core.json.JsonObject;
 import io.vertx.rxjava.core.AbstractVerticle;
+import io.vertx.rxjava.core.buffer.Buffer;
 import io.vertx.rxjava.core.http.HttpServer;
 import io.vertx.rxjava.core.http.HttpServerResponse;
 import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.ext.sql.SQLConnection;
 import io.vertx.rxjava.ext.web.Router;
 import io.vertx.rxjava.ext.web.RoutingContext;
 import io.vertx.rxjava.ext.web.handler.BodyHandler;
 import io.vertx.rxjava.ext.web.handler.StaticHandler;
+import rx.Completable;
+import rx.Observable;
 import rx.Single;
 
-import java.util.NoSuchElementException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Collectors;
 
 import static io.openshift.booster.Errors.error;
 
 public class CrudApplication extends AbstractVerticle {
 
+  private static final int MAX_IDS = 100;
+  private static final int MAX_SEARCH_LIMIT = 100;
+  private static final int MAX_SLOWEST = 100;
+  private static final String SESSION_TOKEN = "X-Session-Token";
+
+  private static final Errors.Template INVALID_PAYLOAD = Errors.template(415, "invalid payload");
+  private static final Errors.Template INVALID_DELTA = Errors.template(422, "The delta must be an integer");
+  private static final Errors.Template SEARCH_DISABLED = Errors.template(501, "The search index is disabled");
+  private static final Errors.Template STATS_DISABLED = Errors.template(501, "The query stats are disabled");
+  private static final Errors.Template COPY_UNSUPPORTED =
+    Errors.template(501, "Export and import need a PostgreSQL store");
+
   private Store store;
+  // The store, when serving the pre-encoded product list.
+  private CachedCatalogueStore catalogue;
+  // The bulk export and import, with a PostgreSQL store.
+  private ProductCopy copy;
+  // The store, when searching the products.
+  private SearchIndexStore index;
+  // The JDBC store, when reading from replicas.
+  private JdbcProductStore replicated;
+  // The timing of the JDBC store statements, when enabled.
+  private QueryStats queryStats;
+  private volatile boolean ready;
 
   @Override
   public void start() {
     // Create a router object.
     Router router = Router.router(vertx);
+
+    // health check, before the rate limit
+    router.get("/health").handler(rc -> rc.response().end("OK"));
+    router.get("/api/health/readiness").handler(rc -> {
+      if (ready) {
+        rc.response().end("OK");
+      } else {
+        rc.response().setStatusCode(503).end("Not ready");
+      }
+    });
+
+    // per client rate limit of the API, with the rate.limit options, e.g. {"rate": 50, "burst": 100}
+    if (config().containsKey("rate.limit")) {
+      RateLimitHandler rateLimit = RateLimitHandler.create(vertx.getDelegate(), config().getJsonObject("rate.limit"));
+      router.route("/api/*").handler(rc -> rateLimit.handle(rc.getDelegate()));
+    }
+
+    // bulk export and import, streamed, so before the body parsing
+    router.get("/api/products/_export").handler(this::exportProducts);
+    router.post("/api/products/_import").handler(this::importProducts);
     
     // enable parsing of request bodies
     router.route().handler(BodyHandler.create());
     
+    // search, before the :id routes
+    router.get("/api/products/_search").handler(this::searchProducts);
+
+    // the slowest statements and the latency percentiles of the JDBC store
+    router.get("/api/stats/queries").handler(this::showQueryStats);
+
     // perform validation of the :id parameter
     router.route("/api/products/:id").handler(this::validateId);
+    router.route("/api/products/:id/stock").handler(this::validateId);
     
     // implement a basic REST CRUD mapping
     router.get("/api/products").handler(this::retrieveAll);
@@ -39,36 +115,295 @@ public class CrudApplication extends AbstractVerticle {
     router.get("/api/products/:id").handler(this::getOne);
     router.put("/api/products/:id").handler(this::updateOne);
     router.delete("/api/products/:id").handler(this::deleteOne);
+    router.patch("/api/products/:id/stock").handler(this::adjustStock);
 
-    // health check
-    router.get("/health").handler(rc -> rc.response().end("OK"));
-    
     // web interface
     router.get().handler(StaticHandler.create());
 
-    // Create a JDBC client
-    JDBCClient jdbc = JDBCClient.createShared(vertx, new JsonObject()
+    // "jdbc-client" (default), "blocking-jdbc" for plain JDBC calls on their own threads, "in-memory", "log" for
+    // a write-ahead log on local disk, or "sharded" for several databases
+    String storeType = config().getString("store.type", "jdbc-client");
+    boolean database = !"in-memory".equals(storeType) && !"log".equals(storeType);
+    JDBCClient jdbc = null;
+    Completable init;
+    // The JDBC configuration of the database, and of the replicas and shards but their host
+    JsonObject jdbcConfig = new JsonObject()
       .put("url", "jdbc:postgresql://" + getEnv("MY_DATABASE_SERVICE_HOST", "localhost") + ":5432/my_data")
       .put("driver_class", "org.postgresql.Driver")
       .put("user", getEnv("DB_USERNAME", "user"))
       .put("password", getEnv("DB_PASSWORD", "password"))
-    );
+      // cache the prepared statements, primed by the warm-up
+      .put("max_statements_per_connection", 16);
+    QueryStats stats = queryStats();
+    if ("in-memory".equals(storeType)) {
+      init = vertx.rxExecuteBlocking(this::initInMemoryStore).toCompletable();
+    } else if ("log".equals(storeType)) {
+      init = vertx.rxExecuteBlocking(this::initLogStore).toCompletable();
+    } else if ("sharded".equals(storeType)) {
+      init = initShardedStore(jdbcConfig, stats);
+    } else {
+      jdbc = JDBCClient.createShared(vertx, jdbcConfig);
+      copy = new ProductCopy(vertx, jdbcConfig, config().getInteger("copy.max_concurrency", 2));
+      List<JDBCClient> replicas = replicas(jdbcConfig);
+      if ("blocking-jdbc".equals(storeType)) {
+        if (!replicas.isEmpty()) {
+          System.out.println("The blocking JDBC store does not read from replicas, they are ignored");
+        }
+        store = new BlockingJdbcProductStore(vertx, jdbcConfig);
+      } else if (!replicas.isEmpty()) {
+        replicated = new JdbcProductStore(jdbc, replicas, config().getLong("db.replica.staleness", 1000L), stats);
+        store = replicated;
+      } else {
+        store = new JdbcProductStore(jdbc, Collections.emptyList(), 0, stats);
+      }
+      init = DBInitHelper.initDatabase(vertx, jdbc);
+    }
+    JDBCClient pool = jdbc;
+
+    // Reads of the same event loop turn share a query, by default when each read costs a connection.
+    if (config().getBoolean("read.batch.enabled", database)) {
+      init = init.doOnCompleted(() -> store = new BatchedReadStore(store, vertx,
+        config().getLong("read.batch.window", 0L), config().getInteger("read.batch.max", 64)));
+    }
+
+    // Concurrent stock adjustments of a product are sent as one, for hot products.
+    if (config().getBoolean("stock.combine.enabled", false)) {
+      init = init.doOnCompleted(() -> store = new CombinedStockStore(store));
+    }
+
+    // Loaded at startup and kept current by the writes, reloaded in the background every search.index.refresh ms when
+    // other applications may write to the database.
+    if (config().getBoolean("search.index.enabled", true)) {
+      long refresh = config().getLong("search.index.refresh", database ? 30000L : 0L);
+      init = init
+        .doOnCompleted(() -> {
+          index = new SearchIndexStore(store);
+          store = index;
+          if (refresh > 0) {
+            vertx.setPeriodic(refresh, id -> index.refresh().subscribe(() -> { }, Throwable::printStackTrace));
+          }
+        })
+        .andThen(Completable.defer(() -> index.load()));
+    }
+
+    // Only safe when this application is the only writer, so not by default with a shared database.
+    if (config().getBoolean("catalogue.cache.enabled", "in-memory".equals(storeType) || "log".equals(storeType))) {
+      init = init.doOnCompleted(() -> {
+        catalogue = new CachedCatalogueStore(store);
+        store = catalogue;
+      });
+    }
 
-    DBInitHelper.initDatabase(vertx, jdbc)
-      .andThen(initHttpServer(router, jdbc))
+    init
+      .andThen(initHttpServer(router))
+      .flatMap(http -> warmUp(pool, http.actualPort()).toSingleDefault(http))
       .subscribe(
-        (http) -> System.out.println("Server ready on port " + http.actualPort()),
+        (http) -> {
+          ready = true;
+          System.out.println("Server ready on port " + http.actualPort());
+        },
         Throwable::printStackTrace
       );
   }
 
-  private Single<HttpServer> initHttpServer(Router router, JDBCClient client) {
-    store = new JdbcProductStore(client);
+  @Override
+  public void stop(Future<Void> stopFuture) {
+    if (copy != null) {
+      copy.close();
+    }
+    // Closing the store may wait for its writes to be on disk, off the event loop.
+    vertx.<Void>executeBlocking(future -> {
+      try {
+        if (store instanceof Closeable) {
+          ((Closeable) store).close();
+        }
+        future.complete();
+      } catch (IOException e) {
+        future.fail(e);
+      }
+    }, stopFuture.completer());
+  }
+
+  /**
+   * @return the pools of the read replicas of {@code MY_DATABASE_REPLICA_HOSTS}, comma-separated {@code host[:port]},
+   * with the credentials of the primary
+   */
+  private List<JDBCClient> replicas(JsonObject jdbcConfig) {
+    List<JDBCClient> replicas = new ArrayList<>();
+    for (String host : getEnv("MY_DATABASE_REPLICA_HOSTS", "").split(",")) {
+      if (!host.trim().isEmpty()) {
+        String address = host.trim().contains(":") ? host.trim() : host.trim() + ":5432";
+        replicas.add(JDBCClient.createShared(vertx,
+          jdbcConfig.copy().put("url", "jdbc:postgresql://" + address + "/my_data"), "replica-" + replicas.size()));
+      }
+    }
+    return replicas;
+  }
+
+  /**
+   * Spreads the products over the databases of {@code MY_DATABASE_SHARD_HOSTS}, comma-separated {@code host[:port]}
+   * naming the shards, with the credentials of {@code jdbcConfig}. The ids are generated with the
+   * {@code store.shard.worker} id, between 0 and 1023, which must differ between the instances of the application, by
+   * default the ordinal of the stateful set pod, from the host name. Empty shards start with the products of
+   * {@code ddl.sql}.
+   */
+  private Completable initShardedStore(JsonObject jdbcConfig, QueryStats stats) {
+    Map<String, JdbcProductStore> shards = new LinkedHashMap<>();
+    List<Completable> schemas = new ArrayList<>();
+    for (String host : getEnv("MY_DATABASE_SHARD_HOSTS", "").split(",")) {
+      if (!host.trim().isEmpty()) {
+        String address = host.trim().contains(":") ? host.trim() : host.trim() + ":5432";
+        JDBCClient shard = JDBCClient.createShared(vertx,
+          jdbcConfig.copy().put("url", "jdbc:postgresql://" + address + "/my_data"), "shard-" + address);
+        shards.put(address, new JdbcProductStore(shard, Collections.emptyList(), 0, stats));
+        schemas.add(DBInitHelper.initDatabase(vertx, shard, "ddl-shard.sql"));
+      }
+    }
+    if (shards.isEmpty()) {
+      return Completable.error(new IllegalStateException("The sharded store needs MY_DATABASE_SHARD_HOSTS"));
+    }
+    int worker = config().getInteger("store.shard.worker", SnowflakeIdGenerator.podOrdinal(getEnv("HOSTNAME", "")));
+    if (worker < 0) {
+      return Completable.error(new IllegalStateException(
+        "The sharded store needs store.shard.worker, unless running in a stateful set pod"));
+    }
+    ShardedProductStore sharded = new ShardedProductStore(shards,
+      SnowflakeIdGenerator.create(vertx.getDelegate(), worker));
+    store = sharded;
+    return Completable.merge(schemas)
+      .andThen(sharded.readAll().isEmpty().toSingle())
+      .flatMapCompletable(empty -> !empty ? Completable.complete() : Observable
+        .just("iPhone", "Android", "Blackberry")
+        .concatMap(name -> sharded.create(new JsonObject().put("name", name).put("stock", 10)).toObservable())
+        .toCompletable());
+  }
+
+  /**
+   * Times the statements of the JDBC stores when {@code query.stats.enabled}, logging those slower than
+   * {@code query.stats.slow_threshold} ms and ranking the slowest of the last {@code query.stats.window} ms. The
+   * blocking JDBC store is not timed.
+   */
+  private QueryStats queryStats() {
+    if (!config().getBoolean("query.stats.enabled", false)) {
+      return QueryStats.NONE;
+    }
+    JsonObject options = new JsonObject();
+    for (String key : new String[]{"slow_threshold", "window", "slots"}) {
+      if (config().containsKey("query.stats." + key)) {
+        options.put(key, config().getValue("query.stats." + key));
+      }
+    }
+    queryStats = QueryStats.create(vertx.getDelegate(), options);
+    return queryStats;
+  }
+
+  /**
+   * Restores the products of the {@code store.snapshot.path} snapshot and writes new snapshots every
+   * {@code store.snapshot.period} ms. Without snapshot, the store starts with the products of {@code ddl.sql}.
+   */
+  private void initInMemoryStore(io.vertx.rxjava.core.Future<Void> future) {
+    InMemoryProductStore memory = new InMemoryProductStore();
+    String snapshot = config().getString("store.snapshot.path");
+    try {
+      if (snapshot == null || !memory.load(Paths.get(snapshot))) {
+        seed(memory);
+      }
+    } catch (IOException e) {
+      future.fail(e);
+      return;
+    }
+    if (snapshot != null) {
+      // The timer runs on the verticle event loop.
+      context.runOnContext(v ->
+        memory.startSnapshots(vertx, Paths.get(snapshot), config().getLong("store.snapshot.period", 5000L)));
+    }
+    store = memory;
+    future.complete();
+  }
+
+  /**
+   * Opens the write-ahead log of the {@code store.log.path} directory, tuned with {@code store.log.segment_size},
+   * {@code store.log.compaction_threshold} and {@code store.log.compaction_interval}. A new log starts with the
+   * products of {@code ddl.sql}.
+   */
+  private void initLogStore(io.vertx.rxjava.core.Future<Void> future) {
+    JsonObject logConfig = new JsonObject().put("path", config().getString("store.log.path", "products-log"));
+    for (String key : new String[]{"segment_size", "compaction_threshold", "compaction_interval"}) {
+      if (config().containsKey("store.log." + key)) {
+        logConfig.put(key, config().getValue("store.log." + key));
+      }
+    }
+    LogProductStore log = new LogProductStore(vertx, logConfig);
+    try {
+      log.open();
+    } catch (IOException e) {
+      future.fail(e);
+      return;
+    }
+    if (log.readAll().isEmpty().toBlocking().single()) {
+      seed(log);
+    }
+    store = log;
+    future.complete();
+  }
+
+  /**
+   * Creates the products of {@code ddl.sql}, blocking until they are stored.
+   */
+  private static void seed(Store store) {
+    for (String name : new String[]{"iPhone", "Android", "Blackberry"}) {
+      store.create(new JsonObject().put("name", name).put("stock", 10)).toBlocking().value();
+    }
+  }
+
+  /**
+   * Opens the pool connections and exercises the read routes, so the first requests after a scale-out do not run
+   * interpreted code on cold connections. Enabled with {@code warmup.enabled}.
+   */
+  private Completable warmUp(JDBCClient jdbc, int port) {
+    if (!config().getBoolean("warmup.enabled", false)) {
+      return Completable.complete();
+    }
+    Completable prefill = jdbc == null ? Completable.complete() : Observable
+      .range(0, config().getInteger("warmup.connections", 15))
+      .flatMapSingle(i -> jdbc.rxGetConnection())
+      .toList()
+      .doOnNext(connections -> connections.forEach(SQLConnection::close))
+      .toCompletable();
+    return prefill
+      .andThen(store.readAll().take(10).map(json -> json.getLong("id")).toList().toSingle())
+      .flatMap(ids -> {
+        WarmUp warmUp = WarmUp.create(vertx.getDelegate(), port)
+          .addRequest("/api/products")
+          .setTimeBudget(config().getLong("warmup.time-budget", 30000L));
+        ids.forEach(id -> warmUp.addRequest("/api/products/" + id));
+        return Single.<JsonObject>create(subscriber -> warmUp.run().setHandler(ar -> subscriber.onSuccess(ar.result())));
+      })
+      .doOnSuccess(summary -> System.out.println("Warm-up completed: " + summary.encode()))
+      .toCompletable();
+  }
+
+  private Single<HttpServer> initHttpServer(Router router) {
     // Create the HTTP server and pass the "accept" method to the request handler.
     return vertx
-      .createHttpServer()
+      .createHttpServer(serverOptions())
       .requestHandler(router::accept)
-      .rxListen(8080);
+      .rxListen(8080)
+      .doOnSuccess(http -> StartupReport.listening("crud-vertx", http.actualPort()));
+  }
+
+  /**
+   * The server options from the {@code http.server} configuration, e.g.
+   * {@code {"reusePort": true, "tcpFastOpen": true, "tcpQuickAck": true}}. These socket options need the native
+   * transport, enabled with {@code -Dvertx.options.preferNativeTransport=true}, and are ignored otherwise.
+   */
+  private HttpServerOptions serverOptions() {
+    HttpServerOptions options = new HttpServerOptions(config().getJsonObject("http.server", new JsonObject()));
+    if (!vertx.isNativeTransportEnabled()
+        && (options.isReusePort() || options.isTcpFastOpen() || options.isTcpQuickAck() || options.isTcpCork())) {
+      System.out.println("Native transport not enabled, reusePort, tcpFastOpen, tcpQuickAck and tcpCork are ignored");
+    }
+    return options;
   }
 
   private void validateId(RoutingContext ctx) {
@@ -82,59 +417,95 @@ public class CrudApplication extends AbstractVerticle {
   }
 
   private void retrieveAll(RoutingContext ctx) {
-    HttpServerResponse response = ctx.response()
-      .putHeader("Content-Type", "application/json");
-    JsonArray res = new JsonArray();
-    store.readAll()
+    if (ctx.request().getParam("ids") != null) {
+      retrieveMany(ctx, ctx.request().getParam("ids"));
+      return;
+    }
+    ProductEncoding encoding = accepted(ctx);
+    if (catalogue != null && encoding == ProductEncoding.JSON) {
+      catalogue.encodedAll()
+        .subscribe(
+          buffer -> ctx.response()
+            .putHeader("Content-Type", encoding.contentType())
+            .putHeader("Vary", "Accept")
+            .end(Buffer.newInstance(buffer)),
+          err -> error(ctx, err, 415)
+        );
+      return;
+    }
+    reads(ctx).readAll()
+      .toList()
       .subscribe(
-        res::add,
-        err -> error(ctx, 415, err),
-        () -> response.end(res.encodePrettily())
+        products -> respond(ctx, 200, encoding.encode(products)),
+        err -> error(ctx, err, 415)
       );
   }
 
+  /**
+   * Lists the products of the comma-separated ids, in this order, skipping the unknown ones.
+   */
+  private void retrieveMany(RoutingContext ctx, String param) {
+    List<Long> ids = new ArrayList<>();
+    try {
+      for (String id : param.split(",")) {
+        if (!id.trim().isEmpty()) {
+          ids.add(Long.parseLong(id.trim()));
+        }
+      }
+    } catch (NumberFormatException e) {
+      error(ctx, 400, "invalid ids: " + param);
+      return;
+    }
+    if (ids.size() > MAX_IDS) {
+      error(ctx, 400, "too many ids, at most " + MAX_IDS);
+      return;
+    }
 
-  private void getOne(RoutingContext ctx) {
-    HttpServerResponse response = ctx.response()
-      .putHeader("Content-Type", "application/json");
+    reads(ctx).readMany(ids)
+      .toMap(json -> json.getLong("id"))
+      .subscribe(
+        products -> respond(ctx, 200, accepted(ctx).encode(ids.stream().distinct().filter(products::containsKey)
+          .map(products::get).collect(Collectors.toList()))),
+        err -> error(ctx, err, 500)
+      );
+  }
 
-    store.read(ctx.get("productId"))
+  private void getOne(RoutingContext ctx) {
+    reads(ctx).find(ctx.get("productId"))
+      .singleOrDefault(null)
       .subscribe(
-        json -> response.end(json.encodePrettily()),
-        err -> {
-          if (err instanceof NoSuchElementException) {
-            error(ctx, 404, err);
-          } else if (err instanceof IllegalArgumentException) {
-            error(ctx, 415, err);
+        json -> {
+          if (json == null) {
+            error(ctx, 404, StoreErrors.NOT_FOUND);
           } else {
-            error(ctx, 500, err);
+            respond(ctx, 200, accepted(ctx).encode(json));
           }
-        }
+        },
+        err -> error(ctx, err, 500)
       );
   }
 
   private void addOne(RoutingContext ctx) {
     JsonObject item;
     try {
-      item = ctx.getBodyAsJson();
+      item = body(ctx);
     } catch (RuntimeException e) {
-      error(ctx, 415, "invalid payload");
+      error(ctx, INVALID_PAYLOAD);
       return;
     }
 
     if (item == null) {
-      error(ctx, 415, "invalid payload");
+      error(ctx, INVALID_PAYLOAD);
       return;
     }
 
     store.create(item)
       .subscribe(
-        json ->
-          ctx.response()
-            .putHeader("Location", "/api/products/" + json.getLong("id"))
-            .putHeader("Content-Type", "application/json")
-            .setStatusCode(201)
-            .end(json.encodePrettily()),
+        json -> {
+          wrote(ctx);
+          ctx.response().putHeader("Location", "/api/products/" + json.getLong("id"));
+          respond(ctx, 201, accepted(ctx).encode(json));
+        },
         err -> writeError(ctx, err)
       );
   }
@@ -142,55 +513,269 @@ public class CrudApplication extends AbstractVerticle {
   private void updateOne(RoutingContext ctx) {
     JsonObject item;
     try {
-      item = ctx.getBodyAsJson();
+      item = body(ctx);
     } catch (RuntimeException e) {
-      error(ctx, 415, "invalid payload");
+      error(ctx, INVALID_PAYLOAD);
       return;
     }
 
     if (item == null) {
-      error(ctx, 415, "invalid payload");
+      error(ctx, INVALID_PAYLOAD);
       return;
     }
 
     store.update(ctx.get("productId"), item)
       .subscribe(
-        () ->
-          ctx.response()
-            .putHeader("Content-Type", "application/json")
-            .setStatusCode(200)
-            .end(item.put("id", ctx.<Long>get("productId")).encodePrettily()),
+        () -> {
+          wrote(ctx);
+          respond(ctx, 200, accepted(ctx).encode(item.put("id", ctx.<Long>get("productId"))));
+        },
         err -> writeError(ctx, err)
       );
   }
 
-  private void writeError(RoutingContext ctx, Throwable err) {
-    if (err instanceof NoSuchElementException) {
-      error(ctx, 404, err);
-    } else if (err instanceof IllegalArgumentException) {
-      error(ctx, 422, err);
-    } else {
-      error(ctx, 409, err);
+  /**
+   * Adds the signed {@code delta} of the payload to the stock, failing with 409 when the stock is insufficient.
+   */
+  private void adjustStock(RoutingContext ctx) {
+    JsonObject body;
+    try {
+      body = body(ctx);
+    } catch (RuntimeException e) {
+      error(ctx, INVALID_PAYLOAD);
+      return;
+    }
+
+    if (body == null) {
+      error(ctx, INVALID_PAYLOAD);
+      return;
+    }
+    if (!(body.getValue("delta") instanceof Integer) && !(body.getValue("delta") instanceof Long)) {
+      error(ctx, INVALID_DELTA);
+      return;
     }
+
+    long id = ctx.get("productId");
+    store.adjustStock(id, body.getLong("delta"))
+      .subscribe(
+        stock -> {
+          wrote(ctx);
+          respond(ctx, 200, accepted(ctx).encode(new JsonObject().put("id", id).put("stock", stock)));
+        },
+        err -> writeError(ctx, err)
+      );
   }
 
-  private void deleteOne(RoutingContext ctx) {
-    store.delete(ctx.get("productId"))
+  /**
+   * Finds the products whose name contains {@code q}, with a stock of at least {@code minStock}, ranked, from
+   * {@code offset}, at most {@code limit}.
+   */
+  private void searchProducts(RoutingContext ctx) {
+    if (index == null) {
+      error(ctx, SEARCH_DISABLED);
+      return;
+    }
+    long minStock;
+    int offset;
+    int limit;
+    try {
+      minStock = Long.parseLong(param(ctx, "minStock", "0"));
+      offset = Integer.parseInt(param(ctx, "offset", "0"));
+      limit = Integer.parseInt(param(ctx, "limit", "20"));
+    } catch (NumberFormatException e) {
+      error(ctx, 400, "invalid number: " + e.getMessage());
+      return;
+    }
+    if (offset < 0 || limit < 1 || limit > MAX_SEARCH_LIMIT) {
+      error(ctx, 400, "invalid page, the limit is at most " + MAX_SEARCH_LIMIT);
+      return;
+    }
+
+    index.search(ctx.request().getParam("q"), minStock, offset, limit)
+      .subscribe(
+        result -> respond(ctx, 200, accepted(ctx).encode(result)),
+        err -> error(ctx, err, 500)
+      );
+  }
+
+  /**
+   * Lists the {@code top} slowest statements of the query stats window, and the latency percentiles of each statement,
+   * in microseconds.
+   */
+  private void showQueryStats(RoutingContext ctx) {
+    if (queryStats == null) {
+      error(ctx, STATS_DISABLED);
+      return;
+    }
+    int top;
+    try {
+      top = Integer.parseInt(param(ctx, "top", "10"));
+    } catch (NumberFormatException e) {
+      error(ctx, 400, "invalid number: " + e.getMessage());
+      return;
+    }
+    if (top < 1 || top > MAX_SLOWEST) {
+      error(ctx, 400, "invalid top, at most " + MAX_SLOWEST);
+      return;
+    }
+
+    ctx.response()
+      .putHeader("Content-Type", "application/json")
+      .end(queryStats.toJson(top).encodePrettily());
+  }
+
+  private static String param(RoutingContext ctx, String name, String defaultValue) {
+    String value = ctx.request().getParam(name);
+    return value == null ? defaultValue : value;
+  }
+
+  /**
+   * Streams all the products, as CSV with a header, or one JSON object per line with {@code format=ndjson}.
+   */
+  private void exportProducts(RoutingContext ctx) {
+    ProductCopy.Format format = copyFormat(ctx);
+    if (format == null) {
+      return;
+    }
+
+    HttpServerResponse response = ctx.response()
+      .setChunked(true)
+      .putHeader("Content-Type", format == ProductCopy.Format.CSV ? "text/csv" : "application/x-ndjson");
+    copy.export(format, response.getDelegate())
+      .subscribe(
+        response::end,
+        err -> {
+          if (response.headWritten()) {
+            // Too late for an error status.
+            response.close();
+          } else {
+            error(ctx, err instanceof RejectedExecutionException ? 503 : 500, err);
+          }
+        }
+      );
+  }
+
+  /**
+   * Inserts the products of the request body, in the format of {@link #exportProducts(RoutingContext)}, in one
+   * transaction. With {@code replace=true} the existing products are deleted first.
+   */
+  private void importProducts(RoutingContext ctx) {
+    ProductCopy.Format format = copyFormat(ctx);
+    if (format == null) {
+      return;
+    }
+
+    copy.importFrom(format, "true".equals(ctx.request().getParam("replace")), ctx.request().getDelegate())
+      .doAfterTerminate(() -> {
+        if (catalogue != null) {
+          catalogue.invalidate();
+        }
+        if (index != null) {
+          index.invalidate();
+        }
+      })
       .subscribe(
-        () ->
+        count -> {
+          wrote(ctx);
           ctx.response()
-            .setStatusCode(204)
-            .end(),
+            .putHeader("Content-Type", "application/json")
+            .end(new JsonObject().put("imported", count).encodePrettily());
+        },
         err -> {
-          if (err instanceof NoSuchElementException) {
-            error(ctx, 404, err);
+          if (err instanceof IllegalArgumentException) {
+            error(ctx, 422, err);
+          } else if (err instanceof IllegalStateException) {
+            error(ctx, 409, err);
+          } else if (err instanceof RejectedExecutionException) {
+            error(ctx, 503, err);
           } else {
-            error(ctx, 415, err);
+            error(ctx, 500, err);
           }
         }
       );
   }
 
+  /**
+   * @return the {@code format} parameter of an export or import, {@code null} when the request was answered
+   */
+  private ProductCopy.Format copyFormat(RoutingContext ctx) {
+    if (copy == null) {
+      error(ctx, COPY_UNSUPPORTED);
+      return null;
+    }
+    String format = ctx.request().getParam("format");
+    try {
+      return format == null ? ProductCopy.Format.CSV : ProductCopy.Format.valueOf(format.toUpperCase());
+    } catch (IllegalArgumentException e) {
+      error(ctx, 400, "invalid format: " + format);
+      return null;
+    }
+  }
+
+  /**
+   * @return the store for the reads of the request, reading from the primary database while the replicas may miss the
+   * last write of the client, as told by its session token
+   */
+  private Store reads(RoutingContext ctx) {
+    String token = ctx.request().getHeader(SESSION_TOKEN);
+    if (replicated == null || token == null) {
+      return store;
+    }
+    try {
+      return replicated.replicasMayMiss(Long.parseLong(token)) ? replicated.primaryReads() : store;
+    } catch (NumberFormatException e) {
+      return store;
+    }
+  }
+
+  /**
+   * Gives the client the session token of its write, to send back with its next reads.
+   */
+  private void wrote(RoutingContext ctx) {
+    if (replicated != null) {
+      ctx.response().putHeader(SESSION_TOKEN, String.valueOf(replicated.sessionToken()));
+    }
+  }
+
+  /**
+   * @return the encoding of the responses, negotiated with the {@code Accept} header
+   */
+  private static ProductEncoding accepted(RoutingContext ctx) {
+    return ProductEncoding.accepted(ctx.request().getHeader("Accept"));
+  }
+
+  /**
+   * @return the product of the request body, in the encoding of its {@code Content-Type}, {@code null} when empty
+   */
+  private static JsonObject body(RoutingContext ctx) {
+    return ProductEncoding.of(ctx.request().getHeader("Content-Type")).decode(ctx.getBody().getDelegate());
+  }
+
+  private static void respond(RoutingContext ctx, int status, io.vertx.core.buffer.Buffer payload) {
+    ctx.response()
+      .putHeader("Content-Type", accepted(ctx).contentType())
+      .putHeader("Vary", "Accept")
+      .setStatusCode(status)
+      .end(Buffer.newInstance(payload));
+  }
+
+  private void writeError(RoutingContext ctx, Throwable err) {
+    error(ctx, err, 409);
+  }
+
+  private void deleteOne(RoutingContext ctx) {
+    store.delete(ctx.get("productId"))
+      .subscribe(
+        () -> {
+          wrote(ctx);
+          ctx.response()
+            .setStatusCode(204)
+            .end();
+        },
+        err -> error(ctx, err, 415)
+      );
+  }
+
   private String getEnv(String key, String dv) {
     String s = System.getenv(key);
     if (s == null) {
@@ -17,9 +17,16 @@ public class DBInitHelper {
   }
 
   public static Completable initDatabase(Vertx vertx, JDBCClient jdbc) {
+    return initDatabase(vertx, jdbc, "ddl.sql");
+  }
+
+  /**
+   * Runs the statements of the given script, separated by {@code ;}.
+   */
+  public static Completable initDatabase(Vertx vertx, JDBCClient jdbc, String script) {
     return jdbc.rxGetConnection()
       .flatMapCompletable(connection ->
-        vertx.fileSystem().rxReadFile("ddl.sql")
+        vertx.fileSystem().rxReadFile(script)
           .flatMapObservable(buffer -> Observable.from(buffer.toString().split(";")))
           .flatMapSingle(connection::rxExecute)
           .doAfterTerminate(connection::close)
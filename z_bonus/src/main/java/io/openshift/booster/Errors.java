@@ -1,13 +1,50 @@
 package io.openshift.booster;
 
+import io.openshift.booster.service.StoreErrors;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.Json;
 import io.vertx.core.json.JsonObject;
 import io.vertx.rxjava.ext.web.RoutingContext;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+
 /**
  * @author <a href="http://escoffier.me">Clement Escoffier</a>
  */
 public class Errors {
 
+  /**
+   * At most this many expected errors are cached, their messages are constants but nothing forbids a value.
+   */
+  private static final int MAX_TEMPLATES = 1024;
+  private static final String PATH = "\u0000path\u0000";
+
+  // The templates of the expected store errors, by status and message.
+  private static final Map<String, Template> TEMPLATES = new ConcurrentHashMap<>();
+
+  /**
+   * @return the encoded error of a constant cause, to keep and answer with {@link #error(RoutingContext, Template)}
+   */
+  public static Template template(int status, String cause) {
+    return new Template(status, cause);
+  }
+
+  /**
+   * Answers with the error of the template, only the path is encoded.
+   */
+  public static void error(RoutingContext ctx, Template template) {
+    ctx.response()
+      .putHeader("Content-Type", "application/json")
+      .setStatusCode(template.status)
+      .end(io.vertx.rxjava.core.buffer.Buffer.newInstance(template.encode(ctx.request().path())));
+  }
+
+  /**
+   * Answers with the error, encoded each time, as the cause may include values of the request.
+   */
   public static void error(RoutingContext ctx, int status, String cause) {
     JsonObject error = new JsonObject()
       .put("error", cause)
@@ -19,9 +56,67 @@ public class Errors {
       .end(error.encodePrettily());
   }
 
+  /**
+   * Answers with the error, from a cached template for the expected store errors.
+   */
   public static void error(RoutingContext ctx, int status, Throwable cause) {
-    error(ctx, status, cause.getMessage());
+    if (!(cause instanceof StoreErrors.Expected)) {
+      error(ctx, status, cause.getMessage());
+      return;
+    }
+    String key = status + cause.getMessage();
+    Template template = TEMPLATES.get(key);
+    if (template == null) {
+      template = new Template(status, cause.getMessage());
+      if (TEMPLATES.size() < MAX_TEMPLATES) {
+        TEMPLATES.putIfAbsent(key, template);
+      }
+    }
+    error(ctx, template);
+  }
+
+  /**
+   * Answers with the status of the expected store errors, 503 for a store too busy to take the call, and
+   * {@code otherwise} for the unexpected ones.
+   */
+  public static void error(RoutingContext ctx, Throwable cause, int otherwise) {
+    int status;
+    if (cause instanceof StoreErrors.Expected) {
+      status = ((StoreErrors.Expected) cause).status();
+    } else if (cause instanceof RejectedExecutionException) {
+      status = 503;
+    } else {
+      status = otherwise;
+    }
+    error(ctx, status, cause);
   }
 
+  /**
+   * The encoded error around its path.
+   */
+  public static final class Template {
+    private final int status;
+    private final byte[] head;
+    private final byte[] tail;
+
+    private Template(int status, String cause) {
+      this.status = status;
+      String encoded = new JsonObject()
+        .put("error", cause)
+        .put("code", status)
+        .put("path", PATH)
+        .encodePrettily();
+      int path = encoded.indexOf(Json.encode(PATH));
+      this.head = encoded.substring(0, path).getBytes(StandardCharsets.UTF_8);
+      this.tail = encoded.substring(path + Json.encode(PATH).length()).getBytes(StandardCharsets.UTF_8);
+    }
 
+    private Buffer encode(String path) {
+      byte[] encoded = Json.encode(path).getBytes(StandardCharsets.UTF_8);
+      return Buffer.buffer(head.length + encoded.length + tail.length)
+        .appendBytes(head)
+        .appendBytes(encoded)
+        .appendBytes(tail);
+    }
+  }
 }
@@ -0,0 +1,205 @@
+package io.openshift.booster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.cbor.CBORGenerator;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.Unpooled;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The encodings of the products API: pretty-printed JSON, the default, or CBOR (RFC 7049) for the consumers asking for
+ * {@code application/cbor}. CBOR keeps the JSON data model, so the same products go both ways, in about half the bytes
+ * and without parsing text.
+ * <p>
+ * The products are written field by field with a streaming generator, from the rows of the store, without building an
+ * intermediate tree.
+ */
+public enum ProductEncoding {
+
+  JSON("application/json"),
+  CBOR("application/cbor");
+
+  private static final CBORFactory CBOR_FACTORY = new CBORFactory();
+  private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(CBOR_FACTORY);
+  // The CBOR size of a product, with a name of about 20 characters.
+  private static final int ESTIMATED_SIZE = 48;
+
+  private final String contentType;
+
+  ProductEncoding(String contentType) {
+    this.contentType = contentType;
+  }
+
+  public String contentType() {
+    return contentType;
+  }
+
+  /**
+   * @param accept the {@code Accept} header, may be {@code null}
+   * @return the encoding with the highest quality, the first one listed on a tie, and JSON when none is supported
+   */
+  public static ProductEncoding accepted(String accept) {
+    if (accept == null) {
+      return JSON;
+    }
+    ProductEncoding best = JSON;
+    double bestQuality = 0;
+    for (String range : accept.split(",")) {
+      String[] parts = range.split(";");
+      String type = parts[0].trim().toLowerCase();
+      ProductEncoding encoding;
+      if (type.equals(CBOR.contentType)) {
+        encoding = CBOR;
+      } else if (type.equals(JSON.contentType) || type.equals("application/*") || type.equals("*/*")) {
+        encoding = JSON;
+      } else {
+        continue;
+      }
+      double quality = quality(parts);
+      if (quality > bestQuality) {
+        best = encoding;
+        bestQuality = quality;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @param contentType the {@code Content-Type} header, may be {@code null}
+   * @return the encoding of a request body, JSON unless CBOR
+   */
+  public static ProductEncoding of(String contentType) {
+    if (contentType != null && contentType.split(";")[0].trim().equalsIgnoreCase(CBOR.contentType)) {
+      return CBOR;
+    }
+    return JSON;
+  }
+
+  public Buffer encode(JsonObject product) {
+    if (this == JSON) {
+      return Buffer.buffer(product.encodePrettily());
+    }
+    return cbor(ESTIMATED_SIZE, generator -> write(generator, product));
+  }
+
+  public Buffer encode(List<JsonObject> products) {
+    if (this == JSON) {
+      return Buffer.buffer(new JsonArray(products).encodePrettily());
+    }
+    return cbor(16 + products.size() * ESTIMATED_SIZE, generator -> {
+      generator.writeStartArray(products.size());
+      for (JsonObject product : products) {
+        write(generator, product);
+      }
+      generator.writeEndArray();
+    });
+  }
+
+  /**
+   * @return the object of the body, {@code null} when empty
+   * @throws RuntimeException when the body is not an object of this encoding
+   */
+  @SuppressWarnings("unchecked")
+  public JsonObject decode(Buffer body) {
+    if (body.length() == 0) {
+      return null;
+    }
+    if (this == JSON) {
+      return new JsonObject(body);
+    }
+    try (InputStream in = new ByteBufInputStream(body.getByteBuf())) {
+      return new JsonObject(CBOR_MAPPER.readValue(in, Map.class));
+    } catch (IOException e) {
+      throw new IllegalArgumentException("Invalid CBOR payload: " + e.getMessage(), e);
+    }
+  }
+
+  private static double quality(String[] parameters) {
+    for (int i = 1; i < parameters.length; i++) {
+      String parameter = parameters[i].trim();
+      if (parameter.startsWith("q=")) {
+        try {
+          return Double.parseDouble(parameter.substring(2));
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  private static Buffer cbor(int estimatedSize, Writer writer) {
+    ByteBuf buf = Unpooled.buffer(estimatedSize);
+    try (OutputStream out = new ByteBufOutputStream(buf);
+         CBORGenerator generator = CBOR_FACTORY.createGenerator(out)) {
+      writer.write(generator);
+    } catch (IOException e) {
+      // Written in memory.
+      throw new UncheckedIOException(e);
+    }
+    return Buffer.buffer(buf);
+  }
+
+  // Checks the scalars of the products first, failed interface checks against them cost more than the encoding. Walks
+  // the underlying maps and lists, the iterators of JsonObject and JsonArray wrap each entry.
+  @SuppressWarnings("unchecked")
+  private static void write(CBORGenerator generator, Object value) throws IOException {
+    if (value instanceof String) {
+      generator.writeString((String) value);
+    } else if (value instanceof Integer || value instanceof Long) {
+      generator.writeNumber(((Number) value).longValue());
+    } else if (value == null) {
+      generator.writeNull();
+    } else if (value instanceof JsonObject) {
+      writeMap(generator, ((JsonObject) value).getMap());
+    } else if (value instanceof Map) {
+      writeMap(generator, (Map<String, Object>) value);
+    } else if (value instanceof JsonArray) {
+      writeList(generator, ((JsonArray) value).getList());
+    } else if (value instanceof List) {
+      writeList(generator, (List<Object>) value);
+    } else if (value instanceof Short || value instanceof Byte) {
+      generator.writeNumber(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      generator.writeNumber(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      generator.writeBoolean((Boolean) value);
+    } else {
+      generator.writeString(value.toString());
+    }
+  }
+
+  private static void writeMap(CBORGenerator generator, Map<String, Object> map) throws IOException {
+    generator.writeStartObject(map.size());
+    for (Map.Entry<String, Object> entry : map.entrySet()) {
+      generator.writeFieldName(entry.getKey());
+      write(generator, entry.getValue());
+    }
+    generator.writeEndObject();
+  }
+
+  private static void writeList(CBORGenerator generator, List<Object> list) throws IOException {
+    generator.writeStartArray(list.size());
+    for (Object element : list) {
+      write(generator, element);
+    }
+    generator.writeEndArray();
+  }
+
+  @FunctionalInterface
+  private interface Writer {
+    void write(CBORGenerator generator) throws IOException;
+  }
+}
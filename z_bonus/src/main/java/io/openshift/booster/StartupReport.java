@@ -0,0 +1,50 @@
+package io.openshift.booster;
+
+import io.vertx.core.json.JsonObject;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Reports the time from the JVM start to the HTTP server listening, with the loaded class count and the heap usage at
+ * that point, so startup regressions show up in the logs.
+ * <p>
+ * With the {@code startup.report} system property, the report is also written as JSON to the given file. With
+ * {@code startup.training}, the JVM exits once listening: this is the training run of the {@code appcds} profile.
+ */
+public final class StartupReport {
+
+  private StartupReport() {
+  }
+
+  public static JsonObject listening(String application, int port) {
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    JsonObject report = new JsonObject()
+      .put("application", application)
+      .put("port", port)
+      .put("timeToListen", ManagementFactory.getRuntimeMXBean().getUptime())
+      .put("loadedClasses", ManagementFactory.getClassLoadingMXBean().getLoadedClassCount())
+      .put("heapUsed", heap.getUsed())
+      .put("heapCommitted", heap.getCommitted())
+      .put("classDataSharing", System.getProperty("java.vm.info", "").contains("sharing"));
+    System.out.println("Startup: " + report.encode());
+
+    String file = System.getProperty("startup.report");
+    if (file != null) {
+      try {
+        Files.write(Paths.get(file), report.encodePrettily().getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        System.out.println("Cannot write the startup report to " + file + ": " + e.getMessage());
+      }
+    }
+    if (Boolean.getBoolean("startup.training")) {
+      // Not from the event loop, the launcher shutdown hook needs it to close Vert.x.
+      new Thread(() -> System.exit(0), "startup-training-exit").start();
+    }
+    return report;
+  }
+}
@@ -5,6 +5,9 @@ import rx.Completable;
 import rx.Observable;
 import rx.Single;
 
+import java.util.List;
+import java.util.NoSuchElementException;
+
 /**
  * A CRUD to SQL interface
  */
@@ -14,9 +17,37 @@ public interface Store {
 
   Observable<JsonObject> readAll();
 
+  /**
+   * @return the product, or fails with {@link StoreErrors#NOT_FOUND} when unknown
+   */
   Single<JsonObject> read(long id);
 
+  /**
+   * Reads the product, the absence being a result rather than an error.
+   *
+   * @return the product, or nothing when unknown
+   */
+  default Observable<JsonObject> find(long id) {
+    return read(id).toObservable()
+      .onErrorResumeNext(err -> err instanceof NoSuchElementException ? Observable.empty() : Observable.error(err));
+  }
+
+  /**
+   * Reads the products with the given ids, in no particular order. Unknown ids are skipped.
+   */
+  default Observable<JsonObject> readMany(List<Long> ids) {
+    return Observable.from(ids).concatMap(this::find);
+  }
+
   Completable update(long id, JsonObject item);
 
+  /**
+   * Adds the delta to the stock of the product, in one atomic step, unless the stock would become negative. A missing
+   * stock counts as 0.
+   *
+   * @return the new stock, or fails with {@link StoreErrors#INSUFFICIENT_STOCK} when the stock is insufficient
+   */
+  Single<Long> adjustStock(long id, long delta);
+
   Completable delete(long id);
 }
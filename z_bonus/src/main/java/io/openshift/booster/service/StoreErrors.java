@@ -0,0 +1,95 @@
+package io.openshift.booster.service;
+
+import java.util.NoSuchElementException;
+
+/**
+ * The expected failures of the stores: unknown products, invalid items and insufficient stock.
+ * <p>
+ * They happen on every request for an unknown id, so they are preallocated and capture no stack trace, which would cost
+ * more than the query. They extend the exceptions of the {@link Store} contract, and tell the HTTP status of their
+ * response. Their cause cannot be set, so that the shared instances are never changed.
+ */
+public final class StoreErrors {
+
+  public static final NotFound NOT_FOUND = new NotFound("Item not found");
+
+  public static final Conflict INSUFFICIENT_STOCK = new Conflict("Insufficient stock");
+
+  private StoreErrors() {
+    // Private constructor.
+  }
+
+  /**
+   * An expected failure of the stores.
+   */
+  public interface Expected {
+
+    /**
+     * @return the HTTP status of the failure
+     */
+    int status();
+  }
+
+  /**
+   * The product is unknown.
+   */
+  public static final class NotFound extends NoSuchElementException implements Expected {
+
+    private NotFound(String message) {
+      super(message);
+      initCause(null);
+    }
+
+    @Override
+    public int status() {
+      return 404;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  /**
+   * The item cannot be stored.
+   */
+  public static final class Invalid extends IllegalArgumentException implements Expected {
+
+    public Invalid(String message) {
+      super(message);
+      initCause(null);
+    }
+
+    @Override
+    public int status() {
+      return 422;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+
+  /**
+   * The change conflicts with the stored product.
+   */
+  public static final class Conflict extends IllegalStateException implements Expected {
+
+    private Conflict(String message) {
+      super(message);
+      initCause(null);
+    }
+
+    @Override
+    public int status() {
+      return 409;
+    }
+
+    @Override
+    public synchronized Throwable fillInStackTrace() {
+      return this;
+    }
+  }
+}
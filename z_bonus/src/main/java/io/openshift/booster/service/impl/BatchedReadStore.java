@@ -0,0 +1,153 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.openshift.booster.service.StoreErrors;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.SingleSubscriber;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A store collecting the concurrent single-product reads into one {@link Store#readMany(List)} of the delegate, so that
+ * a burst of {@code GET /api/products/:id} costs one query and one connection checkout.
+ * <p>
+ * The distinct ids read during an event loop turn are sent together once the turn completes, or after {@code window}
+ * ms when set, or as soon as {@code maxBatch} ids are waiting. Each row is then handed to all the reads of its id, the
+ * reads of the ids without row fail as not found.
+ */
+public class BatchedReadStore implements Store, Closeable {
+
+  private final Store delegate;
+  private final Vertx vertx;
+  private final long window;
+  private final int maxBatch;
+
+  // Guarded by this.
+  private Map<Long, List<SingleSubscriber<? super JsonObject>>> pending = new LinkedHashMap<>();
+  private boolean scheduled;
+
+  /**
+   * @param window   how long to wait for more ids in ms, 0 to send them at the end of the event loop turn
+   * @param maxBatch how many ids to send at most in a batch
+   */
+  public BatchedReadStore(Store delegate, Vertx vertx, long window, int maxBatch) {
+    this.delegate = delegate;
+    this.vertx = vertx;
+    this.window = window;
+    this.maxBatch = maxBatch;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return delegate.readAll();
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return Single.create(subscriber -> {
+      Map<Long, List<SingleSubscriber<? super JsonObject>>> full = null;
+      boolean schedule = false;
+      synchronized (this) {
+        pending.computeIfAbsent(id, k -> new ArrayList<>(1)).add(subscriber);
+        if (pending.size() >= maxBatch) {
+          full = pending;
+          pending = new LinkedHashMap<>();
+        } else if (!scheduled) {
+          scheduled = true;
+          schedule = true;
+        }
+      }
+      if (full != null) {
+        send(full);
+      } else if (schedule) {
+        if (window > 0) {
+          vertx.setTimer(window, l -> flush());
+        } else {
+          vertx.getOrCreateContext().runOnContext(v -> flush());
+        }
+      }
+    });
+  }
+
+  /**
+   * Reads the ids with the pending single-product reads, in the order of the ids.
+   */
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    return Observable.from(ids)
+      .distinct()
+      .concatMapEager(this::find);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    return delegate.update(id, item);
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return delegate.adjustStock(id, delta);
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+
+  private void flush() {
+    Map<Long, List<SingleSubscriber<? super JsonObject>>> batch;
+    synchronized (this) {
+      batch = pending;
+      pending = new LinkedHashMap<>();
+      scheduled = false;
+    }
+    if (!batch.isEmpty()) {
+      send(batch);
+    }
+  }
+
+  private void send(Map<Long, List<SingleSubscriber<? super JsonObject>>> batch) {
+    delegate.readMany(new ArrayList<>(batch.keySet()))
+      .toList()
+      .subscribe(
+        rows -> {
+          Map<Long, JsonObject> byId = new HashMap<>();
+          rows.forEach(row -> byId.put(row.getLong("id"), row));
+          batch.forEach((id, subscribers) -> {
+            JsonObject row = byId.get(id);
+            for (int i = 0; i < subscribers.size(); i++) {
+              if (row == null) {
+                subscribers.get(i).onError(StoreErrors.NOT_FOUND);
+              } else {
+                // Each read gets its own object.
+                subscribers.get(i).onSuccess(i == 0 ? row : row.copy());
+              }
+            }
+          });
+        },
+        err -> batch.values().forEach(subscribers -> subscribers.forEach(subscriber -> subscriber.onError(err)))
+      );
+  }
+}
@@ -0,0 +1,326 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.openshift.booster.service.StoreErrors;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Context;
+import io.vertx.rxjava.core.Vertx;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A store running plain blocking JDBC calls, each on its own thread, instead of the RxJava chains over the JDBC client
+ * worker pool.
+ * <p>
+ * Each thread holds at most one connection, so there are as many threads as connections, {@code max_pool_size}. The
+ * calls beyond wait in a bounded queue, and are rejected with a {@link RejectedExecutionException} when it is full:
+ * without virtual threads, on Java 8, a thread per waiting call would park as many OS threads as concurrent requests.
+ * Results are emitted on the Vert.x context of the subscriber.
+ */
+public class BlockingJdbcProductStore implements Store, Closeable {
+
+  private static final String INSERT = "INSERT INTO products (name, stock) VALUES (?, ?::BIGINT)";
+
+  private static final String SELECT_ONE = "SELECT * FROM products WHERE id = ?";
+
+  private static final String SELECT_ALL = "SELECT * FROM products";
+
+  private static final int MAX_SELECT_MANY = 1024;
+
+  private static final String UPDATE = "UPDATE products SET name = ?, stock = ?::BIGINT WHERE id = ?";
+
+  private static final String ADJUST_STOCK = "UPDATE products SET stock = COALESCE(stock, 0) + ? "
+    + "WHERE id = ? AND COALESCE(stock, 0) + ? >= 0 RETURNING stock";
+
+  private static final String DELETE = "DELETE FROM products WHERE id = ?";
+
+  private final Vertx vertx;
+  private final String url;
+  private final String user;
+  private final String password;
+  private final long acquireTimeout;
+  private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+  private final ExecutorService executor;
+
+  /**
+   * @param config the JDBC client configuration: {@code url}, {@code driver_class}, {@code user}, {@code password},
+   *               {@code max_pool_size} (default 15), {@code acquire_timeout} in ms (default 10000), the longest wait
+   *               of a call in the queue, and {@code max_queue_size} (default 1024)
+   */
+  public BlockingJdbcProductStore(Vertx vertx, JsonObject config) {
+    this.vertx = vertx;
+    this.url = config.getString("url");
+    this.user = config.getString("user");
+    this.password = config.getString("password");
+    this.acquireTimeout = config.getLong("acquire_timeout", 10000L);
+    int maxPoolSize = config.getInteger("max_pool_size", 15);
+    String driver = config.getString("driver_class");
+    if (driver != null) {
+      try {
+        Class.forName(driver);
+      } catch (ClassNotFoundException e) {
+        throw new IllegalArgumentException("Unknown JDBC driver " + driver, e);
+      }
+    }
+    AtomicInteger count = new AtomicInteger();
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxPoolSize, maxPoolSize, 60, TimeUnit.SECONDS,
+      new ArrayBlockingQueue<>(config.getInteger("max_queue_size", 1024)), r -> {
+        Thread thread = new Thread(r, "product-store-" + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    // The idle threads stop, their connections stay idle.
+    executor.allowCoreThreadTimeOut(true);
+    this.executor = executor;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkCreate(item);
+    if (invalid != null) {
+      return Single.error(invalid);
+    }
+
+    return call(() -> withConnection(conn -> {
+      try (PreparedStatement statement = conn.prepareStatement(INSERT, Statement.RETURN_GENERATED_KEYS)) {
+        statement.setObject(1, item.getValue("name"));
+        statement.setObject(2, item.getValue("stock", 0));
+        statement.executeUpdate();
+        try (ResultSet keys = statement.getGeneratedKeys()) {
+          keys.next();
+          return item.put("id", keys.getLong(1));
+        }
+      }
+    }));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return call(() -> withConnection(conn -> {
+      try (Statement statement = conn.createStatement(); ResultSet rs = statement.executeQuery(SELECT_ALL)) {
+        List<JsonObject> rows = new ArrayList<>();
+        while (rs.next()) {
+          rows.add(row(rs));
+        }
+        return rows;
+      }
+    })).flatMapObservable(Observable::from);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return call(() -> withConnection(conn -> {
+      try (PreparedStatement statement = conn.prepareStatement(SELECT_ONE)) {
+        statement.setLong(1, id);
+        try (ResultSet rs = statement.executeQuery()) {
+          if (!rs.next()) {
+            throw StoreErrors.NOT_FOUND;
+          }
+          return row(rs);
+        }
+      }
+    }));
+  }
+
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    if (ids.isEmpty()) {
+      return Observable.empty();
+    }
+    return call(() -> withConnection(conn -> {
+      List<JsonObject> rows = new ArrayList<>(ids.size());
+      // Same queries as the JDBC client store, in chunks of its largest one.
+      for (int from = 0; from < ids.size(); from += MAX_SELECT_MANY) {
+        List<Long> chunk = JdbcProductStore.paddedIds(ids.subList(from, Math.min(ids.size(), from + MAX_SELECT_MANY)));
+        try (PreparedStatement statement = conn.prepareStatement(JdbcProductStore.selectMany(chunk.size()))) {
+          for (int i = 0; i < chunk.size(); i++) {
+            statement.setLong(i + 1, chunk.get(i));
+          }
+          try (ResultSet rs = statement.executeQuery()) {
+            while (rs.next()) {
+              rows.add(row(rs));
+            }
+          }
+        }
+      }
+      return rows;
+    })).flatMapObservable(Observable::from);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkUpdate(id, item);
+    if (invalid != null) {
+      return Completable.error(invalid);
+    }
+
+    return call(() -> withConnection(conn -> {
+      try (PreparedStatement statement = conn.prepareStatement(UPDATE)) {
+        statement.setObject(1, item.getValue("name"));
+        statement.setObject(2, item.getValue("stock", 0));
+        statement.setLong(3, id);
+        if (statement.executeUpdate() == 0) {
+          throw StoreErrors.NOT_FOUND;
+        }
+        return id;
+      }
+    })).toCompletable();
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return call(() -> withConnection(conn -> {
+      try (PreparedStatement statement = conn.prepareStatement(ADJUST_STOCK)) {
+        statement.setLong(1, delta);
+        statement.setLong(2, id);
+        statement.setLong(3, delta);
+        try (ResultSet rs = statement.executeQuery()) {
+          if (rs.next()) {
+            return rs.getLong(1);
+          }
+        }
+      }
+      // Not updated, either unknown or not enough stock.
+      try (PreparedStatement statement = conn.prepareStatement(SELECT_ONE)) {
+        statement.setLong(1, id);
+        try (ResultSet rs = statement.executeQuery()) {
+          if (!rs.next()) {
+            throw StoreErrors.NOT_FOUND;
+          }
+          throw StoreErrors.INSUFFICIENT_STOCK;
+        }
+      }
+    }));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return call(() -> withConnection(conn -> {
+      try (PreparedStatement statement = conn.prepareStatement(DELETE)) {
+        statement.setLong(1, id);
+        if (statement.executeUpdate() == 0) {
+          throw StoreErrors.NOT_FOUND;
+        }
+        return id;
+      }
+    })).toCompletable();
+  }
+
+  /**
+   * Stops the threads and closes the idle connections, calls in progress close their connection when done.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    Connection conn;
+    while ((conn = idle.poll()) != null) {
+      closeQuietly(conn);
+    }
+  }
+
+  /**
+   * Runs the task on a thread of the pool, unless it waited too long for one, and emits the outcome on the context of
+   * the subscriber. Fails with {@link RejectedExecutionException} when the queue is full.
+   */
+  private <T> Single<T> call(Callable<T> task) {
+    return Single.create(subscriber -> {
+      Context context = vertx.getOrCreateContext();
+      long queued = System.nanoTime();
+      try {
+        executor.execute(() -> {
+          T result;
+          try {
+            if (System.nanoTime() - queued > TimeUnit.MILLISECONDS.toNanos(acquireTimeout)) {
+              throw new SQLTimeoutException("No connection available after " + acquireTimeout + "ms");
+            }
+            result = task.call();
+          } catch (Throwable t) {
+            context.runOnContext(v -> subscriber.onError(t));
+            return;
+          }
+          context.runOnContext(v -> subscriber.onSuccess(result));
+        });
+      } catch (RejectedExecutionException e) {
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  /**
+   * Runs the function with an idle connection, or a new one. The connection is given back unless it failed.
+   */
+  private <T> T withConnection(SqlFunction<T> function) throws SQLException {
+    Connection conn = null;
+    try {
+      conn = idle.poll();
+      if (conn == null) {
+        conn = DriverManager.getConnection(url, user, password);
+      }
+      T result = function.apply(conn);
+      release(conn);
+      return result;
+    } catch (SQLException e) {
+      // Connection exceptions (class 08) leave the connection unusable.
+      if (conn != null && e.getSQLState() != null && e.getSQLState().startsWith("08")) {
+        closeQuietly(conn);
+      } else if (conn != null) {
+        release(conn);
+      }
+      throw e;
+    } catch (RuntimeException e) {
+      if (conn != null) {
+        release(conn);
+      }
+      throw e;
+    }
+  }
+
+  private void release(Connection conn) {
+    if (executor.isShutdown()) {
+      closeQuietly(conn);
+    } else {
+      idle.offer(conn);
+    }
+  }
+
+  private static void closeQuietly(Connection conn) {
+    try {
+      conn.close();
+    } catch (SQLException e) {
+      // Ignored, the connection is discarded anyway.
+    }
+  }
+
+  private static JsonObject row(ResultSet rs) throws SQLException {
+    long stock = rs.getLong(3);
+    return new JsonObject()
+      .put("id", rs.getLong(1))
+      .put("name", rs.getString(2))
+      .put("stock", rs.wasNull() ? null : stock);
+  }
+
+  @FunctionalInterface
+  private interface SqlFunction<T> {
+    T apply(Connection conn) throws SQLException;
+  }
+}
@@ -0,0 +1,214 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * A store keeping the product list pre-encoded, as served by {@code GET /api/products}.
+ * <p>
+ * Each product is encoded once, when loaded or written through this store, and the list is the concatenation of
+ * these fragments: a write replaces one fragment and bumps the version, the next {@link #encodedAll()} concatenates
+ * the fragments again, without encoding anything, and the following ones return the same buffer until the next write.
+ * <p>
+ * Only the writes made through this store are seen, so it must be the only writer of the delegate, as with the
+ * in-memory and log stores.
+ */
+public class CachedCatalogueStore implements Store, Closeable {
+
+  private static final byte[] OPEN = "[ ".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] SEPARATOR = ", ".getBytes(StandardCharsets.UTF_8);
+  private static final byte[] CLOSE = " ]".getBytes(StandardCharsets.UTF_8);
+  private static final Buffer EMPTY = Buffer.buffer("[ ]");
+
+  private final Store delegate;
+
+  // Guarded by this, fragments is null until loaded.
+  private Map<Long, byte[]> fragments;
+  private long version;
+  private Buffer encoded;
+  private long encodedVersion = -1;
+
+  public CachedCatalogueStore(Store delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item)
+      .doOnSuccess(json -> put(json.getLong("id"), json))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return delegate.readAll();
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return delegate.read(id);
+  }
+
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    return delegate.readMany(ids);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    return delegate.update(id, item)
+      .doOnCompleted(() -> put(id, item))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return delegate.adjustStock(id, delta)
+      .doOnSuccess(stock -> putStock(id, stock))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id)
+      .doOnCompleted(() -> remove(id))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  /**
+   * @return the product list encoded as a pretty-printed JSON array, loaded from the delegate on the first call
+   */
+  public Single<Buffer> encodedAll() {
+    synchronized (this) {
+      if (fragments != null) {
+        return Single.just(assemble());
+      }
+    }
+    long loadVersion = version();
+    return delegate.readAll().toList().toSingle().map(products -> {
+      synchronized (this) {
+        // Installed unless a write completed meanwhile, the list is then loaded again on the next call.
+        if (fragments == null && version == loadVersion) {
+          fragments = fragments(products);
+          return assemble();
+        }
+      }
+      return concatenate(fragments(products));
+    });
+  }
+
+  /**
+   * @return the number of writes seen, which changes the encoded list
+   */
+  public synchronized long version() {
+    return version;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+
+  private synchronized void put(long id, JsonObject item) {
+    version++;
+    if (fragments == null) {
+      return;
+    }
+    // Only the columns of the products table, as the delegate reads them back.
+    fragments.put(id, fragment(new JsonObject()
+      .put("id", id)
+      .put("name", item.getString("name"))
+      .put("stock", item.getValue("stock", 0))));
+  }
+
+  private synchronized void putStock(long id, long stock) {
+    version++;
+    if (fragments == null || !fragments.containsKey(id)) {
+      return;
+    }
+    JsonObject product = new JsonObject(new String(fragments.get(id), StandardCharsets.UTF_8));
+    fragments.put(id, fragment(product.put("stock", stock)));
+  }
+
+  private synchronized void remove(long id) {
+    version++;
+    if (fragments == null) {
+      return;
+    }
+    fragments.remove(id);
+  }
+
+  /**
+   * Drops the fragments, they are loaded again on the next call. To be called after the products were changed without
+   * this store.
+   */
+  public synchronized void invalidate() {
+    version++;
+    fragments = null;
+  }
+
+  /**
+   * Drops the fragments after a failure which may or may not have changed the products.
+   */
+  private synchronized void invalidateOnUnknownOutcome(Throwable err) {
+    if (!(err instanceof NoSuchElementException) && !(err instanceof IllegalArgumentException)
+        && !(err instanceof IllegalStateException)) {
+      invalidate();
+    }
+  }
+
+  private synchronized Buffer assemble() {
+    if (encodedVersion != version || encoded == null) {
+      encoded = concatenate(fragments);
+      encodedVersion = version;
+    }
+    return encoded;
+  }
+
+  private static Map<Long, byte[]> fragments(List<JsonObject> products) {
+    Map<Long, byte[]> fragments = new LinkedHashMap<>();
+    for (JsonObject product : products) {
+      fragments.put(product.getLong("id"), fragment(product));
+    }
+    return fragments;
+  }
+
+  private static byte[] fragment(JsonObject product) {
+    return product.encodePrettily().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static Buffer concatenate(Map<Long, byte[]> fragments) {
+    if (fragments.isEmpty()) {
+      return EMPTY;
+    }
+    int length = OPEN.length + (fragments.size() - 1) * SEPARATOR.length + CLOSE.length;
+    for (byte[] fragment : fragments.values()) {
+      length += fragment.length;
+    }
+    Buffer buffer = Buffer.buffer(length);
+    buffer.appendBytes(OPEN);
+    boolean first = true;
+    for (byte[] fragment : fragments.values()) {
+      if (!first) {
+        buffer.appendBytes(SEPARATOR);
+      }
+      buffer.appendBytes(fragment);
+      first = false;
+    }
+    return buffer.appendBytes(CLOSE);
+  }
+}
@@ -0,0 +1,170 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.SingleSubscriber;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A store combining the concurrent stock adjustments of a product, so that a hot product takes one row update per
+ * round-trip instead of one per request.
+ * <p>
+ * While an adjustment of a product is in progress, the next ones wait, and are then sent as a single delta. The
+ * combined adjustments are ordered increments first, so when the sum succeeds each of them succeeds too, and gets the
+ * stock it would have seen applied in this order. When the sum would make the stock negative, they are applied one
+ * by one, so only those exceeding the stock fail.
+ */
+public class CombinedStockStore implements Store, Closeable {
+
+  private final Store delegate;
+
+  // Guarded by this, the adjustments waiting for the one in progress, by product.
+  private final Map<Long, List<Adjustment>> waiting = new HashMap<>();
+
+  public CombinedStockStore(Store delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return delegate.readAll();
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return delegate.read(id);
+  }
+
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    return delegate.readMany(ids);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    return delegate.update(id, item);
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return Single.create(subscriber -> {
+      Adjustment adjustment = new Adjustment(delta, subscriber);
+      synchronized (this) {
+        List<Adjustment> next = waiting.get(id);
+        if (next != null) {
+          next.add(adjustment);
+          return;
+        }
+        waiting.put(id, new ArrayList<>());
+      }
+      List<Adjustment> batch = new ArrayList<>(1);
+      batch.add(adjustment);
+      send(id, batch);
+    });
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id);
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+
+  private void send(long id, List<Adjustment> batch) {
+    if (batch.size() == 1) {
+      Adjustment adjustment = batch.get(0);
+      delegate.adjustStock(id, adjustment.delta).subscribe(
+        stock -> {
+          adjustment.subscriber.onSuccess(stock);
+          next(id);
+        },
+        err -> {
+          adjustment.subscriber.onError(err);
+          next(id);
+        });
+      return;
+    }
+
+    batch.sort((a, b) -> Boolean.compare(a.delta < 0, b.delta < 0));
+    long sum = batch.stream().mapToLong(adjustment -> adjustment.delta).sum();
+    delegate.adjustStock(id, sum).subscribe(
+      stock -> {
+        long running = stock - sum;
+        for (Adjustment adjustment : batch) {
+          running += adjustment.delta;
+          adjustment.subscriber.onSuccess(running);
+        }
+        next(id);
+      },
+      err -> {
+        if (err instanceof IllegalStateException) {
+          sendOneByOne(id, batch, 0);
+        } else {
+          batch.forEach(adjustment -> adjustment.subscriber.onError(err));
+          next(id);
+        }
+      });
+  }
+
+  private void sendOneByOne(long id, List<Adjustment> batch, int index) {
+    if (index == batch.size()) {
+      next(id);
+      return;
+    }
+    Adjustment adjustment = batch.get(index);
+    delegate.adjustStock(id, adjustment.delta).subscribe(
+      stock -> {
+        adjustment.subscriber.onSuccess(stock);
+        sendOneByOne(id, batch, index + 1);
+      },
+      err -> {
+        adjustment.subscriber.onError(err);
+        sendOneByOne(id, batch, index + 1);
+      });
+  }
+
+  /**
+   * Sends the adjustments which waited for the one completed, if any.
+   */
+  private void next(long id) {
+    List<Adjustment> batch;
+    synchronized (this) {
+      batch = waiting.get(id);
+      if (batch.isEmpty()) {
+        waiting.remove(id);
+        return;
+      }
+      waiting.put(id, new ArrayList<>());
+    }
+    send(id, batch);
+  }
+
+  private static final class Adjustment {
+    private final long delta;
+    private final SingleSubscriber<? super Long> subscriber;
+
+    private Adjustment(long delta, SingleSubscriber<? super Long> subscriber) {
+      this.delta = delta;
+      this.subscriber = subscriber;
+    }
+  }
+}
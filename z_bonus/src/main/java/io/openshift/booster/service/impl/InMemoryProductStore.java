@@ -0,0 +1,457 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.openshift.booster.service.StoreErrors;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A store keeping the products in memory, for deployments and tests without database.
+ * <p>
+ * Products are stored in parallel arrays of rows, in creation order, and indexed by id in an open addressing table of
+ * primitive {@code long} keys. Neither the ids nor the rows are boxed, {@link JsonObject}s are only created for the
+ * results. Ids are allocated by an atomic counter, outside of the lock, and {@link #readAll()} lists the products in
+ * insertion order, which updates do not change.
+ * <p>
+ * Reads are optimistic and only retry under the read lock when a write happened meanwhile. Once
+ * {@link #startSnapshots(Vertx, Path, long) started}, snapshots are written periodically to a memory-mapped file when
+ * the products changed, and {@link #load(Path)} restores them on restart.
+ */
+public class InMemoryProductStore implements Store, Closeable {
+
+  private static final int SNAPSHOT_MAGIC = 0x50524F44;
+  private static final int SNAPSHOT_VERSION = 1;
+  /**
+   * Stands for a {@code null} stock.
+   */
+  private static final long NO_STOCK = Long.MIN_VALUE;
+  private static final int INITIAL_CAPACITY = 64;
+
+  private final AtomicLong lastId = new AtomicLong();
+  private final StampedLock lock = new StampedLock();
+
+  // Index from id to row, with linear probing. Ids are positive, 0 marks a free slot.
+  private long[] slotIds = new long[INITIAL_CAPACITY * 2];
+  private int[] slotRows = new int[INITIAL_CAPACITY * 2];
+
+  // Rows in creation order, a deleted row has id 0 until the rows are compacted.
+  private long[] ids = new long[INITIAL_CAPACITY];
+  private String[] names = new String[INITIAL_CAPACITY];
+  private long[] stocks = new long[INITIAL_CAPACITY];
+  private int rowCount;
+  private int size;
+
+  private volatile long modifications;
+  private long snapshotModifications;
+  private boolean snapshotting;
+  private Vertx vertx;
+  private Path snapshotFile;
+  private long snapshotTimer = -1;
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkCreate(item);
+    if (invalid != null) {
+      return Single.error(invalid);
+    }
+
+    return Single.fromCallable(() -> {
+      long id = lastId.incrementAndGet();
+      long stamp = lock.writeLock();
+      try {
+        insert(id, item.getString("name"), stock(item));
+        modifications++;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+      return item.put("id", id);
+    });
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return Observable.defer(() -> {
+      long stamp = lock.readLock();
+      try {
+        List<JsonObject> products = new ArrayList<>(size);
+        for (int row = 0; row < rowCount; row++) {
+          if (ids[row] != 0) {
+            products.add(toJson(row));
+          }
+        }
+        return Observable.from(products);
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    });
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return Single.fromCallable(() -> {
+      long stamp = lock.tryOptimisticRead();
+      if (stamp != 0) {
+        try {
+          int row = rowOf(id);
+          JsonObject json = row < 0 ? null : toJson(row);
+          if (lock.validate(stamp)) {
+            return found(id, json);
+          }
+        } catch (RuntimeException e) {
+          // Arrays replaced by a concurrent write, retried under the lock.
+        }
+      }
+      stamp = lock.readLock();
+      try {
+        int row = rowOf(id);
+        return found(id, row < 0 ? null : toJson(row));
+      } finally {
+        lock.unlockRead(stamp);
+      }
+    });
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkUpdate(id, item);
+    if (invalid != null) {
+      return Completable.error(invalid);
+    }
+
+    return Completable.fromAction(() -> {
+      long stamp = lock.writeLock();
+      try {
+        int row = rowOf(id);
+        if (row < 0) {
+          throw StoreErrors.NOT_FOUND;
+        }
+        names[row] = item.getString("name");
+        stocks[row] = stock(item);
+        modifications++;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    });
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return Single.fromCallable(() -> {
+      long stamp = lock.writeLock();
+      try {
+        int row = rowOf(id);
+        if (row < 0) {
+          throw StoreErrors.NOT_FOUND;
+        }
+        long stock = (stocks[row] == NO_STOCK ? 0 : stocks[row]) + delta;
+        if (stock < 0) {
+          throw StoreErrors.INSUFFICIENT_STOCK;
+        }
+        stocks[row] = stock;
+        modifications++;
+        return stock;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    });
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return Completable.fromAction(() -> {
+      long stamp = lock.writeLock();
+      try {
+        int slot = findSlot(id);
+        if (slot < 0) {
+          throw StoreErrors.NOT_FOUND;
+        }
+        int row = slotRows[slot];
+        removeSlot(slot);
+        ids[row] = 0;
+        names[row] = null;
+        size--;
+        modifications++;
+        if (rowCount > INITIAL_CAPACITY && size < rowCount / 2) {
+          compact();
+        }
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    });
+  }
+
+  /**
+   * Restores the products of a snapshot, the store must be empty.
+   *
+   * @return whether the snapshot file exists
+   */
+  public boolean load(Path file) throws IOException {
+    if (!Files.exists(file)) {
+      return false;
+    }
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.remaining() < 8 || buffer.getInt() != SNAPSHOT_MAGIC || buffer.getInt() != SNAPSHOT_VERSION) {
+        throw new IOException("Not a product snapshot: " + file);
+      }
+      long stamp = lock.writeLock();
+      try {
+        lastId.set(buffer.getLong());
+        int count = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+          long id = buffer.getLong();
+          long stock = buffer.getLong();
+          byte[] name = new byte[buffer.getInt()];
+          buffer.get(name);
+          insert(id, new String(name, StandardCharsets.UTF_8), stock);
+        }
+      } catch (BufferUnderflowException e) {
+        throw new IOException("Truncated product snapshot: " + file, e);
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the products to a memory-mapped temporary file, forced to disk and then renamed over the snapshot file.
+   * This is blocking.
+   */
+  public void snapshot(Path file) throws IOException {
+    long[] liveIds;
+    String[] liveNames;
+    long[] liveStocks;
+    long last;
+    long version;
+    long stamp = lock.readLock();
+    try {
+      liveIds = new long[size];
+      liveNames = new String[size];
+      liveStocks = new long[size];
+      int count = 0;
+      for (int row = 0; row < rowCount; row++) {
+        if (ids[row] != 0) {
+          liveIds[count] = ids[row];
+          liveNames[count] = names[row];
+          liveStocks[count] = stocks[row];
+          count++;
+        }
+      }
+      last = lastId.get();
+      version = modifications;
+    } finally {
+      lock.unlockRead(stamp);
+    }
+
+    byte[][] encodedNames = new byte[liveNames.length][];
+    long length = 4 + 4 + 8 + 4;
+    for (int i = 0; i < liveNames.length; i++) {
+      encodedNames[i] = liveNames[i].getBytes(StandardCharsets.UTF_8);
+      length += 8 + 8 + 4 + encodedNames[i].length;
+    }
+
+    Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+      StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+      buffer.putInt(SNAPSHOT_MAGIC).putInt(SNAPSHOT_VERSION).putLong(last).putInt(liveIds.length);
+      for (int i = 0; i < liveIds.length; i++) {
+        buffer.putLong(liveIds[i]).putLong(liveStocks[i]).putInt(encodedNames[i].length).put(encodedNames[i]);
+      }
+      buffer.force();
+    }
+    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    synchronized (this) {
+      snapshotModifications = Math.max(snapshotModifications, version);
+    }
+  }
+
+  /**
+   * Writes a snapshot every {@code period} ms on a worker thread, when the products changed since the last one. Must
+   * be called from the verticle event loop.
+   */
+  public InMemoryProductStore startSnapshots(Vertx vertx, Path file, long period) {
+    this.vertx = vertx;
+    this.snapshotFile = file;
+    snapshotTimer = vertx.setPeriodic(period, l -> {
+      if (snapshotting || !isModifiedSinceSnapshot()) {
+        return;
+      }
+      snapshotting = true;
+      vertx.<Void>executeBlocking(future -> {
+        try {
+          snapshot(file);
+          future.complete();
+        } catch (IOException e) {
+          future.fail(e);
+        }
+      }, false, ar -> {
+        snapshotting = false;
+        if (ar.failed()) {
+          System.out.println("Cannot write the product snapshot " + file + ": " + ar.cause().getMessage());
+        }
+      });
+    });
+    return this;
+  }
+
+  /**
+   * Stops the snapshots, and writes a last one if needed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (snapshotTimer != -1) {
+      vertx.cancelTimer(snapshotTimer);
+      snapshotTimer = -1;
+      if (isModifiedSinceSnapshot()) {
+        snapshot(snapshotFile);
+      }
+    }
+  }
+
+  private synchronized boolean isModifiedSinceSnapshot() {
+    return modifications != snapshotModifications;
+  }
+
+  private static JsonObject found(long id, JsonObject json) {
+    if (json == null) {
+      throw StoreErrors.NOT_FOUND;
+    }
+    return json;
+  }
+
+  private JsonObject toJson(int row) {
+    long stock = stocks[row];
+    return new JsonObject()
+      .put("id", ids[row])
+      .put("name", names[row])
+      .put("stock", stock == NO_STOCK ? null : stock);
+  }
+
+  private static long stock(JsonObject item) {
+    Number stock = (Number) item.getValue("stock", 0);
+    return stock == null ? NO_STOCK : stock.longValue();
+  }
+
+  private static int hash(long id) {
+    long h = id * 0x9E3779B97F4A7C15L;
+    return (int) (h ^ (h >>> 32));
+  }
+
+  private int rowOf(long id) {
+    int slot = findSlot(id);
+    return slot < 0 ? -1 : slotRows[slot];
+  }
+
+  private int findSlot(long id) {
+    long[] keys = slotIds;
+    int mask = keys.length - 1;
+    for (int slot = hash(id) & mask; ; slot = (slot + 1) & mask) {
+      long key = keys[slot];
+      if (key == id) {
+        return slot;
+      }
+      if (key == 0) {
+        return -1;
+      }
+    }
+  }
+
+  private void insert(long id, String name, long stock) {
+    if (rowCount == ids.length) {
+      int capacity = ids.length * 2;
+      ids = Arrays.copyOf(ids, capacity);
+      names = Arrays.copyOf(names, capacity);
+      stocks = Arrays.copyOf(stocks, capacity);
+    }
+    int row = rowCount++;
+    ids[row] = id;
+    names[row] = name;
+    stocks[row] = stock;
+    size++;
+    // Load factor of at most 1/2, the rehash indexes the new row.
+    if (size * 2 > slotIds.length) {
+      rehash(slotIds.length * 2);
+    } else {
+      putSlot(id, row);
+    }
+  }
+
+  private void putSlot(long id, int row) {
+    int mask = slotIds.length - 1;
+    int slot = hash(id) & mask;
+    while (slotIds[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    slotIds[slot] = id;
+    slotRows[slot] = row;
+  }
+
+  /**
+   * Removes a slot, and shifts back the following entries of the probe sequence so lookups need no tombstone.
+   */
+  private void removeSlot(int slot) {
+    int mask = slotIds.length - 1;
+    int free = slot;
+    for (int next = (free + 1) & mask; slotIds[next] != 0; next = (next + 1) & mask) {
+      int ideal = hash(slotIds[next]) & mask;
+      // The entry can move to the free slot unless its ideal slot is cyclically in (free, next].
+      boolean between = free <= next ? (free < ideal && ideal <= next) : (free < ideal || ideal <= next);
+      if (!between) {
+        slotIds[free] = slotIds[next];
+        slotRows[free] = slotRows[next];
+        free = next;
+      }
+    }
+    slotIds[free] = 0;
+  }
+
+  private void rehash(int capacity) {
+    slotIds = new long[capacity];
+    slotRows = new int[capacity];
+    for (int row = 0; row < rowCount; row++) {
+      if (ids[row] != 0) {
+        putSlot(ids[row], row);
+      }
+    }
+  }
+
+  /**
+   * Drops the deleted rows, keeping the order of the others.
+   */
+  private void compact() {
+    int live = 0;
+    for (int row = 0; row < rowCount; row++) {
+      if (ids[row] != 0) {
+        ids[live] = ids[row];
+        names[live] = names[row];
+        stocks[live] = stocks[row];
+        live++;
+      }
+    }
+    Arrays.fill(ids, live, rowCount, 0);
+    Arrays.fill(names, live, rowCount, null);
+    rowCount = live;
+    rehash(slotIds.length);
+  }
+}
@@ -2,71 +2,193 @@ package io.openshift.booster.service.impl;
 
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
-import io.vertx.ext.sql.ResultSet;
 import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import io.vertx.rxjava.ext.sql.SQLConnection;
 import io.vertx.rxjava.ext.sql.SQLRowStream;
 import io.openshift.booster.service.Store;
+import io.openshift.booster.service.StoreErrors;
 import rx.Completable;
 import rx.Observable;
 import rx.Single;
 
-import java.util.NoSuchElementException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The implementation of the store.
- *
+ * <p>
+ * Writes go to the primary database. Reads go to the least loaded of the read replicas, if any, by number of
+ * connections in use or waited for. A replica may miss the writes of the last {@code staleness} ms, so a client
+ * reading after its own write uses the {@link #primaryReads()} until then, as told by
+ * {@link #replicasMayMiss(long)} with the {@link #sessionToken()} of the write.
+ * <p>
+ * The statements are timed by the {@link QueryStats}, if any.
  */
 public class JdbcProductStore implements Store {
 
   private static final String INSERT = "INSERT INTO products (name, stock) VALUES (?, ?::BIGINT)";
 
+  private static final String INSERT_WITH_ID = "INSERT INTO products (id, name, stock) VALUES (?, ?, ?::BIGINT)";
+
   private static final String SELECT_ONE = "SELECT * FROM products WHERE id = ?";
 
   private static final String SELECT_ALL = "SELECT * FROM products";
 
+  private static final String SELECT_ALL_BY_ID = "SELECT * FROM products ORDER BY id";
+
+  /**
+   * {@code SELECT_MANY[n]} selects up to 2^n ids.
+   */
+  private static final String[] SELECT_MANY = new String[11];
+
+  static {
+    for (int n = 0; n < SELECT_MANY.length; n++) {
+      StringBuilder sql = new StringBuilder("SELECT * FROM products WHERE id IN (?");
+      for (int i = 1; i < 1 << n; i++) {
+        sql.append(", ?");
+      }
+      SELECT_MANY[n] = sql.append(")").toString();
+    }
+  }
+
   private static final String UPDATE = "UPDATE products SET name = ?, stock = ?::BIGINT WHERE id = ?";
 
+  private static final String ADJUST_STOCK = "UPDATE products SET stock = COALESCE(stock, 0) + ? "
+    + "WHERE id = ? AND COALESCE(stock, 0) + ? >= 0 RETURNING stock";
+
   private static final String DELETE = "DELETE FROM products WHERE id = ?";
 
-  private final JDBCClient db;
+  private static final JsonArray NO_PARAMS = new JsonArray();
+
+  private final Pool primary;
+  private final List<Pool> replicas = new ArrayList<>();
+  private final long staleness;
+  private final AtomicInteger nextReplica = new AtomicInteger();
+  private final Store primaryReads = new PrimaryReads();
+  private final QueryStats stats;
 
   public JdbcProductStore(JDBCClient db) {
-    this.db = db;
+    this(db, Collections.emptyList(), 0);
+  }
+
+  /**
+   * @param replicas the pools of the read replicas of the primary
+   * @param staleness how long, in ms, the replicas may miss a write
+   */
+  public JdbcProductStore(JDBCClient primary, List<JDBCClient> replicas, long staleness) {
+    this(primary, replicas, staleness, QueryStats.NONE);
+  }
+
+  /**
+   * @param stats the stats timing the statements, {@link QueryStats#NONE} to time nothing
+   */
+  public JdbcProductStore(JDBCClient primary, List<JDBCClient> replicas, long staleness, QueryStats stats) {
+    this.primary = new Pool(primary);
+    for (JDBCClient replica : replicas) {
+      this.replicas.add(new Pool(replica));
+    }
+    this.staleness = staleness;
+    this.stats = stats;
+  }
+
+  /**
+   * @return a token for the session which just wrote, telling when the write happened
+   */
+  public long sessionToken() {
+    return System.currentTimeMillis();
+  }
+
+  /**
+   * @param token the token of the last write of a session
+   * @return whether the replicas may miss this write, the session should then read from the {@link #primaryReads()}
+   */
+  public boolean replicasMayMiss(long token) {
+    return !replicas.isEmpty() && System.currentTimeMillis() - token < staleness;
+  }
+
+  /**
+   * @return this store, reading from the primary
+   */
+  public Store primaryReads() {
+    return primaryReads;
   }
 
   @Override
   public Single<JsonObject> create(JsonObject item) {
-    if (item == null) {
-      return Single.error(new IllegalArgumentException("The item must not be null"));
+    StoreErrors.Invalid invalid = ProductValidation.checkCreate(item);
+    if (invalid != null) {
+      return Single.error(invalid);
     }
-    if (item.getString("name") == null || item.getString("name").isEmpty()) {
-      return Single.error(new IllegalArgumentException("The name must not be null or empty"));
-    }
-    if (item.getInteger("stock", 0) < 0) {
-      return Single.error(new IllegalArgumentException("The stock must greater or equal to 0"));
-    }
-    if (item.containsKey("id")) {
-      return Single.error(new IllegalArgumentException("The created item already contains an 'id'"));
+
+    JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0));
+    QueryStats.Timer timer = stats.timer("INSERT", INSERT, params);
+    return primary.connection(timer)
+      .flatMap(conn -> conn
+        .rxUpdateWithParams(INSERT, params)
+        .doOnSuccess(ur -> timer.executed())
+        .map(ur -> item.put("id", ur.getKeys().getLong(0)))
+        .doAfterTerminate(() -> primary.close(conn, timer)));
+  }
+
+  /**
+   * Inserts a product with an id allocated by the caller, for the {@link ShardedProductStore}.
+   */
+  Single<JsonObject> create(long id, JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkCreate(item);
+    if (invalid != null) {
+      return Single.error(invalid);
     }
 
-    return db.rxGetConnection()
-      .flatMap(conn -> {
-        JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0));
-        return conn
-          .rxUpdateWithParams(INSERT, params)
-          .map(ur -> item.put("id", ur.getKeys().getLong(0)))
-          .doAfterTerminate(conn::close);
-      });
+    JsonArray params = new JsonArray().add(id).add(item.getValue("name")).add(item.getValue("stock", 0));
+    QueryStats.Timer timer = stats.timer("INSERT_WITH_ID", INSERT_WITH_ID, params);
+    return primary.connection(timer)
+      .flatMap(conn -> conn
+        .rxUpdateWithParams(INSERT_WITH_ID, params)
+        .doOnSuccess(ur -> timer.executed())
+        .map(ur -> item.put("id", id))
+        .doAfterTerminate(() -> primary.close(conn, timer)));
   }
 
   @Override
   public Observable<JsonObject> readAll() {
-    return db.rxGetConnection()
+    return readAll(readPool(), "SELECT_ALL", SELECT_ALL);
+  }
+
+  /**
+   * Streams all the products by increasing id, for the {@link ShardedProductStore}.
+   *
+   * @param fromPrimary whether to read from the primary, to see all the writes
+   */
+  Observable<JsonObject> readAllById(boolean fromPrimary) {
+    return readAll(fromPrimary ? primary : readPool(), "SELECT_ALL_BY_ID", SELECT_ALL_BY_ID);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return read(readPool(), id);
+  }
+
+  @Override
+  public Observable<JsonObject> find(long id) {
+    return find(readPool(), id);
+  }
+
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    return readMany(readPool(), ids);
+  }
+
+  private Observable<JsonObject> readAll(Pool pool, String name, String sql) {
+    QueryStats.Timer timer = stats.timer(name, sql, NO_PARAMS);
+    return pool.connection(timer)
       .flatMapObservable(conn ->
         conn
-          .rxQueryStream(SELECT_ALL)
+          .rxQueryStream(sql)
+          .doOnSuccess(stream -> timer.executed())
           .flatMapObservable(SQLRowStream::toObservable)
-          .doAfterTerminate(conn::close))
+          .doAfterTerminate(() -> pool.close(conn, timer)))
       .map(array ->
         new JsonObject()
           .put("id", array.getLong(0))
@@ -75,67 +197,222 @@ public class JdbcProductStore implements Store {
       );
   }
 
-  @Override
-  public Single<JsonObject> read(long id) {
-    return db.rxGetConnection()
-      .flatMap(conn -> {
-        JsonArray param = new JsonArray().add(id);
-        return conn
-          .rxQueryWithParams(SELECT_ONE, param)
-          .map(ResultSet::getRows)
-          .flatMap(list -> {
-            if (list.isEmpty()) {
-              return Single.error(new NoSuchElementException("Item '" + id + "' not found"));
-            } else {
-              return Single.just(list.get(0));
-            }
-          })
-          .doAfterTerminate(conn::close);
-      });
+  private Single<JsonObject> read(Pool pool, long id) {
+    return find(pool, id)
+      .switchIfEmpty(Observable.error(StoreErrors.NOT_FOUND))
+      .toSingle();
+  }
+
+  private Observable<JsonObject> find(Pool pool, long id) {
+    JsonArray param = new JsonArray().add(id);
+    QueryStats.Timer timer = stats.timer("SELECT_ONE", SELECT_ONE, param);
+    return pool.connection(timer)
+      .flatMapObservable(conn -> conn
+        .rxQueryWithParams(SELECT_ONE, param)
+        .doOnSuccess(rs -> timer.executed())
+        .flatMapObservable(rs -> Observable.from(rs.getRows()))
+        .doAfterTerminate(() -> pool.close(conn, timer)));
+  }
+
+
+  private Observable<JsonObject> readMany(Pool pool, List<Long> ids) {
+    if (ids.isEmpty()) {
+      return Observable.empty();
+    }
+    if (ids.size() > 1 << (SELECT_MANY.length - 1)) {
+      return Observable.from(ids).buffer(1 << (SELECT_MANY.length - 1)).concatMap(chunk -> readMany(pool, chunk));
+    }
+    String sql = selectMany(ids.size());
+    JsonArray params = new JsonArray(paddedIds(ids));
+    QueryStats.Timer timer = stats.timer("SELECT_MANY", sql, params);
+    return pool.connection(timer)
+      .flatMapObservable(conn ->
+        conn
+          .rxQueryWithParams(sql, params)
+          .doOnSuccess(rs -> timer.executed())
+          .flatMapObservable(rs -> Observable.from(rs.getResults()))
+          .doAfterTerminate(() -> pool.close(conn, timer)))
+      .map(array ->
+        new JsonObject()
+          .put("id", array.getLong(0))
+          .put("name", array.getString(1))
+          .put("stock", array.getInteger(2))
+      );
   }
 
   @Override
   public Completable update(long id, JsonObject item) {
-    if (item == null) {
-      return Completable.error(new IllegalArgumentException("The item must not be null"));
-    }
-    if (item.getString("name") == null || item.getString("name").isEmpty()) {
-      return Completable.error(new IllegalArgumentException("The name must not be null or empty"));
-    }
-    if (item.getInteger("stock", 0) < 0) {
-      return Completable.error(new IllegalArgumentException("The stock must greater or equal to 0"));
-    }
-    if (item.containsKey("id") && id != item.getInteger("id")) {
-      return Completable.error(new IllegalArgumentException("The 'id' cannot be changed"));
-    }
-
-    return db.rxGetConnection()
-      .flatMapCompletable(conn -> {
-        JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0)).add(id);
-        return conn.rxUpdateWithParams(UPDATE, params)
-          .flatMapCompletable(up -> {
-            if (up.getUpdated() == 0) {
-              return Completable.error(new NoSuchElementException("Unknown item '" + id + "'"));
-            }
-            return Completable.complete();
-          })
-          .doAfterTerminate(conn::close);
-      });
+    StoreErrors.Invalid invalid = ProductValidation.checkUpdate(id, item);
+    if (invalid != null) {
+      return Completable.error(invalid);
+    }
+
+    JsonArray params = new JsonArray().add(item.getValue("name")).add(item.getValue("stock", 0)).add(id);
+    QueryStats.Timer timer = stats.timer("UPDATE", UPDATE, params);
+    return primary.connection(timer)
+      .flatMapCompletable(conn -> conn.rxUpdateWithParams(UPDATE, params)
+        .doOnSuccess(up -> timer.executed())
+        .flatMapCompletable(up -> {
+          if (up.getUpdated() == 0) {
+            return Completable.error(StoreErrors.NOT_FOUND);
+          }
+          return Completable.complete();
+        })
+        .doAfterTerminate(() -> primary.close(conn, timer)));
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    JsonArray params = new JsonArray().add(delta).add(id).add(delta);
+    // The lookup telling why the stock was not adjusted is timed as mapping.
+    QueryStats.Timer timer = stats.timer("ADJUST_STOCK", ADJUST_STOCK, params);
+    return primary.connection(timer)
+      .flatMap(conn -> conn.rxQueryWithParams(ADJUST_STOCK, params)
+        .doOnSuccess(rs -> timer.executed())
+        .flatMap(rs -> {
+          if (rs.getNumRows() > 0) {
+            return Single.just(rs.getResults().get(0).getLong(0));
+          }
+          // Not updated, either unknown or not enough stock.
+          return conn.rxQueryWithParams(SELECT_ONE, new JsonArray().add(id))
+            .flatMap(found -> Single.<Long>error(found.getNumRows() == 0
+              ? StoreErrors.NOT_FOUND
+              : StoreErrors.INSUFFICIENT_STOCK));
+        })
+        .doAfterTerminate(() -> primary.close(conn, timer)));
   }
 
   @Override
   public Completable delete(long id) {
-    return db.rxGetConnection()
-      .flatMapCompletable(conn -> {
-        JsonArray params = new JsonArray().add(id);
-        return conn.rxUpdateWithParams(DELETE, params)
-          .flatMapCompletable(up -> {
-            if (up.getUpdated() == 0) {
-              return Completable.error(new NoSuchElementException("Unknown item '" + id + "'"));
-            }
-            return Completable.complete();
-          })
-          .doAfterTerminate(conn::close);
+    JsonArray params = new JsonArray().add(id);
+    QueryStats.Timer timer = stats.timer("DELETE", DELETE, params);
+    return primary.connection(timer)
+      .flatMapCompletable(conn -> conn.rxUpdateWithParams(DELETE, params)
+        .doOnSuccess(up -> timer.executed())
+        .flatMapCompletable(up -> {
+          if (up.getUpdated() == 0) {
+            return Completable.error(StoreErrors.NOT_FOUND);
+          }
+          return Completable.complete();
+        })
+        .doAfterTerminate(() -> primary.close(conn, timer)));
+  }
+
+  /**
+   * @return the replica with the fewest connections in use, the next one on a tie, or the primary without replicas
+   */
+  private Pool readPool() {
+    if (replicas.isEmpty()) {
+      return primary;
+    }
+    int start = Math.floorMod(nextReplica.getAndIncrement(), replicas.size());
+    Pool best = null;
+    for (int i = 0; i < replicas.size(); i++) {
+      Pool pool = replicas.get((start + i) % replicas.size());
+      if (best == null || pool.inUse.get() < best.inUse.get()) {
+        best = pool;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the query selecting the given number of ids, padded to the next power of two so that a few prepared
+   * statements serve all the sizes
+   */
+  static String selectMany(int count) {
+    return SELECT_MANY[32 - Integer.numberOfLeadingZeros(count - 1)];
+  }
+
+  /**
+   * @return the ids padded with the last one to the size of the {@link #selectMany(int)} query, duplicates in
+   * {@code IN} lists are harmless
+   */
+  static List<Long> paddedIds(List<Long> ids) {
+    int size = Integer.highestOneBit(ids.size() - 1) << 1;
+    if (ids.size() == 1 || size == ids.size()) {
+      return ids;
+    }
+    List<Long> padded = new ArrayList<>(size);
+    padded.addAll(ids);
+    while (padded.size() < size) {
+      padded.add(ids.get(ids.size() - 1));
+    }
+    return padded;
+  }
+
+  private static final class Pool {
+    private final JDBCClient client;
+    // The connections requested and not closed yet.
+    private final AtomicInteger inUse = new AtomicInteger();
+
+    private Pool(JDBCClient client) {
+      this.client = client;
+    }
+
+    private Single<SQLConnection> connection(QueryStats.Timer timer) {
+      return Single.defer(() -> {
+        timer.requested();
+        inUse.incrementAndGet();
+        return client.rxGetConnection()
+          .doOnSuccess(conn -> timer.acquired())
+          .doOnError(err -> {
+            inUse.decrementAndGet();
+            timer.end();
+          });
       });
+    }
+
+    private void close(SQLConnection conn, QueryStats.Timer timer) {
+      inUse.decrementAndGet();
+      conn.close();
+      timer.end();
+    }
+  }
+
+  /**
+   * The store reading from the primary.
+   */
+  private final class PrimaryReads implements Store {
+
+    @Override
+    public Single<JsonObject> create(JsonObject item) {
+      return JdbcProductStore.this.create(item);
+    }
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      return JdbcProductStore.this.readAll(primary, "SELECT_ALL", SELECT_ALL);
+    }
+
+    @Override
+    public Single<JsonObject> read(long id) {
+      return JdbcProductStore.this.read(primary, id);
+    }
+
+    @Override
+    public Observable<JsonObject> find(long id) {
+      return JdbcProductStore.this.find(primary, id);
+    }
+
+    @Override
+    public Observable<JsonObject> readMany(List<Long> ids) {
+      return JdbcProductStore.this.readMany(primary, ids);
+    }
+
+    @Override
+    public Completable update(long id, JsonObject item) {
+      return JdbcProductStore.this.update(id, item);
+    }
+
+    @Override
+    public Single<Long> adjustStock(long id, long delta) {
+      return JdbcProductStore.this.adjustStock(id, delta);
+    }
+
+    @Override
+    public Completable delete(long id) {
+      return JdbcProductStore.this.delete(id);
+    }
   }
 }
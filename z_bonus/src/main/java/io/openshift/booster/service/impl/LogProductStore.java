@@ -0,0 +1,594 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.openshift.booster.service.StoreErrors;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Context;
+import io.vertx.rxjava.core.Vertx;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+import rx.SingleSubscriber;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * A store appending the products to a write-ahead log of memory-mapped segment files, for deployments which need
+ * durability but no database.
+ * <p>
+ * Each create, update and delete appends a record to the active segment, and updates an index from id to the record
+ * location, which reads decode straight from the mapped segment. The index is rebuilt by replaying the segments on
+ * {@link #open()}, a torn record at the end of the log is discarded.
+ * <p>
+ * A write is visible as soon as it is appended, and acknowledged once it is on disk. A single thread forces the
+ * segments for all the writes appended meanwhile, so a burst of writes costs one {@code force()}, not one per row.
+ * <p>
+ * Sealed segments whose ratio of superseded records reaches {@code compaction_threshold} are compacted in the
+ * background: their live records are appended again to the active segment, and the segment file is deleted.
+ */
+public class LogProductStore implements Store, Closeable {
+
+  private static final int SEGMENT_MAGIC = 0x50524C47;
+  private static final int SEGMENT_VERSION = 1;
+  // Magic, version and the last id allocated when the segment was created.
+  private static final int SEGMENT_HEADER = 4 + 4 + 8;
+  // Payload length and CRC, then the type, id and stock of the payload.
+  private static final int RECORD_HEADER = 4 + 4;
+  private static final int PAYLOAD_HEADER = 1 + 8 + 8;
+  private static final byte PUT = 1;
+  private static final byte DELETE = 2;
+  /**
+   * Stands for a {@code null} stock.
+   */
+  private static final long NO_STOCK = Long.MIN_VALUE;
+
+  private final Vertx vertx;
+  private final Path directory;
+  private final int segmentSize;
+  private final double compactionThreshold;
+  private final long compactionInterval;
+
+  private final ConcurrentSkipListMap<Long, Location> index = new ConcurrentSkipListMap<>();
+  private final LinkedBlockingQueue<Commit> commits = new LinkedBlockingQueue<>();
+  private final Object appendLock = new Object();
+
+  // Guarded by appendLock.
+  private final List<Segment> segments = new ArrayList<>();
+  private Segment active;
+  private long lastId;
+  private boolean closed;
+
+  private Thread flusher;
+  private ScheduledExecutorService compactor;
+  private volatile long flushes;
+  private volatile long flushedCommits;
+
+  /**
+   * @param config {@code path} of the log directory, {@code segment_size} in bytes (default 64MB),
+   *               {@code compaction_threshold} ratio of superseded records (default 0.5) and
+   *               {@code compaction_interval} in ms (default 10000)
+   */
+  public LogProductStore(Vertx vertx, JsonObject config) {
+    this.vertx = vertx;
+    this.directory = Paths.get(config.getString("path", "products-log"));
+    this.segmentSize = config.getInteger("segment_size", 64 * 1024 * 1024);
+    this.compactionThreshold = config.getDouble("compaction_threshold", 0.5);
+    this.compactionInterval = config.getLong("compaction_interval", 10000L);
+  }
+
+  /**
+   * Replays the segments of the log directory, and starts a new active segment, the flusher and the compaction. This
+   * is blocking.
+   */
+  public LogProductStore open() throws IOException {
+    Files.createDirectories(directory);
+    List<Path> files = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "products-*.log")) {
+      stream.forEach(files::add);
+    }
+    Collections.sort(files);
+
+    long sequence = 0;
+    synchronized (appendLock) {
+      for (int i = 0; i < files.size(); i++) {
+        Path file = files.get(i);
+        if (i == files.size() - 1 && isBlank(file)) {
+          // Rolled right before a crash, its header never reached the disk.
+          Files.delete(file);
+          break;
+        }
+        Segment segment = Segment.map(file, sequenceOf(file), FileChannel.MapMode.READ_ONLY, Files.size(file));
+        if (segment.buffer.getInt(0) != SEGMENT_MAGIC || segment.buffer.getInt(4) != SEGMENT_VERSION) {
+          throw new IOException("Not a product log segment: " + file);
+        }
+        lastId = Math.max(lastId, segment.buffer.getLong(8));
+        replay(segment);
+        segments.add(segment);
+        sequence = segment.sequence;
+      }
+      // The last segment may end with a torn record, appends go to a new one.
+      roll(sequence + 1);
+    }
+
+    flusher = new Thread(this::flush, "product-log-flusher");
+    flusher.setDaemon(true);
+    flusher.start();
+    compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "product-log-compaction");
+      thread.setDaemon(true);
+      return thread;
+    });
+    compactor.scheduleWithFixedDelay(() -> {
+      try {
+        compact();
+      } catch (IOException e) {
+        System.out.println("Cannot compact the product log: " + e.getMessage());
+      }
+    }, compactionInterval, compactionInterval, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkCreate(item);
+    if (invalid != null) {
+      return Single.error(invalid);
+    }
+
+    byte[] name = item.getString("name").getBytes(StandardCharsets.UTF_8);
+    long stock = stock(item);
+    return write(() -> {
+      long id = ++lastId;
+      append(PUT, id, stock, name);
+      return item.put("id", id);
+    });
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    // The index is ordered by id, that is by creation.
+    return Observable.defer(() -> Observable.from(index.values()).map(Location::read));
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return Single.fromCallable(() -> {
+      Location location = index.get(id);
+      if (location == null) {
+        throw StoreErrors.NOT_FOUND;
+      }
+      return location.read();
+    });
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    StoreErrors.Invalid invalid = ProductValidation.checkUpdate(id, item);
+    if (invalid != null) {
+      return Completable.error(invalid);
+    }
+
+    byte[] name = item.getString("name").getBytes(StandardCharsets.UTF_8);
+    long stock = stock(item);
+    return write(() -> {
+      if (!index.containsKey(id)) {
+        throw StoreErrors.NOT_FOUND;
+      }
+      append(PUT, id, stock, name);
+      return id;
+    }).toCompletable();
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return write(() -> {
+      Location location = index.get(id);
+      if (location == null) {
+        throw StoreErrors.NOT_FOUND;
+      }
+      JsonObject current = location.read();
+      long stock = (current.getLong("stock") == null ? 0 : current.getLong("stock")) + delta;
+      if (stock < 0) {
+        throw StoreErrors.INSUFFICIENT_STOCK;
+      }
+      append(PUT, id, stock, current.getString("name").getBytes(StandardCharsets.UTF_8));
+      return stock;
+    });
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return write(() -> {
+      if (!index.containsKey(id)) {
+        throw StoreErrors.NOT_FOUND;
+      }
+      append(DELETE, id, NO_STOCK, new byte[0]);
+      return id;
+    }).toCompletable();
+  }
+
+  /**
+   * Stops the compaction, waits for the pending writes to be on disk, and rejects the next ones.
+   */
+  @Override
+  public void close() throws IOException {
+    synchronized (appendLock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    compactor.shutdown();
+    try {
+      compactor.awaitTermination(30, TimeUnit.SECONDS);
+      flusher.interrupt();
+      flusher.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    synchronized (appendLock) {
+      active.buffer.force();
+    }
+  }
+
+  /**
+   * Compacts the sealed segments which reached the threshold of superseded records, oldest first. This is blocking,
+   * and runs periodically once the store is {@link #open() opened}.
+   *
+   * @return the number of deleted segments
+   */
+  int compact() throws IOException {
+    List<Segment> candidates = new ArrayList<>();
+    synchronized (appendLock) {
+      for (Segment segment : segments) {
+        if (segment != active && segment.dead >= segment.records * compactionThreshold) {
+          candidates.add(segment);
+        }
+      }
+    }
+    int deleted = 0;
+    for (Segment segment : candidates) {
+      if (compact(segment)) {
+        deleted++;
+      }
+    }
+    return deleted;
+  }
+
+  /**
+   * @return the number of {@code force()} calls since the store was opened, and the number of writes they made durable
+   */
+  long[] flushStatistics() {
+    return new long[]{flushes, flushedCommits};
+  }
+
+  /**
+   * Appends a record under the append lock, and emits the result on the context of the subscriber once the record is
+   * on disk.
+   */
+  private <T> Single<T> write(Callable<T> append) {
+    return Single.create(subscriber -> {
+      Context context = vertx.getOrCreateContext();
+      try {
+        synchronized (appendLock) {
+          if (closed) {
+            throw new IllegalStateException("The product log is closed");
+          }
+          T result = append.call();
+          commits.add(new Commit(active, context, subscriber, result));
+        }
+      } catch (Throwable t) {
+        subscriber.onError(t);
+      }
+    });
+  }
+
+  /**
+   * Group commit: forces the segments of all the writes appended while the previous {@code force()} ran, then
+   * acknowledges them.
+   */
+  private void flush() {
+    List<Commit> batch = new ArrayList<>();
+    boolean closing = false;
+    while (!closing) {
+      try {
+        batch.add(commits.take());
+      } catch (InterruptedException e) {
+        // Closing, no more writes are appended, the pending ones are still acknowledged.
+        closing = true;
+      }
+      commits.drainTo(batch);
+      if (batch.isEmpty()) {
+        continue;
+      }
+      Set<Segment> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+      for (Commit commit : batch) {
+        dirty.add(commit.segment);
+      }
+      Throwable failure = null;
+      try {
+        for (Segment segment : dirty) {
+          segment.buffer.force();
+        }
+      } catch (Throwable t) {
+        failure = t;
+      }
+      flushes++;
+      flushedCommits += batch.size();
+      for (Commit commit : batch) {
+        commit.complete(failure);
+      }
+      batch.clear();
+    }
+  }
+
+  /**
+   * Appends a record to the active segment, rolling to a new segment when full, and updates the index and the
+   * superseded record counts. Must hold the append lock.
+   */
+  private void append(byte type, long id, long stock, byte[] name) throws IOException {
+    int length = RECORD_HEADER + PAYLOAD_HEADER + name.length;
+    if (length > segmentSize - SEGMENT_HEADER) {
+      throw new StoreErrors.Invalid("The item is too large for a product log segment");
+    }
+    if (active.position + length > segmentSize) {
+      roll(active.sequence + 1);
+    }
+
+    ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_HEADER + name.length);
+    payload.put(type).putLong(id).putLong(stock).put(name);
+    CRC32 crc = new CRC32();
+    crc.update(payload.array());
+
+    int offset = active.position;
+    ByteBuffer buffer = active.buffer.duplicate();
+    buffer.position(offset);
+    buffer.putInt(payload.capacity()).putInt((int) crc.getValue()).put(payload.array());
+    active.position += length;
+    apply(type, id, new Location(active, offset));
+  }
+
+  private void apply(byte type, long id, Location location) {
+    Location previous = type == PUT ? index.put(id, location) : index.remove(id);
+    if (previous != null) {
+      previous.segment.dead++;
+    }
+    if (type == DELETE) {
+      // A tombstone is never read, only kept while older segments may contain the item.
+      location.segment.dead++;
+    }
+    location.segment.records++;
+    lastId = Math.max(lastId, id);
+  }
+
+  /**
+   * Rebuilds the index from the records of a segment, up to the first empty or torn record.
+   */
+  private void replay(Segment segment) {
+    int offset = SEGMENT_HEADER;
+    while (true) {
+      byte type = segment.typeAt(offset);
+      if (type == 0) {
+        break;
+      }
+      apply(type, segment.buffer.getLong(offset + RECORD_HEADER + 1), new Location(segment, offset));
+      offset += RECORD_HEADER + segment.buffer.getInt(offset);
+    }
+    segment.position = offset;
+  }
+
+  /**
+   * @return whether the segment has no header, only zeros where it would be
+   */
+  private static boolean isBlank(Path file) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER);
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      channel.read(header, 0);
+    }
+    for (int i = 0; i < header.position(); i++) {
+      if (header.get(i) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Seals the active segment and starts a new one, whose header is forced so that the segment can be replayed. Must
+   * hold the append lock.
+   */
+  private void roll(long sequence) throws IOException {
+    Path file = directory.resolve(String.format("products-%020d.log", sequence));
+    Segment segment = Segment.map(file, sequence, FileChannel.MapMode.READ_WRITE, segmentSize);
+    segment.buffer.putInt(0, SEGMENT_MAGIC).putInt(4, SEGMENT_VERSION).putLong(8, lastId);
+    segment.buffer.force();
+    segment.position = SEGMENT_HEADER;
+    segments.add(segment);
+    active = segment;
+  }
+
+  /**
+   * Appends again the live records of a sealed segment, forces them, then deletes the segment.
+   *
+   * @return whether the segment was deleted
+   */
+  private boolean compact(Segment segment) throws IOException {
+    boolean older;
+    synchronized (appendLock) {
+      if (closed) {
+        return false;
+      }
+      older = segments.indexOf(segment) > 0;
+    }
+
+    Set<Segment> written = Collections.newSetFromMap(new IdentityHashMap<>());
+    int offset = SEGMENT_HEADER;
+    while (true) {
+      synchronized (appendLock) {
+        if (closed) {
+          return false;
+        }
+        byte type = segment.typeAt(offset);
+        if (type == 0) {
+          break;
+        }
+        long id = segment.buffer.getLong(offset + RECORD_HEADER + 1);
+        Location location = index.get(id);
+        if (type == PUT && location != null && location.segment == segment && location.offset == offset) {
+          JsonObject json = location.read();
+          Long stock = json.getLong("stock");
+          append(PUT, id, stock == null ? NO_STOCK : stock, json.getString("name").getBytes(StandardCharsets.UTF_8));
+          written.add(active);
+        } else if (type == DELETE && older && location == null) {
+          append(DELETE, id, NO_STOCK, new byte[0]);
+          written.add(active);
+        }
+        offset += RECORD_HEADER + segment.buffer.getInt(offset);
+      }
+    }
+
+    for (Segment target : written) {
+      target.buffer.force();
+    }
+    synchronized (appendLock) {
+      segments.remove(segment);
+    }
+    // Reads in progress keep the mapping, which outlives the file.
+    Files.deleteIfExists(segment.file);
+    return true;
+  }
+
+  private static long sequenceOf(Path file) throws IOException {
+    String name = file.getFileName().toString();
+    try {
+      return Long.parseLong(name.substring("products-".length(), name.length() - ".log".length()));
+    } catch (NumberFormatException e) {
+      throw new IOException("Not a product log segment: " + file, e);
+    }
+  }
+
+  private static long stock(JsonObject item) {
+    Number stock = (Number) item.getValue("stock", 0);
+    return stock == null ? NO_STOCK : stock.longValue();
+  }
+
+  private static final class Segment {
+    private final Path file;
+    private final long sequence;
+    private final MappedByteBuffer buffer;
+    // Guarded by the append lock.
+    private int position;
+    private int records;
+    private int dead;
+
+    private Segment(Path file, long sequence, MappedByteBuffer buffer) {
+      this.file = file;
+      this.sequence = sequence;
+      this.buffer = buffer;
+    }
+
+    private static Segment map(Path file, long sequence, FileChannel.MapMode mode, long size) throws IOException {
+      StandardOpenOption[] options = mode == FileChannel.MapMode.READ_ONLY
+        ? new StandardOpenOption[]{StandardOpenOption.READ}
+        : new StandardOpenOption[]{StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE};
+      // The mapping stays valid once the channel is closed.
+      try (FileChannel channel = FileChannel.open(file, options)) {
+        return new Segment(file, sequence, channel.map(mode, 0, size));
+      }
+    }
+
+    /**
+     * @return the type of the record at the offset, 0 at the end of the segment or for a torn record
+     */
+    private byte typeAt(int offset) {
+      if (offset + RECORD_HEADER + PAYLOAD_HEADER > buffer.capacity()) {
+        return 0;
+      }
+      int length = buffer.getInt(offset);
+      if (length < PAYLOAD_HEADER || offset + RECORD_HEADER + length > buffer.capacity()) {
+        return 0;
+      }
+      byte[] payload = new byte[length];
+      ByteBuffer slice = buffer.duplicate();
+      slice.position(offset + RECORD_HEADER);
+      slice.get(payload);
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+        return 0;
+      }
+      return payload[0] == PUT || payload[0] == DELETE ? payload[0] : 0;
+    }
+  }
+
+  private static final class Location {
+    private final Segment segment;
+    private final int offset;
+
+    private Location(Segment segment, int offset) {
+      this.segment = segment;
+      this.offset = offset;
+    }
+
+    private JsonObject read() {
+      ByteBuffer buffer = segment.buffer.duplicate();
+      buffer.position(offset);
+      int length = buffer.getInt();
+      buffer.getInt();
+      buffer.get();
+      long id = buffer.getLong();
+      long stock = buffer.getLong();
+      byte[] name = new byte[length - PAYLOAD_HEADER];
+      buffer.get(name);
+      return new JsonObject()
+        .put("id", id)
+        .put("name", new String(name, StandardCharsets.UTF_8))
+        .put("stock", stock == NO_STOCK ? null : stock);
+    }
+  }
+
+  private static final class Commit {
+    private final Segment segment;
+    private final Context context;
+    private final SingleSubscriber<Object> subscriber;
+    private final Object result;
+
+    @SuppressWarnings("unchecked")
+    private <T> Commit(Segment segment, Context context, SingleSubscriber<? super T> subscriber, T result) {
+      this.segment = segment;
+      this.context = context;
+      this.subscriber = (SingleSubscriber<Object>) subscriber;
+      this.result = result;
+    }
+
+    private void complete(Throwable failure) {
+      if (failure != null) {
+        context.runOnContext(v -> subscriber.onError(failure));
+      } else {
+        context.runOnContext(v -> subscriber.onSuccess(result));
+      }
+    }
+  }
+}
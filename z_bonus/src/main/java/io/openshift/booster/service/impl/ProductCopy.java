@@ -0,0 +1,401 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.Context;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.core.streams.WriteStream;
+import io.vertx.rxjava.core.Vertx;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import rx.Completable;
+import rx.Single;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bulk export and import of the products with the PostgreSQL {@code COPY} command, streamed between a Vert.x stream
+ * and the database without materializing the rows.
+ * <p>
+ * Each copy runs on a connection and a thread of its own, the rows are not pooled: exports and imports are rare, and
+ * long. The thread blocks on the Vert.x stream: an export waits for the response to drain, an import pauses the request
+ * while enough chunks are waiting for the database, so a slow side slows down the other instead of filling the memory.
+ * At most {@code maxConcurrency} copies run at once, the others fail with a {@link RejectedExecutionException} instead of
+ * opening more connections to the database.
+ */
+public class ProductCopy implements Closeable {
+
+  /**
+   * The formats of the copies, CSV with a header, or one JSON object per line.
+   */
+  public enum Format {
+    CSV, NDJSON
+  }
+
+  private static final String EXPORT_CSV =
+    "COPY (SELECT id, name, stock FROM products ORDER BY id) TO STDOUT WITH (FORMAT csv, HEADER)";
+
+  // The CSV format with quote and delimiter characters which JSON always escapes leaves the JSON lines untouched.
+  private static final String EXPORT_NDJSON =
+    "COPY (SELECT row_to_json(p) FROM (SELECT id, name, stock FROM products ORDER BY id) p) TO STDOUT "
+      + "WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
+
+  private static final String IMPORT_CSV = "COPY products (id, name, stock) FROM STDIN WITH (FORMAT csv, HEADER)";
+
+  private static final String CREATE_NDJSON_TABLE = "CREATE TEMP TABLE products_import (doc json) ON COMMIT DROP";
+
+  private static final String IMPORT_NDJSON =
+    "COPY products_import FROM STDIN WITH (FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
+
+  private static final String INSERT_NDJSON = "INSERT INTO products (id, name, stock) "
+    + "SELECT COALESCE(r.id, nextval(pg_get_serial_sequence('products', 'id'))), r.name, r.stock "
+    + "FROM products_import i, json_populate_record(NULL::products, i.doc) r";
+
+  private static final String TRUNCATE = "TRUNCATE products";
+
+  // Imported ids are not allocated by the sequence.
+  private static final String RESET_SEQUENCE = "SELECT setval(pg_get_serial_sequence('products', 'id'), "
+    + "COALESCE(MAX(id), 0) + 1, false) FROM products";
+
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private static final int DEFAULT_MAX_CONCURRENCY = 2;
+
+  private final Vertx vertx;
+  private final String url;
+  private final String user;
+  private final String password;
+  private final ExecutorService executor;
+  private final int maxConcurrency;
+  private final Semaphore permits;
+
+  /**
+   * @param config the JDBC client configuration: {@code url}, {@code user} and {@code password}
+   */
+  public ProductCopy(Vertx vertx, JsonObject config) {
+    this(vertx, config, DEFAULT_MAX_CONCURRENCY);
+  }
+
+  /**
+   * @param config         the JDBC client configuration: {@code url}, {@code user} and {@code password}
+   * @param maxConcurrency the maximum number of copies running at once
+   */
+  public ProductCopy(Vertx vertx, JsonObject config, int maxConcurrency) {
+    if (maxConcurrency < 1) {
+      throw new IllegalArgumentException("The maximum number of copies must be positive: " + maxConcurrency);
+    }
+    this.vertx = vertx;
+    this.maxConcurrency = maxConcurrency;
+    this.permits = new Semaphore(maxConcurrency);
+    this.url = config.getString("url");
+    this.user = config.getString("user");
+    this.password = config.getString("password");
+    AtomicInteger count = new AtomicInteger();
+    this.executor = Executors.newCachedThreadPool(r -> {
+      Thread thread = new Thread(r, "product-copy-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Writes all the products to the stream, ordered by id. The stream is not ended.
+   *
+   * @return fails with {@link RejectedExecutionException} when too many copies are running
+   */
+  public Completable export(Format format, WriteStream<Buffer> out) {
+    return call(context -> {
+      StreamOutput output = new StreamOutput(context, out);
+      try (Connection conn = DriverManager.getConnection(url, user, password);
+           OutputStream buffered = new BufferedOutputStream(output, CHUNK_SIZE)) {
+        copyManager(conn).copyOut(format == Format.CSV ? EXPORT_CSV : EXPORT_NDJSON, buffered);
+      }
+      return null;
+    }).toCompletable();
+  }
+
+  /**
+   * Inserts the products read from the stream, in one transaction, and then moves the id sequence past the imported
+   * ids. Must be subscribed to before the stream emits, i.e. from its handler.
+   *
+   * @param replace whether to delete the existing products first
+   * @return the number of imported products, or fails with {@link IllegalArgumentException} for invalid data, with
+   * {@link IllegalStateException} for products conflicting with the existing ones, and with
+   * {@link RejectedExecutionException} when too many copies are running
+   */
+  public Single<Long> importFrom(Format format, boolean replace, ReadStream<Buffer> in) {
+    return Single.defer(() -> {
+      StreamInput input = new StreamInput(vertx.getOrCreateContext().getDelegate(), in);
+      return call(context -> {
+        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+          conn.setAutoCommit(false);
+          try (Statement statement = conn.createStatement()) {
+            if (replace) {
+              statement.execute(TRUNCATE);
+            }
+            long count;
+            if (format == Format.CSV) {
+              count = copyManager(conn).copyIn(IMPORT_CSV, input, CHUNK_SIZE);
+            } else {
+              statement.execute(CREATE_NDJSON_TABLE);
+              copyManager(conn).copyIn(IMPORT_NDJSON, input, CHUNK_SIZE);
+              count = statement.executeUpdate(INSERT_NDJSON);
+            }
+            statement.execute(RESET_SEQUENCE);
+            conn.commit();
+            return count;
+          } catch (SQLException | IOException | RuntimeException e) {
+            conn.rollback();
+            throw e;
+          }
+        } catch (SQLException e) {
+          throw translate(e);
+        } finally {
+          input.discard();
+        }
+      }).doOnError(err -> {
+        if (err instanceof RejectedExecutionException) {
+          // Not started.
+          input.discard();
+        }
+      });
+    });
+  }
+
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  /**
+   * Runs the copy on a thread of its own, unless too many copies are running, and emits the outcome on the context of
+   * the subscriber.
+   */
+  private <T> Single<T> call(CopyTask<T> task) {
+    return Single.create(subscriber -> {
+      if (!permits.tryAcquire()) {
+        subscriber.onError(new RejectedExecutionException("At most " + maxConcurrency + " copies run at once"));
+        return;
+      }
+      Context context = vertx.getOrCreateContext().getDelegate();
+      try {
+        executor.execute(() -> {
+          T result;
+          try {
+            result = task.call(context);
+          } catch (Throwable t) {
+            // Given back before the outcome, so the subscriber can start another copy.
+            permits.release();
+            context.runOnContext(v -> subscriber.onError(t));
+            return;
+          }
+          permits.release();
+          context.runOnContext(v -> subscriber.onSuccess(result));
+        });
+      } catch (RejectedExecutionException e) {
+        // Closed.
+        permits.release();
+        subscriber.onError(e);
+      }
+    });
+  }
+
+  private static CopyManager copyManager(Connection conn) throws SQLException {
+    return conn.unwrap(PGConnection.class).getCopyAPI();
+  }
+
+  /**
+   * @return the exception for invalid data (class 22) and constraint violations (class 23), or the given one
+   */
+  private static Exception translate(SQLException e) {
+    String state = e.getSQLState() == null ? "" : e.getSQLState();
+    if (state.startsWith("22") || state.equals("23502") || state.equals("23514")) {
+      return new IllegalArgumentException(e.getMessage(), e);
+    }
+    if (state.startsWith("23")) {
+      return new IllegalStateException(e.getMessage(), e);
+    }
+    return e;
+  }
+
+  @FunctionalInterface
+  private interface CopyTask<T> {
+    T call(Context context) throws Exception;
+  }
+
+  /**
+   * Writes to a Vert.x stream from a blocking thread, waiting for the stream to drain when its queue is full.
+   */
+  private static final class StreamOutput extends OutputStream {
+    private final Context context;
+    private final WriteStream<Buffer> out;
+    private volatile Throwable failure;
+    private volatile CompletableFuture<Void> drained;
+
+    private StreamOutput(Context context, WriteStream<Buffer> out) {
+      this.context = context;
+      this.out = out;
+      context.runOnContext(v -> out.exceptionHandler(err -> {
+        // The client is gone, the copy is cancelled.
+        failure = err;
+        CompletableFuture<Void> waiting = drained;
+        if (waiting != null) {
+          waiting.completeExceptionally(err);
+        }
+      }));
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (failure != null) {
+        throw new IOException("The export stream failed", failure);
+      }
+      Buffer chunk = Buffer.buffer(length).appendBytes(bytes, offset, length);
+      CompletableFuture<Void> ready = new CompletableFuture<>();
+      context.runOnContext(v -> {
+        if (failure != null) {
+          ready.completeExceptionally(failure);
+          return;
+        }
+        try {
+          out.write(chunk);
+        } catch (RuntimeException e) {
+          ready.completeExceptionally(e);
+          return;
+        }
+        if (out.writeQueueFull()) {
+          drained = ready;
+          out.drainHandler(d -> ready.complete(null));
+        } else {
+          ready.complete(null);
+        }
+      });
+      try {
+        ready.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        throw new IOException("The export stream failed", e.getCause());
+      }
+    }
+  }
+
+  /**
+   * Reads a Vert.x stream from a blocking thread, pausing the stream while enough chunks are waiting to be read.
+   */
+  private static final class StreamInput extends InputStream {
+    private static final int HIGH_WATER_MARK = 16;
+    private static final int LOW_WATER_MARK = 4;
+    private static final Buffer END = Buffer.buffer();
+
+    private final Context context;
+    private final ReadStream<Buffer> in;
+    private final LinkedBlockingQueue<Buffer> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    // Only changed on the context.
+    private volatile boolean paused;
+    private boolean ended;
+    private volatile Throwable failure;
+    private Buffer current;
+    private int position;
+
+    // Called on the context, before the stream emits.
+    private StreamInput(Context context, ReadStream<Buffer> in) {
+      this.context = context;
+      this.in = in;
+      in.handler(chunk -> {
+        queue.add(chunk);
+        if (queued.incrementAndGet() >= HIGH_WATER_MARK && !paused) {
+          paused = true;
+          in.pause();
+        }
+      });
+      in.endHandler(v -> {
+        ended = true;
+        queue.add(END);
+      });
+      in.exceptionHandler(err -> {
+        ended = true;
+        failure = err;
+        queue.add(END);
+      });
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (current == null || position == current.length()) {
+        try {
+          current = queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+        position = 0;
+        if (current == END) {
+          // Seen again by the next reads.
+          queue.add(END);
+          if (failure != null) {
+            throw new IOException("The import stream failed", failure);
+          }
+          return -1;
+        }
+        if (queued.decrementAndGet() <= LOW_WATER_MARK && paused) {
+          context.runOnContext(v -> {
+            if (paused) {
+              paused = false;
+              in.resume();
+            }
+          });
+        }
+      }
+      int count = Math.min(length, current.length() - position);
+      current.getBytes(position, position + count, bytes, offset);
+      position += count;
+      return count;
+    }
+
+    /**
+     * Drops the rest of the stream, the copy is over.
+     */
+    private void discard() {
+      context.runOnContext(v -> {
+        if (ended) {
+          return;
+        }
+        in.handler(chunk -> { });
+        in.exceptionHandler(err -> { });
+        paused = false;
+        in.resume();
+      });
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.StoreErrors;
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Checks of the items received by the stores, failing with preallocated errors.
+ */
+final class ProductValidation {
+
+  private static final StoreErrors.Invalid NULL_ITEM = new StoreErrors.Invalid("The item must not be null");
+  private static final StoreErrors.Invalid NO_NAME = new StoreErrors.Invalid("The name must not be null or empty");
+  private static final StoreErrors.Invalid NEGATIVE_STOCK =
+    new StoreErrors.Invalid("The stock must greater or equal to 0");
+  private static final StoreErrors.Invalid ID_GIVEN =
+    new StoreErrors.Invalid("The created item already contains an 'id'");
+  private static final StoreErrors.Invalid ID_CHANGED = new StoreErrors.Invalid("The 'id' cannot be changed");
+
+  private ProductValidation() {
+    // Private constructor.
+  }
+
+  /**
+   * @return the reason why the item cannot be created, {@code null} if it can
+   */
+  static StoreErrors.Invalid checkCreate(JsonObject item) {
+    if (item == null) {
+      return NULL_ITEM;
+    }
+    if (item.getString("name") == null || item.getString("name").isEmpty()) {
+      return NO_NAME;
+    }
+    if (item.getInteger("stock", 0) < 0) {
+      return NEGATIVE_STOCK;
+    }
+    if (item.containsKey("id")) {
+      return ID_GIVEN;
+    }
+    return null;
+  }
+
+  /**
+   * @return the reason why the item cannot be updated, {@code null} if it can
+   */
+  static StoreErrors.Invalid checkUpdate(long id, JsonObject item) {
+    if (item == null) {
+      return NULL_ITEM;
+    }
+    if (item.getString("name") == null || item.getString("name").isEmpty()) {
+      return NO_NAME;
+    }
+    if (item.getInteger("stock", 0) < 0) {
+      return NEGATIVE_STOCK;
+    }
+    if (item.containsKey("id") && id != item.getLong("id")) {
+      return ID_CHANGED;
+    }
+    return null;
+  }
+}
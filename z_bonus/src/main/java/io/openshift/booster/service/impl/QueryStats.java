@@ -0,0 +1,350 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Times the statements of the {@link JdbcProductStore} in three phases: waiting for a pooled connection, executing the
+ * statement, and mapping its rows until the connection is released.
+ * <p>
+ * Each statement shape, its SQL with the {@code ?} placeholders, has a latency histogram per phase. The buckets are
+ * eighths of powers of two microseconds, so the percentiles are within 12.5%, and are counted without lock. The
+ * statements lasting at least {@code slow_threshold} ms are logged with the types of their parameters, never their
+ * values. The slowest shapes of the last {@code window} ms, moved in {@code slots} steps, are listed by
+ * {@link #slowest(int)}.
+ * <p>
+ * The stats are shared by name through a local map, so that the verticle instances of the application report together.
+ * {@link #NONE} times nothing and costs nothing.
+ */
+public class QueryStats implements Shareable {
+
+  public static final QueryStats NONE = new QueryStats();
+
+  private static final String[] PHASES = {"acquire", "execute", "mapping", "total"};
+  // 8 buckets of 1 microsecond, then 8 per power of two up to 2^63.
+  private static final int BUCKETS = 8 * 62;
+
+  private final long slowNanos;
+  private final long windowMillis;
+  private final long slotNanos;
+  private final int slots;
+  private final Map<String, Statement> statements = new ConcurrentHashMap<>();
+
+  private QueryStats() {
+    this.slowNanos = 0;
+    this.windowMillis = 0;
+    this.slotNanos = 0;
+    this.slots = 0;
+  }
+
+  QueryStats(JsonObject options) {
+    this.slowNanos = TimeUnit.MILLISECONDS.toNanos(options.getLong("slow_threshold", 100L));
+    this.windowMillis = options.getLong("window", 60000L);
+    this.slots = options.getInteger("slots", 6);
+    if (windowMillis <= 0 || slots < 1) {
+      throw new IllegalArgumentException("The window and slots must be positive: " + options.encode());
+    }
+    this.slotNanos = Math.max(1, TimeUnit.MILLISECONDS.toNanos(windowMillis) / slots);
+  }
+
+  /**
+   * @param options {@code slow_threshold} in ms (default 100, 0 logs nothing), {@code window} in ms (default 60000)
+   *                and {@code slots} (default 6), the stats of the same {@code name} are returned if already created
+   */
+  public static QueryStats create(Vertx vertx, JsonObject options) {
+    LocalMap<String, QueryStats> stats = vertx.sharedData().getLocalMap(QueryStats.class.getName());
+    QueryStats created = new QueryStats(options);
+    QueryStats existing = stats.putIfAbsent(options.getString("name", "default"), created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * @param name the name of the statement, e.g. {@code SELECT_ONE}
+   * @return the timer of an execution of the statement, started when asking the pool for a connection
+   */
+  Timer timer(String name, String sql, JsonArray params) {
+    return this == NONE ? Timer.NOOP : new Timer(this, name, sql, params);
+  }
+
+  /**
+   * @return the {@code top} statement shapes of the window by decreasing maximum latency, in microseconds
+   */
+  public JsonArray slowest(int top) {
+    long epoch = Math.floorDiv(System.nanoTime(), slotNanos);
+    List<JsonObject> slowest = new ArrayList<>();
+    for (Statement statement : statements.values()) {
+      long count = 0;
+      long total = 0;
+      long max = 0;
+      for (int i = 0; i < slots; i++) {
+        Slot slot = statement.window.get(i);
+        if (slot != null && slot.epoch > epoch - slots) {
+          count += slot.count.sum();
+          total += slot.total.sum();
+          max = Math.max(max, slot.max.get());
+        }
+      }
+      if (count > 0) {
+        slowest.add(new JsonObject()
+          .put("statement", statement.name)
+          .put("sql", statement.sql)
+          .put("count", count)
+          .put("mean", total / count / 1000)
+          .put("max", max / 1000));
+      }
+    }
+    slowest.sort(Comparator.comparing((JsonObject json) -> json.getLong("max")).reversed());
+    return new JsonArray(slowest.subList(0, Math.min(top, slowest.size())));
+  }
+
+  /**
+   * @return the percentiles of each phase of each statement shape since the start, in microseconds
+   */
+  public JsonArray histograms() {
+    Map<String, Statement> sorted = new TreeMap<>(statements);
+    JsonArray histograms = new JsonArray();
+    for (Statement statement : sorted.values()) {
+      JsonObject json = new JsonObject().put("statement", statement.name).put("sql", statement.sql);
+      for (int phase = 0; phase < PHASES.length; phase++) {
+        json.put(PHASES[phase], statement.phases[phase].toJson());
+      }
+      histograms.add(json);
+    }
+    return histograms;
+  }
+
+  /**
+   * @return the {@link #slowest(int)} statements of the window and the {@link #histograms()}
+   */
+  public JsonObject toJson(int top) {
+    return new JsonObject()
+      .put("window", windowMillis)
+      .put("slowest", slowest(top))
+      .put("statements", histograms());
+  }
+
+  private void record(Timer timer, long end) {
+    Statement statement = statements.get(timer.sql);
+    if (statement == null) {
+      statement = statements.computeIfAbsent(timer.sql, sql -> new Statement(timer.name, sql, slots));
+    }
+    long acquire = timer.acquired - timer.start;
+    long execute = timer.executed - timer.acquired;
+    long mapping = end - timer.executed;
+    long total = end - timer.start;
+    statement.phases[0].record(acquire);
+    statement.phases[1].record(execute);
+    statement.phases[2].record(mapping);
+    statement.phases[3].record(total);
+    statement.window(Math.floorDiv(end, slotNanos), slots).record(total);
+    if (slowNanos > 0 && total >= slowNanos) {
+      System.out.println("Slow query " + statement.name + " in " + millis(total) + " ms (acquire " + millis(acquire)
+        + ", execute " + millis(execute) + ", mapping " + millis(mapping) + "): " + statement.sql + " "
+        + redact(timer.params));
+    }
+  }
+
+  /**
+   * @return the types of the parameters, their values may be personal data
+   */
+  static String redact(JsonArray params) {
+    StringBuilder redacted = new StringBuilder("[");
+    for (int i = 0; i < params.size(); i++) {
+      Object value = params.getValue(i);
+      redacted.append(i == 0 ? "" : ", ").append(value == null ? "null" : value.getClass().getSimpleName());
+    }
+    return redacted.append("]").toString();
+  }
+
+  private static long millis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  static int bucket(long micros) {
+    if (micros < 8) {
+      return (int) Math.max(0, micros);
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(micros);
+    return (exponent - 2) * 8 + (int) ((micros >>> (exponent - 3)) & 7);
+  }
+
+  /**
+   * @return the largest value of the bucket, in microseconds
+   */
+  static long upperBound(int bucket) {
+    if (bucket < 8) {
+      return bucket;
+    }
+    int shift = bucket / 8 - 1;
+    return ((8L + bucket % 8 + 1) << shift) - 1;
+  }
+
+  /**
+   * The timing of a statement execution, on the event loop of its query.
+   */
+  static final class Timer {
+    static final Timer NOOP = new Timer(null, null, null, null);
+
+    private final QueryStats stats;
+    private final String name;
+    private final String sql;
+    private final JsonArray params;
+    private long start;
+    private long acquired;
+    private long executed;
+
+    private Timer(QueryStats stats, String name, String sql, JsonArray params) {
+      this.stats = stats;
+      this.name = name;
+      this.sql = sql;
+      this.params = params;
+    }
+
+    void requested() {
+      if (stats != null) {
+        start = System.nanoTime();
+        acquired = Long.MIN_VALUE;
+        executed = Long.MIN_VALUE;
+      }
+    }
+
+    void acquired() {
+      if (stats != null) {
+        acquired = System.nanoTime();
+      }
+    }
+
+    void executed() {
+      if (stats != null) {
+        executed = System.nanoTime();
+      }
+    }
+
+    /**
+     * Ends the timing, once the connection is released, or not acquired.
+     */
+    void end() {
+      if (stats == null) {
+        return;
+      }
+      long now = System.nanoTime();
+      if (acquired == Long.MIN_VALUE) {
+        acquired = now;
+      }
+      if (executed == Long.MIN_VALUE) {
+        executed = now;
+      }
+      stats.record(this, now);
+    }
+  }
+
+  private static final class Statement {
+    private final String name;
+    private final String sql;
+    private final Histogram[] phases = new Histogram[PHASES.length];
+    private final AtomicReferenceArray<Slot> window;
+
+    private Statement(String name, String sql, int slots) {
+      this.name = name;
+      this.sql = sql;
+      for (int i = 0; i < phases.length; i++) {
+        phases[i] = new Histogram();
+      }
+      this.window = new AtomicReferenceArray<>(slots);
+    }
+
+    /**
+     * @return the slot of the epoch, replacing the slot of an older epoch
+     */
+    private Slot window(long epoch, int slots) {
+      int index = (int) Math.floorMod(epoch, (long) slots);
+      for (;;) {
+        Slot slot = window.get(index);
+        if (slot != null && slot.epoch >= epoch) {
+          // A late recording of an epoch already replaced counts in the current one.
+          return slot;
+        }
+        Slot next = new Slot(epoch);
+        if (window.compareAndSet(index, slot, next)) {
+          return next;
+        }
+      }
+    }
+  }
+
+  private static final class Slot {
+    private final long epoch;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    private Slot(long epoch) {
+      this.epoch = epoch;
+    }
+
+    private void record(long nanos) {
+      count.increment();
+      total.add(nanos);
+      long current;
+      while (nanos > (current = max.get()) && !max.compareAndSet(current, nanos)) {
+        // Raced with a longer or shorter statement, retry.
+      }
+    }
+  }
+
+  private static final class Histogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    private void record(long nanos) {
+      long micros = nanos / 1000;
+      buckets.incrementAndGet(bucket(micros));
+      long current;
+      while (micros > (current = max.get()) && !max.compareAndSet(current, micros)) {
+        // Raced with a longer or shorter statement, retry.
+      }
+    }
+
+    private JsonObject toJson() {
+      long[] counts = new long[BUCKETS];
+      long count = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] = buckets.get(i);
+        count += counts[i];
+      }
+      return new JsonObject()
+        .put("count", count)
+        .put("p50", percentile(counts, count, 0.50))
+        .put("p90", percentile(counts, count, 0.90))
+        .put("p99", percentile(counts, count, 0.99))
+        .put("max", max.get());
+    }
+
+    private long percentile(long[] counts, long count, double percentile) {
+      long rank = (long) Math.ceil(count * percentile);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          return Math.min(upperBound(i), max.get());
+        }
+      }
+      return 0;
+    }
+  }
+}
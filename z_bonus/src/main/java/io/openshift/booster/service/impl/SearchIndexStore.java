@@ -0,0 +1,454 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Single;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+/**
+ * A store indexing the products in memory for {@link #search(String, long, int, int)}, instead of scanning the table
+ * with {@code LIKE '%...%'}.
+ * <p>
+ * Names are indexed by trigram, and their words by prefix for the queries shorter than a trigram. A query looks up the
+ * shortest posting list of its trigrams and checks the names of these candidates only. Stocks are indexed in a sorted
+ * map, so a search by stock alone walks the products from the highest stock down to the minimum.
+ * <p>
+ * The indexes are loaded from the delegate by {@link #load()} and kept current by the writes made through this store.
+ * They are loaded again in the background by {@link #refresh()}, e.g. periodically when other applications write to
+ * the same database, while the installed ones keep serving the searches, or on the next search after
+ * {@link #invalidate()}. The searches arriving during a load without installed indexes wait for it instead of starting
+ * their own, and the writes completed meanwhile are replayed on the loaded indexes before they are installed.
+ */
+public class SearchIndexStore implements Store, Closeable {
+
+  private static final int GRAM = 3;
+
+  private static final Comparator<Match> RANKING = Comparator
+    .comparingInt((Match match) -> match.rank)
+    .thenComparingInt(match -> match.product.name.length())
+    .thenComparingLong(match -> match.product.id);
+
+  private final Store delegate;
+
+  // Guarded by this, null until loaded.
+  private Indexes indexes;
+  // Guarded by this, the load in progress and the writes completed since it started, null otherwise.
+  private Single<Indexes> loading;
+  private List<Consumer<Indexes>> pendingWrites;
+  private long version;
+
+  public SearchIndexStore(Store delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    return delegate.create(item)
+      .doOnSuccess(json -> put(json.getLong("id"), json))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    return delegate.readAll();
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    return delegate.read(id);
+  }
+
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    return delegate.readMany(ids);
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    return delegate.update(id, item)
+      .doOnCompleted(() -> put(id, item))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return delegate.adjustStock(id, delta)
+      .doOnSuccess(stock -> putStock(id, stock))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return delegate.delete(id)
+      .doOnCompleted(() -> remove(id))
+      .doOnError(this::invalidateOnUnknownOutcome);
+  }
+
+  /**
+   * Loads the indexes from the delegate.
+   */
+  public Completable load() {
+    return loaded().toCompletable();
+  }
+
+  /**
+   * Loads the indexes again from the delegate, and installs them in place of the current ones, which keep serving the
+   * searches meanwhile. To be called periodically when the products may be changed without this store.
+   */
+  public Completable refresh() {
+    return reload().toCompletable();
+  }
+
+  /**
+   * Finds the products whose name contains the query, ignoring case, ranked by exact name, name prefix, word prefix
+   * and then anywhere, then by shorter name. Queries shorter than a trigram only match name and word prefixes. Without
+   * query, the products are ranked by decreasing stock. A missing stock counts as 0.
+   *
+   * @param query the text to find, all the products when empty
+   * @param minStock the minimum stock of the products
+   * @return {@code {"total": n, "offset": o, "limit": l, "products": [...]}}, at most {@code limit} products from the
+   * {@code offset} of the ranking
+   */
+  public Single<JsonObject> search(String query, long minStock, int offset, int limit) {
+    String q = query == null ? "" : query.trim().toLowerCase(Locale.ROOT);
+    synchronized (this) {
+      if (indexes != null) {
+        return Single.just(indexes.find(q, minStock, offset, limit));
+      }
+    }
+    return loaded().map(loaded -> {
+      // Synchronized, as the loaded indexes may be the installed ones.
+      synchronized (this) {
+        return loaded.find(q, minStock, offset, limit);
+      }
+    });
+  }
+
+  /**
+   * Drops the indexes, they are loaded again on the next search. To be called after the products were changed without
+   * this store.
+   */
+  public synchronized void invalidate() {
+    version++;
+    indexes = null;
+    // The load in progress may miss the changes, it is not installed.
+    loading = null;
+    pendingWrites = null;
+  }
+
+  /**
+   * @return the number of writes seen
+   */
+  public synchronized long version() {
+    return version;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (delegate instanceof Closeable) {
+      ((Closeable) delegate).close();
+    }
+  }
+
+  /**
+   * @return the installed indexes, or the indexes of the load in progress, starting one if needed
+   */
+  private synchronized Single<Indexes> loaded() {
+    if (indexes != null) {
+      return Single.just(indexes);
+    }
+    return reload();
+  }
+
+  /**
+   * @return the indexes of the load in progress, starting one if needed
+   */
+  private synchronized Single<Indexes> reload() {
+    if (loading == null) {
+      List<Consumer<Indexes>> writes = new ArrayList<>();
+      pendingWrites = writes;
+      loading = delegate.readAll().toList()
+        .map(all -> {
+          Indexes loaded = new Indexes();
+          for (JsonObject product : all) {
+            loaded.add(new Product(product.getLong("id"), product.getString("name"), product.getValue("stock")));
+          }
+          return install(loaded, writes);
+        })
+        .doOnError(err -> failed(writes))
+        .cache()
+        .toSingle();
+    }
+    return loading;
+  }
+
+  /**
+   * Replays the writes completed during the load, whose outcome the read products may or may not include, and installs
+   * the indexes unless invalidated meanwhile.
+   */
+  private synchronized Indexes install(Indexes loaded, List<Consumer<Indexes>> writes) {
+    writes.forEach(write -> write.accept(loaded));
+    writes.clear();
+    if (pendingWrites == writes) {
+      indexes = loaded;
+      loading = null;
+      pendingWrites = null;
+    }
+    return loaded;
+  }
+
+  /**
+   * Forgets the failed load, the next search starts another one.
+   */
+  private synchronized void failed(List<Consumer<Indexes>> writes) {
+    if (pendingWrites == writes) {
+      loading = null;
+      pendingWrites = null;
+    }
+  }
+
+  private synchronized void put(long id, JsonObject item) {
+    // A missing stock is stored as 0.
+    Product product = new Product(id, item.getString("name"), item.getValue("stock", 0));
+    write(loaded -> {
+      loaded.remove(id);
+      loaded.add(product);
+    });
+  }
+
+  private synchronized void putStock(long id, long stock) {
+    write(loaded -> {
+      Product product = loaded.remove(id);
+      if (product != null) {
+        loaded.add(new Product(id, product.name, stock));
+      }
+    });
+  }
+
+  private synchronized void remove(long id) {
+    write(loaded -> loaded.remove(id));
+  }
+
+  /**
+   * Applies the write to the installed indexes, and to the loaded ones once the load in progress completes.
+   */
+  private void write(Consumer<Indexes> write) {
+    version++;
+    if (indexes != null) {
+      write.accept(indexes);
+    }
+    if (pendingWrites != null) {
+      pendingWrites.add(write);
+    }
+  }
+
+  /**
+   * Drops the indexes after a failure which may or may not have changed the products.
+   */
+  private synchronized void invalidateOnUnknownOutcome(Throwable err) {
+    if (!(err instanceof NoSuchElementException) && !(err instanceof IllegalArgumentException)
+        && !(err instanceof IllegalStateException)) {
+      invalidate();
+    }
+  }
+
+  /**
+   * @return the rank of the product for the query, lower is better, -1 when not matching
+   */
+  private static int rank(Product product, String q) {
+    String name = product.lowerName;
+    if (name.equals(q)) {
+      return 0;
+    }
+    if (name.startsWith(q)) {
+      return 1;
+    }
+    for (int index = name.indexOf(q); index > 0; index = name.indexOf(q, index + 1)) {
+      if (!Character.isLetterOrDigit(name.charAt(index - 1))) {
+        return 2;
+      }
+    }
+    // Short queries match word prefixes only.
+    return q.length() < GRAM || !name.contains(q) ? -1 : 3;
+  }
+
+  private static Set<String> grams(String name) {
+    Set<String> grams = new HashSet<>();
+    for (int i = 0; i + GRAM <= name.length(); i++) {
+      grams.add(name.substring(i, i + GRAM));
+    }
+    return grams;
+  }
+
+  /**
+   * @return the suffixes of the name starting at a word, so that queries of a few characters can span words
+   */
+  private static Set<String> words(String name) {
+    Set<String> words = new HashSet<>();
+    for (int i = 0; i < name.length(); i++) {
+      if (Character.isLetterOrDigit(name.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(name.charAt(i - 1)))) {
+        words.add(name.substring(i));
+      }
+    }
+    return words;
+  }
+
+  private static <K> void removeFrom(Map<K, Set<Long>> index, K key, long id) {
+    Set<Long> ids = index.get(key);
+    if (ids != null && ids.remove(id) && ids.isEmpty()) {
+      index.remove(key);
+    }
+  }
+
+  /**
+   * The products and their indexes, guarded by the store.
+   */
+  private static final class Indexes {
+    private final Map<Long, Product> products = new HashMap<>();
+    private final Map<String, Set<Long>> grams = new HashMap<>();
+    private final NavigableMap<String, Set<Long>> words = new TreeMap<>();
+    private final NavigableMap<Long, Set<Long>> stocks = new TreeMap<>();
+
+    private void add(Product product) {
+      products.put(product.id, product);
+      for (String gram : grams(product.lowerName)) {
+        grams.computeIfAbsent(gram, key -> new HashSet<>()).add(product.id);
+      }
+      for (String word : words(product.lowerName)) {
+        words.computeIfAbsent(word, key -> new HashSet<>()).add(product.id);
+      }
+      stocks.computeIfAbsent(product.stock, key -> new HashSet<>()).add(product.id);
+    }
+
+    private Product remove(long id) {
+      Product product = products.remove(id);
+      if (product == null) {
+        return null;
+      }
+      for (String gram : grams(product.lowerName)) {
+        removeFrom(grams, gram, id);
+      }
+      for (String word : words(product.lowerName)) {
+        removeFrom(words, word, id);
+      }
+      removeFrom(stocks, product.stock, id);
+      return product;
+    }
+
+    private JsonObject find(String q, long minStock, int offset, int limit) {
+      List<Match> matches = new ArrayList<>();
+      int total;
+      if (q.isEmpty()) {
+        // Walks the stock index down, only the page is materialized.
+        total = 0;
+        for (Set<Long> ids : stocks.tailMap(minStock, true).descendingMap().values()) {
+          if (total + ids.size() <= offset || total >= offset + limit) {
+            total += ids.size();
+            continue;
+          }
+          List<Long> sorted = new ArrayList<>(ids);
+          Collections.sort(sorted);
+          for (Long id : sorted) {
+            if (total >= offset && total < offset + limit) {
+              matches.add(new Match(products.get(id), 0));
+            }
+            total++;
+          }
+        }
+      } else {
+        for (Long id : candidates(q)) {
+          Product product = products.get(id);
+          int rank = rank(product, q);
+          if (rank >= 0 && product.stock >= minStock) {
+            matches.add(new Match(product, rank));
+          }
+        }
+        total = matches.size();
+        matches.sort(RANKING);
+        matches = matches.subList(Math.min(offset, total), Math.min(offset + limit, total));
+      }
+
+      JsonArray page = new JsonArray();
+      for (Match match : matches) {
+        page.add(match.product.json());
+      }
+      return new JsonObject()
+        .put("total", total)
+        .put("offset", offset)
+        .put("limit", limit)
+        .put("products", page);
+    }
+
+    /**
+     * @return the ids of the products which may contain the query, a superset
+     */
+    private Set<Long> candidates(String q) {
+      if (q.length() < GRAM) {
+        Set<Long> candidates = new HashSet<>();
+        for (Set<Long> ids : words.subMap(q, true, q + Character.MAX_VALUE, false).values()) {
+          candidates.addAll(ids);
+        }
+        return candidates;
+      }
+      Set<Long> shortest = null;
+      for (int i = 0; i + GRAM <= q.length(); i++) {
+        Set<Long> ids = grams.get(q.substring(i, i + GRAM));
+        if (ids == null) {
+          return Collections.emptySet();
+        }
+        if (shortest == null || ids.size() < shortest.size()) {
+          shortest = ids;
+        }
+      }
+      return shortest;
+    }
+  }
+
+  private static final class Product {
+    private final long id;
+    private final String name;
+    private final String lowerName;
+    private final long stock;
+    private final boolean hasStock;
+
+    private Product(long id, String name, Object stock) {
+      this.id = id;
+      this.name = name == null ? "" : name;
+      this.lowerName = this.name.toLowerCase(Locale.ROOT);
+      this.hasStock = stock instanceof Number;
+      this.stock = hasStock ? ((Number) stock).longValue() : 0;
+    }
+
+    private JsonObject json() {
+      return new JsonObject().put("id", id).put("name", name).put("stock", hasStock ? stock : null);
+    }
+  }
+
+  private static final class Match {
+    private final Product product;
+    private final int rank;
+
+    private Match(Product product, int rank) {
+      this.product = product;
+      this.rank = rank;
+    }
+  }
+}
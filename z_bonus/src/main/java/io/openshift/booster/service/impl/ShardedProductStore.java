@@ -0,0 +1,557 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.vertx.core.json.JsonObject;
+import rx.Completable;
+import rx.Observable;
+import rx.Producer;
+import rx.Single;
+import rx.Subscriber;
+import rx.functions.Action0;
+import rx.functions.Func1;
+import rx.subjects.AsyncSubject;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A store spreading the products over several databases, the shards, by id.
+ * <p>
+ * The shards are placed on a consistent hash ring by name, at {@link #VIRTUAL_NODES} points each, and own the ids
+ * hashed up to their points. Adding a shard moves about 1/N of the products, evenly taken from the others. The ids come
+ * from a {@link SnowflakeIdGenerator}, so the shards share no sequence. {@link #readAll()} streams all the shards in
+ * parallel, in id order, and merges them holding a few rows per shard.
+ * <p>
+ * {@link #reshard(Map)} moves the products to a new ring online. The writes go to the owner of the product on the
+ * current ring, then are copied to its owner on the new ring, while all the products are copied in the background.
+ * Then the new ring takes over and the moved products are deleted from their former shards. The copies of a product
+ * are serialized within this application, so only one application should write during a resharding.
+ */
+public class ShardedProductStore implements Store {
+
+  static final int VIRTUAL_NODES = 128;
+
+  private static final int CONCURRENT_COPIES = 8;
+
+  private final SnowflakeIdGenerator ids;
+  private volatile Topology topology;
+
+  // The products being copied, with the copies waiting for them, guarded by itself.
+  private final Map<Long, List<Runnable>> copying = new HashMap<>();
+  // The products the writes failed to copy, copied again before the new ring takes over, guarded by itself.
+  private final List<Long> uncopied = new ArrayList<>();
+
+  /**
+   * @param shards the stores of the shards, by name, which places them on the ring
+   */
+  public ShardedProductStore(Map<String, JdbcProductStore> shards, SnowflakeIdGenerator ids) {
+    this.topology = new Topology(new Ring(shards), null, null);
+    this.ids = ids;
+  }
+
+  @Override
+  public Single<JsonObject> create(JsonObject item) {
+    long id = ids.next();
+    return write(id, shard -> shard.create(id, item));
+  }
+
+  @Override
+  public Observable<JsonObject> readAll() {
+    Ring ring = topology.ring;
+    List<Observable<JsonObject>> streams = new ArrayList<>();
+    ring.shards.forEach((name, shard) -> streams.add(shard.readAllById(false)
+      // The copies of a resharding in progress are not owned yet.
+      .filter(json -> ring.owner(json.getLong("id")).equals(name))));
+    return mergeById(streams);
+  }
+
+  @Override
+  public Single<JsonObject> read(long id) {
+    Ring ring = topology.ring;
+    return ring.shard(ring.owner(id)).read(id);
+  }
+
+  @Override
+  public Observable<JsonObject> readMany(List<Long> ids) {
+    Ring ring = topology.ring;
+    Map<String, List<Long>> byShard = new LinkedHashMap<>();
+    for (Long id : ids) {
+      byShard.computeIfAbsent(ring.owner(id), name -> new ArrayList<>()).add(id);
+    }
+    return Observable.from(byShard.entrySet())
+      .flatMap(entry -> ring.shard(entry.getKey()).readMany(entry.getValue()));
+  }
+
+  @Override
+  public Completable update(long id, JsonObject item) {
+    return write(id, shard -> shard.update(id, item).toSingleDefault(id)).toCompletable();
+  }
+
+  @Override
+  public Single<Long> adjustStock(long id, long delta) {
+    return write(id, shard -> shard.adjustStock(id, delta));
+  }
+
+  @Override
+  public Completable delete(long id) {
+    return write(id, shard -> shard.delete(id).toSingleDefault(id)).toCompletable();
+  }
+
+  /**
+   * Moves the products to the given shards, while serving the reads and writes. The shards kept should be given under
+   * the same names. Fails with {@link IllegalStateException} when a resharding is already in progress.
+   *
+   * @return completed once the products are served by the new shards and deleted from the former ones
+   */
+  public Completable reshard(Map<String, JdbcProductStore> shards) {
+    return Completable.defer(() -> {
+      Topology current = topology;
+      if (current.next != null) {
+        return Completable.error(new IllegalStateException("A resharding is in progress"));
+      }
+      Ring to = new Ring(shards);
+      Topology copyingTo = switchTo(current, current.ring, to);
+      return copyingTo.ready
+        .andThen(copyAll(current.ring, to))
+        .andThen(Completable.defer(() -> copyAgain(current.ring, to)))
+        .doOnError(err -> {
+          // The copies are left on the new shards, the next resharding copies over them.
+          switchTo(copyingTo, current.ring, null);
+          synchronized (uncopied) {
+            uncopied.clear();
+          }
+        })
+        .andThen(Completable.defer(() -> switchTo(copyingTo, to, null).ready))
+        .andThen(Completable.defer(() -> deleteMoved(current.ring, to)));
+    });
+  }
+
+  /**
+   * @return the names of the shards, in the order of the ring
+   */
+  public List<String> shards() {
+    return new ArrayList<>(topology.ring.shards.keySet());
+  }
+
+  /**
+   * Runs the write on the owner of the product, then copies the product to its owner on the new ring, if any. A
+   * failed copy is retried by the resharding.
+   */
+  private <T> Single<T> write(long id, Func1<JdbcProductStore, Single<T>> operation) {
+    return Single.defer(() -> {
+      Topology t = enter();
+      AtomicBoolean exited = new AtomicBoolean();
+      Action0 exit = () -> {
+        if (exited.compareAndSet(false, true)) {
+          t.exit();
+        }
+      };
+      Ring ring = t.ring;
+      return t.ready
+        .andThen(Single.defer(() -> operation.call(ring.shard(ring.owner(id)))))
+        .flatMap(result -> t.next == null ? Single.just(result) : copy(id, ring, t.next)
+          .onErrorComplete(err -> {
+            synchronized (uncopied) {
+              uncopied.add(id);
+            }
+            return true;
+          })
+          .toSingleDefault(result))
+        .doAfterTerminate(exit)
+        .doOnUnsubscribe(exit);
+    });
+  }
+
+  /**
+   * @return the current topology, with a write counted until {@link Topology#exit()}
+   */
+  private Topology enter() {
+    for (;;) {
+      Topology t = topology;
+      t.writes.incrementAndGet();
+      if (t == topology) {
+        return t;
+      }
+      t.exit();
+    }
+  }
+
+  private synchronized Topology switchTo(Topology expected, Ring ring, Ring next) {
+    if (topology != expected) {
+      throw new IllegalStateException("A resharding is in progress");
+    }
+    Topology switched = new Topology(ring, next, expected);
+    topology = switched;
+    expected.supersede();
+    return switched;
+  }
+
+  /**
+   * Copies the products whose owner changes, from the primaries of their shards.
+   */
+  private Completable copyAll(Ring from, Ring to) {
+    return Observable.from(from.shards.values())
+      .concatMap(shard -> shard.readAllById(true)
+        .map(json -> json.getLong("id"))
+        .filter(id -> !from.owner(id).equals(to.owner(id)))
+        .flatMap(id -> copy(id, from, to).toObservable(), CONCURRENT_COPIES))
+      .toCompletable();
+  }
+
+  private Completable copyAgain(Ring from, Ring to) {
+    List<Long> again;
+    synchronized (uncopied) {
+      again = new ArrayList<>(uncopied);
+      uncopied.clear();
+    }
+    return Observable.from(again)
+      .flatMap(id -> copy(id, from, to).toObservable(), CONCURRENT_COPIES)
+      .toCompletable();
+  }
+
+  /**
+   * Deletes the products from the shards which do not own them anymore.
+   */
+  private Completable deleteMoved(Ring from, Ring to) {
+    return Observable.from(from.shards.entrySet())
+      .concatMap(entry -> entry.getValue().readAllById(true)
+        .map(json -> json.getLong("id"))
+        .filter(id -> !to.owner(id).equals(entry.getKey()))
+        .flatMap(id -> deleteIfPresent(entry.getValue(), id).toObservable(), CONCURRENT_COPIES))
+      .toCompletable();
+  }
+
+  /**
+   * Copies the product as it is on its owner of the {@code from} ring to its owner of the {@code to} ring, or deletes
+   * it there when gone. The copies of a product run one after the other, so the last one copies the last write.
+   */
+  private Completable copy(long id, Ring from, Ring to) {
+    String source = from.owner(id);
+    String target = to.owner(id);
+    if (source.equals(target)) {
+      return Completable.complete();
+    }
+    JdbcProductStore targetShard = to.shard(target);
+    Completable copy = from.shard(source).primaryReads().read(id)
+      .map(json -> upsert(targetShard, id, json))
+      .onErrorResumeNext(err -> err instanceof NoSuchElementException
+        ? Single.just(deleteIfPresent(targetShard, id)) : Single.error(err))
+      .flatMapCompletable(write -> write);
+    return Completable.create(subscriber -> {
+      Runnable run = () -> copy.doAfterTerminate(() -> copied(id)).subscribe(subscriber);
+      synchronized (copying) {
+        List<Runnable> waiting = copying.get(id);
+        if (waiting != null) {
+          waiting.add(run);
+          return;
+        }
+        copying.put(id, new ArrayList<>());
+      }
+      run.run();
+    });
+  }
+
+  private void copied(long id) {
+    Runnable next;
+    synchronized (copying) {
+      List<Runnable> waiting = copying.get(id);
+      if (waiting.isEmpty()) {
+        copying.remove(id);
+        return;
+      }
+      next = waiting.remove(0);
+    }
+    next.run();
+  }
+
+  private static Completable upsert(JdbcProductStore shard, long id, JsonObject json) {
+    return shard.update(id, json)
+      .onErrorResumeNext(err -> {
+        if (err instanceof NoSuchElementException) {
+          JsonObject item = json.copy();
+          item.remove("id");
+          return shard.create(id, item).toCompletable();
+        }
+        return Completable.error(err);
+      });
+  }
+
+  private static Completable deleteIfPresent(JdbcProductStore shard, long id) {
+    return shard.delete(id).onErrorComplete(err -> err instanceof NoSuchElementException);
+  }
+
+  /**
+   * Merges streams sorted by id into one stream sorted by id, requesting one more product from a stream as one of its
+   * products is emitted, so only a few products of each stream are held. Products are only emitted as the subscriber
+   * requests them.
+   */
+  static Observable<JsonObject> mergeById(List<Observable<JsonObject>> sources) {
+    return Observable.unsafeCreate(subscriber -> new SortedMerge(sources, subscriber).start());
+  }
+
+  /**
+   * The 64 bits FNV-1a hash of the text, mixed.
+   */
+  static long hash(String text) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : text.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b & 0xff;
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  /**
+   * The finalizer of SplitMix64, spreading close ids over the ring.
+   */
+  static long mix(long x) {
+    x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+    x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+    return x ^ (x >>> 31);
+  }
+
+  /**
+   * The shards, and the ids they own.
+   */
+  static final class Ring {
+    private final Map<String, JdbcProductStore> shards;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    Ring(Map<String, JdbcProductStore> shards) {
+      if (shards.isEmpty()) {
+        throw new IllegalArgumentException("At least one shard is needed");
+      }
+      this.shards = new LinkedHashMap<>(shards);
+      for (String name : shards.keySet()) {
+        for (int i = 0; i < VIRTUAL_NODES; i++) {
+          points.put(hash(name + "#" + i), name);
+        }
+      }
+    }
+
+    /**
+     * @return the name of the shard owning the id
+     */
+    String owner(long id) {
+      Map.Entry<Long, String> point = points.ceilingEntry(mix(id));
+      return (point != null ? point : points.firstEntry()).getValue();
+    }
+
+    JdbcProductStore shard(String name) {
+      return shards.get(name);
+    }
+  }
+
+  /**
+   * The ring serving the products, and the ring they are copied to during a resharding. A topology counts its writes
+   * in progress, so that the next one only starts once they are done.
+   */
+  private static final class Topology {
+    private final Ring ring;
+    private final Ring next;
+    // Completed once the writes of the previous topology are done.
+    private final Completable ready;
+    private final AtomicInteger writes = new AtomicInteger();
+    private final AsyncSubject<Void> drained = AsyncSubject.create();
+    private final AtomicBoolean completed = new AtomicBoolean();
+    private volatile boolean superseded;
+
+    private Topology(Ring ring, Ring next, Topology previous) {
+      this.ring = ring;
+      this.next = next;
+      this.ready = previous == null ? Completable.complete() : previous.drained.toCompletable();
+    }
+
+    private void exit() {
+      if (writes.decrementAndGet() == 0 && superseded) {
+        complete();
+      }
+    }
+
+    private void supersede() {
+      superseded = true;
+      if (writes.get() == 0) {
+        complete();
+      }
+    }
+
+    private void complete() {
+      if (completed.compareAndSet(false, true)) {
+        drained.onCompleted();
+      }
+    }
+  }
+
+  private static final class SortedMerge implements Producer {
+    private final List<Observable<JsonObject>> sources;
+    private final Subscriber<? super JsonObject> child;
+    private final List<Source> inners = new ArrayList<>();
+
+    // Guarded by this.
+    private final List<Queue<JsonObject>> heads = new ArrayList<>();
+    private final boolean[] done;
+    private Throwable failure;
+    private long requested;
+    private boolean terminated;
+    private boolean draining;
+    private boolean missed;
+
+    private SortedMerge(List<Observable<JsonObject>> sources, Subscriber<? super JsonObject> child) {
+      this.sources = sources;
+      this.child = child;
+      this.done = new boolean[sources.size()];
+    }
+
+    private void start() {
+      for (int i = 0; i < sources.size(); i++) {
+        Source source = new Source(i);
+        inners.add(source);
+        heads.add(new ArrayDeque<>());
+        child.add(source);
+      }
+      for (int i = 0; i < sources.size(); i++) {
+        sources.get(i).subscribe(inners.get(i));
+      }
+      child.setProducer(this);
+      drain();
+    }
+
+    @Override
+    public void request(long n) {
+      if (n < 0) {
+        throw new IllegalArgumentException("n >= 0 required but it was " + n);
+      }
+      if (n == 0) {
+        return;
+      }
+      synchronized (this) {
+        requested = requested + n < 0 ? Long.MAX_VALUE : requested + n;
+      }
+      drain();
+    }
+
+    /**
+     * Emits the lowest product once every stream has one or is done, and the subscriber requested it. Only one thread
+     * drains at a time, the others leave their products and requests to it.
+     */
+    private void drain() {
+      synchronized (this) {
+        if (draining) {
+          missed = true;
+          return;
+        }
+        draining = true;
+      }
+      for (;;) {
+        JsonObject next = null;
+        int from = -1;
+        boolean complete = false;
+        Throwable error = null;
+        synchronized (this) {
+          missed = false;
+          if (terminated || child.isUnsubscribed()) {
+            return;
+          }
+          if (failure != null) {
+            error = failure;
+            terminated = true;
+          } else {
+            boolean ready = true;
+            for (int i = 0; i < heads.size() && ready; i++) {
+              ready = !heads.get(i).isEmpty() || done[i];
+            }
+            if (ready) {
+              for (int i = 0; i < heads.size(); i++) {
+                JsonObject head = heads.get(i).peek();
+                if (head != null && (from < 0 || head.getLong("id") < heads.get(from).peek().getLong("id"))) {
+                  from = i;
+                }
+              }
+              if (from < 0) {
+                complete = true;
+                terminated = true;
+              } else if (requested > 0) {
+                next = heads.get(from).poll();
+                if (requested != Long.MAX_VALUE) {
+                  requested--;
+                }
+              }
+            }
+          }
+          if (next == null && !complete && error == null) {
+            if (!missed) {
+              draining = false;
+              return;
+            }
+            continue;
+          }
+        }
+        if (error != null) {
+          inners.forEach(Subscriber::unsubscribe);
+          child.onError(error);
+          return;
+        }
+        if (complete) {
+          child.onCompleted();
+          return;
+        }
+        child.onNext(next);
+        inners.get(from).more();
+      }
+    }
+
+    private final class Source extends Subscriber<JsonObject> {
+      private final int index;
+
+      private Source(int index) {
+        this.index = index;
+      }
+
+      @Override
+      public void onStart() {
+        request(1);
+      }
+
+      @Override
+      public void onNext(JsonObject json) {
+        synchronized (SortedMerge.this) {
+          heads.get(index).add(json);
+        }
+        drain();
+      }
+
+      @Override
+      public void onCompleted() {
+        synchronized (SortedMerge.this) {
+          done[index] = true;
+        }
+        drain();
+      }
+
+      @Override
+      public void onError(Throwable e) {
+        synchronized (SortedMerge.this) {
+          if (failure == null) {
+            failure = e;
+          }
+        }
+        drain();
+      }
+
+      private void more() {
+        request(1);
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.shareddata.LocalMap;
+import io.vertx.core.shareddata.Shareable;
+
+import java.util.function.LongSupplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Generates ids unique across the applications without a central sequence, as Twitter's Snowflake: 41 bits of ms
+ * since {@link #EPOCH}, 10 bits of worker and 12 bits of sequence within the ms. The ids of a worker increase, and the
+ * ids of all the workers roughly follow their creation time.
+ * <p>
+ * The generator never waits: after 4096 ids in a ms, or when the clock goes back, it keeps counting from the last ms
+ * used, ahead of the clock until the clock catches up. Each application needs its own worker id, and the verticle
+ * instances of an application share its generator through a local map, see {@link #create(Vertx, int)}.
+ */
+public class SnowflakeIdGenerator implements Shareable {
+
+  /**
+   * 2020-01-01T00:00:00Z, the ids last 69 years from there.
+   */
+  public static final long EPOCH = 1577836800000L;
+
+  static final int WORKER_BITS = 10;
+  static final int SEQUENCE_BITS = 12;
+
+  public static final int MAX_WORKER = (1 << WORKER_BITS) - 1;
+
+  private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+
+  // The pods of a stateful set are named after it and their ordinal, those of a deployment end with 5 random characters.
+  private static final Pattern POD_ORDINAL = Pattern.compile(".+-(0|[1-9][0-9]{0,3})");
+
+  private final long worker;
+  private final LongSupplier clock;
+
+  // Guarded by this.
+  private long lastTime = -1;
+  private long sequence;
+
+  public SnowflakeIdGenerator(int worker) {
+    this(worker, System::currentTimeMillis);
+  }
+
+  SnowflakeIdGenerator(int worker, LongSupplier clock) {
+    if (worker < 0 || worker > MAX_WORKER) {
+      throw new IllegalArgumentException("The worker id must be between 0 and " + MAX_WORKER + ": " + worker);
+    }
+    this.worker = worker;
+    this.clock = clock;
+  }
+
+  /**
+   * @return the generator of the worker, created once per Vert.x instance, as generators of the same worker running
+   * side by side would generate the same ids
+   */
+  public static SnowflakeIdGenerator create(Vertx vertx, int worker) {
+    LocalMap<String, SnowflakeIdGenerator> generators =
+      vertx.sharedData().getLocalMap(SnowflakeIdGenerator.class.getName());
+    SnowflakeIdGenerator created = new SnowflakeIdGenerator(worker);
+    SnowflakeIdGenerator existing = generators.putIfAbsent(String.valueOf(worker), created);
+    return existing != null ? existing : created;
+  }
+
+  /**
+   * @return the ordinal of the stateful set pod of the host name, e.g. 2 for {@code crud-vertx-2}, unique among the
+   * pods of the set, or -1 for another host name
+   */
+  public static int podOrdinal(String hostName) {
+    Matcher matcher = POD_ORDINAL.matcher(hostName);
+    return matcher.matches() ? Integer.parseInt(matcher.group(1)) : -1;
+  }
+
+  public synchronized long next() {
+    long now = clock.getAsLong() - EPOCH;
+    if (now > lastTime) {
+      lastTime = now;
+      sequence = 0;
+    } else if (sequence < MAX_SEQUENCE) {
+      sequence++;
+    } else {
+      lastTime++;
+      sequence = 0;
+    }
+    return lastTime << (WORKER_BITS + SEQUENCE_BITS) | worker << SEQUENCE_BITS | sequence;
+  }
+
+  /**
+   * @return the worker which generated the id
+   */
+  public static int worker(long id) {
+    return (int) (id >>> SEQUENCE_BITS & MAX_WORKER);
+  }
+}
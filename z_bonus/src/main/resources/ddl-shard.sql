@@ -0,0 +1,6 @@
+-- Create the products table of a shard if not present, the ids are generated by the application
+CREATE TABLE IF NOT EXISTS products (
+  id        BIGINT PRIMARY KEY,
+  name      VARCHAR(40) NOT NULL,
+  stock     BIGINT
+)
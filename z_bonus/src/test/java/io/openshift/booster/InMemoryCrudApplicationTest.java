@@ -0,0 +1,54 @@
+package io.openshift.booster;
+
+import com.jayway.restassured.RestAssured;
+import io.vertx.core.DeploymentOptions;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.restassured.RestAssured.get;
+import static org.hamcrest.core.Is.is;
+
+/**
+ * Runs the {@link OpenShiftIT} CRUD checks against a local application using the in-memory store, no database
+ * needed.
+ */
+public class InMemoryCrudApplicationTest extends OpenShiftIT {
+
+  private static Vertx vertx;
+
+  // Shadows the OpenShift deployment.
+  @BeforeClass
+  public static void prepare() throws Exception {
+    vertx = Vertx.vertx();
+    CompletableFuture<String> deployed = new CompletableFuture<>();
+    vertx.deployVerticle(CrudApplication.class.getName(),
+      new DeploymentOptions().setConfig(new JsonObject().put("store.type", "in-memory")),
+      ar -> {
+        if (ar.succeeded()) {
+          deployed.complete(ar.result());
+        } else {
+          deployed.completeExceptionally(ar.cause());
+        }
+      });
+    deployed.get(30, TimeUnit.SECONDS);
+
+    RestAssured.baseURI = "http://localhost:8080";
+    await().atMost(30, TimeUnit.SECONDS).until(() -> get("/api/health/readiness").statusCode() == 200);
+    RestAssured.baseURI = "http://localhost:8080/api/products";
+  }
+
+  @AfterClass
+  public static void cleanup() {
+    RestAssured.reset();
+    AtomicBoolean closed = new AtomicBoolean();
+    vertx.close(ar -> closed.set(true));
+    await().untilAtomic(closed, is(true));
+  }
+}
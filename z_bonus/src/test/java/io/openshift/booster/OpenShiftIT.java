@@ -1,5 +1,7 @@
 package io.openshift.booster;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.response.Response;
 import io.openshift.booster.test.OpenShiftTestAssistant;
@@ -11,6 +13,8 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static com.jayway.awaitility.Awaitility.await;
@@ -24,10 +28,12 @@ import static org.hamcrest.core.Is.is;
  */
 public class OpenShiftIT {
 
-  private static OpenShiftTestAssistant assistant = new OpenShiftTestAssistant();
+  private static OpenShiftTestAssistant assistant;
 
   @BeforeClass
   public static void prepare() throws Exception {
+    // Created here, so subclasses shadowing the deployment run off cluster.
+    assistant = new OpenShiftTestAssistant();
     assistant.deployApplication();
 
     // Deploy the database and wait until it's ready.
@@ -101,6 +107,23 @@ public class OpenShiftIT {
 
   }
 
+  @Test
+  public void testRetrievingSeveralFruits() {
+    long first = given().body(new JsonObject().put("name", "iphone").put("stock", 5).encode()).post()
+      .then().assertThat().statusCode(201).extract().jsonPath().getLong("id");
+    long second = given().body(new JsonObject().put("name", "android").put("stock", 3).encode()).post()
+      .then().assertThat().statusCode(201).extract().jsonPath().getLong("id");
+
+    String payload = given().queryParam("ids", second + "," + (second + 100) + "," + first).get()
+      .then().assertThat().statusCode(200).extract().asString();
+    JsonArray json = new JsonArray(payload);
+    assertThat(json).hasSize(2);
+    assertThat(json.getJsonObject(0).getString("name")).isEqualTo("android");
+    assertThat(json.getJsonObject(1).getString("name")).isEqualTo("iphone");
+
+    given().queryParam("ids", "1,a").get().then().assertThat().statusCode(400);
+  }
+
   @Test
   public void testCreatingAFruit() {
     Response response = given()
@@ -287,6 +310,89 @@ public class OpenShiftIT {
     assertThat(result.getString("path")).isEqualTo("/api/products/" + id);
   }
 
+  @Test
+  public void testAdjustingTheStock() {
+    long id = given()
+      .body(new JsonObject().put("name", "iphone").put("stock", 5).encode())
+      .post()
+      .then().assertThat().statusCode(201).extract().jsonPath().getLong("id");
+
+    Response response = given()
+      .body(new JsonObject().put("delta", -3).encode())
+      .patch("/" + id + "/stock")
+      .then().assertThat().statusCode(200).extract().response();
+    assertThat(new JsonObject(response.asString()).getLong("stock")).isEqualTo(2);
+
+    given()
+      .body(new JsonObject().put("delta", -3).encode())
+      .patch("/" + id + "/stock")
+      .then().assertThat().statusCode(409);
+    given()
+      .body(new JsonObject().put("delta", "many").encode())
+      .patch("/" + id + "/stock")
+      .then().assertThat().statusCode(422);
+    given()
+      .body(new JsonObject().put("delta", 1).encode())
+      .patch("/99999/stock")
+      .then().assertThat().statusCode(404);
+
+    String payload = get("/" + id).then().assertThat().statusCode(200).extract().asString();
+    assertThat(new JsonObject(payload).getInteger("stock")).isEqualTo(2);
+  }
+
+  @Test
+  public void testSearchingProducts() {
+    for (String name : new String[]{"iphone", "android phone", "phone case"}) {
+      given().body(new JsonObject().put("name", name).put("stock", name.length()).encode()).post()
+        .then().assertThat().statusCode(201);
+    }
+
+    JsonObject result = new JsonObject(given().queryParam("q", "Phone").queryParam("minStock", 10)
+      .get("/_search").then().assertThat().statusCode(200).extract().asString());
+    assertThat(result.getInteger("total")).isEqualTo(2);
+    assertThat(result.getJsonArray("products").getJsonObject(0).getString("name")).isEqualTo("phone case");
+    assertThat(result.getJsonArray("products").getJsonObject(1).getString("name")).isEqualTo("android phone");
+
+    result = new JsonObject(given().queryParam("q", "phone").queryParam("limit", 1).queryParam("offset", 2)
+      .get("/_search").then().assertThat().statusCode(200).extract().asString());
+    assertThat(result.getInteger("total")).isEqualTo(3);
+    assertThat(result.getJsonArray("products").getJsonObject(0).getString("name")).isEqualTo("iphone");
+
+    given().queryParam("minStock", "many").get("/_search").then().assertThat().statusCode(400);
+    given().queryParam("limit", 1000).get("/_search").then().assertThat().statusCode(400);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testNegotiatingCbor() throws Exception {
+    ObjectMapper cbor = new ObjectMapper(new CBORFactory());
+    Response response = given()
+      .contentType("application/cbor")
+      .accept("application/cbor")
+      .body(cbor.writeValueAsBytes(new JsonObject().put("name", "iphone").put("stock", 5).getMap()))
+      .post()
+      .then().assertThat().statusCode(201).header("Content-Type", "application/cbor").extract().response();
+    Map<String, Object> created = cbor.readValue(response.asByteArray(), Map.class);
+    assertThat(created).contains(entry("name", "iphone"), entry("stock", 5));
+
+    response = given()
+      .accept("application/json;q=0.5, application/cbor")
+      .get()
+      .then().assertThat().statusCode(200).header("Content-Type", "application/cbor").extract().response();
+    List<?> products = cbor.readValue(response.asByteArray(), List.class);
+    assertThat(products).containsExactly(created);
+
+    given()
+      .contentType("application/cbor")
+      .body(new JsonObject().put("name", "android").encode().getBytes("UTF-8"))
+      .put("/" + created.get("id"))
+      .then().assertThat().statusCode(415);
+
+    String payload = get("/" + created.get("id"))
+      .then().assertThat().statusCode(200).header("Content-Type", "application/json").extract().asString();
+    assertThat(new JsonObject(payload).getMap()).contains(entry("name", "iphone"), entry("stock", 5));
+  }
+
   @Test
   public void testDeletingAFruit() {
     Response response = given()
@@ -0,0 +1,131 @@
+package io.openshift.booster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the bytes and the CPU time of a request with the JSON and CBOR encodings: the encoding of the products by
+ * the application and their decoding by the consumer, for a product and for a list of {@code bench.products} products.
+ * Compact JSON, as a consumer encodes its requests, is a reference for the cost of the pretty-printing.
+ * <p>
+ * Run with {@code mvn verify -Pbenchmark}, tuned with the {@code bench.duration} (seconds per case) system property.
+ */
+public class ProductEncodingBenchmarkIT {
+
+  private static final int DURATION = Integer.getInteger("bench.duration", 10);
+  private static final int PRODUCTS = Integer.getInteger("bench.products", 100);
+  private static final long WARM_UP = TimeUnit.SECONDS.toNanos(3);
+
+  private static final ObjectMapper CBOR_MAPPER = new ObjectMapper(new CBORFactory());
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+  @Test
+  public void compareEncodings() throws Exception {
+    List<JsonObject> products = new ArrayList<>();
+    for (int i = 0; i < PRODUCTS; i++) {
+      products.add(new JsonObject().put("id", 1000 + i).put("name", "product-" + i).put("stock", i * 7));
+    }
+    JsonObject product = products.get(0);
+
+    List<Result> results = new ArrayList<>();
+    results.add(run("json", "product", () -> ProductEncoding.JSON.encode(product), JsonObject::new));
+    results.add(run("json-compact", "product", () -> Buffer.buffer(product.encode()), JsonObject::new));
+    results.add(run("cbor", "product", () -> ProductEncoding.CBOR.encode(product), ProductEncoding.CBOR::decode));
+    results.add(run("json", "list", () -> ProductEncoding.JSON.encode(products), JsonArray::new));
+    results.add(run("json-compact", "list", () -> Buffer.buffer(new JsonArray(products).encode()), JsonArray::new));
+    results.add(run("cbor", "list", () -> ProductEncoding.CBOR.encode(products),
+      buffer -> readCbor(buffer, List.class)));
+
+    System.out.printf("%nProduct encoding benchmark: %ds per case, %d products per list%n%n", DURATION, PRODUCTS);
+    System.out.printf("%-13s %-8s %8s %14s %14s %14s%n", "encoding", "payload", "bytes", "encode(ns)", "decode(ns)",
+      "request(ns)");
+    results.forEach(Result::print);
+
+    Result json = results.get(3);
+    Result cbor = results.get(5);
+    assertThat(cbor.bytes).isLessThan(json.bytes);
+  }
+
+  private static Result run(String encoding, String payload, Encoder encoder, Function<Buffer, ?> decoder) {
+    Result result = new Result(encoding, payload);
+    Buffer encoded = encoder.encode();
+    result.bytes = encoded.length();
+    // Checks the decoding before measuring it.
+    assertThat(decoder.apply(encoded)).isNotNull();
+    result.encode = cpuTime(() -> encoder.encode());
+    result.decode = cpuTime(() -> decoder.apply(encoded));
+    return result;
+  }
+
+  /**
+   * @return the CPU time of an operation, in ns, once warmed up
+   */
+  private static double cpuTime(Operation operation) {
+    long warmUp = System.nanoTime() + WARM_UP;
+    Object sink = null;
+    while (System.nanoTime() < warmUp) {
+      sink = operation.run();
+    }
+    long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(DURATION);
+    long count = 0;
+    long start = THREADS.getCurrentThreadCpuTime();
+    while (System.nanoTime() < end) {
+      for (int i = 0; i < 1000; i++) {
+        sink = operation.run();
+      }
+      count += 1000;
+    }
+    double time = (double) (THREADS.getCurrentThreadCpuTime() - start) / count;
+    assertThat(sink).isNotNull();
+    return time;
+  }
+
+  private static Object readCbor(Buffer buffer, Class<?> type) {
+    try {
+      return CBOR_MAPPER.readValue(buffer.getBytes(), type);
+    } catch (Exception e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @FunctionalInterface
+  private interface Encoder {
+    Buffer encode();
+  }
+
+  @FunctionalInterface
+  private interface Operation {
+    Object run();
+  }
+
+  private static class Result {
+    private final String encoding;
+    private final String payload;
+    private int bytes;
+    private double encode;
+    private double decode;
+
+    private Result(String encoding, String payload) {
+      this.encoding = encoding;
+      this.payload = payload;
+    }
+
+    private void print() {
+      System.out.printf("%-13s %-8s %8d %14.0f %14.0f %14.0f%n", encoding, payload, bytes, encode, decode,
+        encode + decode);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package io.openshift.booster;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the negotiation of the encodings, and that CBOR carries the products unchanged.
+ */
+public class ProductEncodingTest {
+
+  @Test
+  public void testNegotiatesTheAcceptedEncoding() {
+    assertThat(ProductEncoding.accepted(null)).isEqualTo(ProductEncoding.JSON);
+    assertThat(ProductEncoding.accepted("*/*")).isEqualTo(ProductEncoding.JSON);
+    assertThat(ProductEncoding.accepted("text/html")).isEqualTo(ProductEncoding.JSON);
+    assertThat(ProductEncoding.accepted("application/cbor")).isEqualTo(ProductEncoding.CBOR);
+    assertThat(ProductEncoding.accepted("application/json, application/cbor")).isEqualTo(ProductEncoding.JSON);
+    assertThat(ProductEncoding.accepted("application/json;q=0.9, Application/CBOR")).isEqualTo(ProductEncoding.CBOR);
+    assertThat(ProductEncoding.accepted("application/cbor;q=0, */*")).isEqualTo(ProductEncoding.JSON);
+
+    assertThat(ProductEncoding.of(null)).isEqualTo(ProductEncoding.JSON);
+    assertThat(ProductEncoding.of("application/json; charset=UTF-8")).isEqualTo(ProductEncoding.JSON);
+    assertThat(ProductEncoding.of("application/cbor; charset=ISO-8859-1")).isEqualTo(ProductEncoding.CBOR);
+  }
+
+  @Test
+  public void testRoundTripsProducts() {
+    JsonObject product = new JsonObject().put("id", 3_000_000_000L).put("name", "iPhone é").put("stock", 10)
+      .putNull("description").put("tags", new JsonArray().add("phone").add(1.5).add(true));
+
+    JsonObject decoded = ProductEncoding.CBOR.decode(ProductEncoding.CBOR.encode(product));
+
+    assertThat(decoded).isEqualTo(product);
+    assertThat(ProductEncoding.CBOR.encode(product).length())
+      .isLessThan(ProductEncoding.JSON.encode(product).length());
+  }
+
+  @Test
+  public void testEncodesLists() {
+    List<JsonObject> products = Arrays.asList(
+      new JsonObject().put("id", 1).put("name", "iPhone").put("stock", 10),
+      new JsonObject().put("id", 2).put("name", "Android").putNull("stock"));
+
+    Buffer cbor = ProductEncoding.CBOR.encode(products);
+
+    // A definite length array of 2 maps of 3 pairs.
+    assertThat(cbor.getByte(0)).isEqualTo((byte) 0x82);
+    assertThat(cbor.getByte(1)).isEqualTo((byte) 0xA3);
+    assertThat(new JsonArray(ProductEncoding.JSON.encode(products))).containsExactlyElementsOf(products);
+  }
+
+  @Test
+  public void testRejectsInvalidPayloads() {
+    assertThat(ProductEncoding.CBOR.decode(Buffer.buffer())).isNull();
+    assertThatThrownBy(() -> ProductEncoding.CBOR.decode(Buffer.buffer("{\"name\":\"iPhone\"}")))
+      .isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> ProductEncoding.CBOR.decode(Buffer.buffer(new byte[]{(byte) 0x82, 1, 2})))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+}
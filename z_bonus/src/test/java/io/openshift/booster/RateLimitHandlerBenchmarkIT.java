@@ -0,0 +1,83 @@
+package io.openshift.booster;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Measures the time a request spends in the rate limiter, for {@code bench.clients} clients, all allowed, from one
+ * thread and from as many threads as cores, as verticle instances would.
+ * <p>
+ * Run with {@code mvn verify -Pbenchmark}, tuned with the {@code bench.duration} (seconds per case) system property.
+ */
+public class RateLimitHandlerBenchmarkIT {
+
+  private static final int DURATION = Integer.getInteger("bench.duration", 10);
+  private static final int CLIENTS = Integer.getInteger("bench.clients", 10000);
+
+  @Test
+  public void measureAcquire() throws Exception {
+    Vertx vertx = Vertx.vertx();
+    try {
+      RateLimitHandler limiter = RateLimitHandler.create(vertx, new JsonObject().put("rate", 1e9).put("burst", 1000));
+      String[] clients = new String[CLIENTS];
+      for (int i = 0; i < CLIENTS; i++) {
+        clients[i] = "10.0." + (i >> 8) + "." + (i & 0xff);
+      }
+      // Warm-up.
+      run(limiter, clients, 1, 3);
+
+      double single = run(limiter, clients, 1, DURATION);
+      int cores = Runtime.getRuntime().availableProcessors();
+      double parallel = run(limiter, clients, cores, DURATION);
+
+      System.out.printf("%nRate limiter benchmark: %ds per case, %d clients%n%n", DURATION, CLIENTS);
+      System.out.printf("%-10s %10s%n", "threads", "acquire(ns)");
+      System.out.printf("%-10d %10.0f%n", 1, single);
+      System.out.printf("%-10d %10.0f%n", cores, parallel);
+      assertThat(single).isLessThan(1000);
+    } finally {
+      vertx.close();
+    }
+  }
+
+  /**
+   * @return the mean time of an acquire per thread, in ns
+   */
+  private static double run(RateLimitHandler limiter, String[] clients, int threads, int seconds) throws Exception {
+    long[] counts = new long[threads];
+    long[] times = new long[threads];
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++) {
+      int index = t;
+      workers[t] = new Thread(() -> {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long start = System.nanoTime();
+        long count = 0;
+        int client = index;
+        while (System.nanoTime() < end) {
+          for (int i = 0; i < 1000; i++) {
+            if (limiter.acquire(clients[client], System.nanoTime()) != 0) {
+              throw new IllegalStateException("Limited");
+            }
+            client = client + 1 == clients.length ? 0 : client + 1;
+          }
+          count += 1000;
+        }
+        times[index] = System.nanoTime() - start;
+        counts[index] = count;
+      });
+      workers[t].start();
+    }
+    double total = 0;
+    for (int t = 0; t < threads; t++) {
+      workers[t].join();
+      total += (double) times[t] / counts[t];
+    }
+    return total / threads;
+  }
+}
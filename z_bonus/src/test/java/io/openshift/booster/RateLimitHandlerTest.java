@@ -0,0 +1,135 @@
+package io.openshift.booster;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.web.Router;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class RateLimitHandlerTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private Vertx vertx;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testAllowsTheBurstThenTheRate() {
+    RateLimitHandler limiter = limiter(new JsonObject().put("rate", 10).put("burst", 3));
+
+    for (int i = 0; i < 3; i++) {
+      assertThat(limiter.acquire("a", 0)).isZero();
+    }
+    assertThat(limiter.acquire("a", 0)).isEqualTo(SECOND / 10);
+    // Another client has its own bucket.
+    assertThat(limiter.acquire("b", 0)).isZero();
+    // One token every 100 ms.
+    assertThat(limiter.acquire("a", SECOND / 10)).isZero();
+    assertThat(limiter.acquire("a", SECOND / 10)).isEqualTo(SECOND / 10);
+    // Refilled up to the burst only.
+    for (int i = 0; i < 3; i++) {
+      assertThat(limiter.acquire("a", 10 * SECOND)).isZero();
+    }
+    assertThat(limiter.acquire("a", 10 * SECOND)).isPositive();
+  }
+
+  @Test
+  public void testEvictsTheFullBuckets() {
+    RateLimitHandler limiter = limiter(new JsonObject().put("rate", 1).put("burst", 2));
+    limiter.acquire("a", 0);
+    limiter.acquire("b", 0);
+    limiter.acquire("b", 0);
+
+    // a is full again after 1s, b after 2s.
+    limiter.sweep(SECOND);
+    assertThat(limiter.clients()).isEqualTo(1);
+    assertThat(limiter.acquire("b", SECOND)).isZero();
+    assertThat(limiter.acquire("b", SECOND)).isPositive();
+
+    limiter.sweep(10 * SECOND);
+    assertThat(limiter.clients()).isZero();
+  }
+
+  @Test
+  public void testSharesOneBucketBeyondTheMaximumClients() {
+    RateLimitHandler limiter = limiter(new JsonObject().put("rate", 1).put("burst", 1).put("maxClients", 2));
+
+    assertThat(limiter.acquire("a", 0)).isZero();
+    assertThat(limiter.acquire("b", 0)).isZero();
+    assertThat(limiter.acquire("c", 0)).isZero();
+    assertThat(limiter.acquire("d", 0)).isPositive();
+    assertThat(limiter.acquire("a", 0)).isPositive();
+  }
+
+  @Test
+  public void testSharesTheHandlersByName() {
+    JsonObject options = new JsonObject().put("rate", 5);
+
+    assertThat(RateLimitHandler.create(vertx, options)).isSameAs(RateLimitHandler.create(vertx, options));
+    assertThat(RateLimitHandler.create(vertx, options.copy().put("name", "other")))
+      .isNotSameAs(RateLimitHandler.create(vertx, options));
+    assertThatThrownBy(() -> limiter(new JsonObject().put("key", "cookie")))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testIgnoresTheForwardedAddressesSentByTheClient() throws Exception {
+    Router router = Router.router(vertx);
+    router.route().handler(RateLimitHandler.create(vertx, new JsonObject()
+      .put("rate", 0.1)
+      .put("burst", 1)
+      .put("trustForwarded", true)));
+    router.route().handler(rc -> rc.response().end());
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer().requestHandler(router::accept).listen(0, ar -> listening.complete(ar.result()));
+    int port = listening.get(10, TimeUnit.SECONDS).actualPort();
+    HttpClient client = vertx.createHttpClient();
+
+    // The proxy appends the address of the client to the header it received.
+    assertThat(status(client, port, "6.6.6.1, 10.0.0.1")).isEqualTo(200);
+    assertThat(status(client, port, "6.6.6.2, 10.0.0.1")).isEqualTo(429);
+    assertThat(status(client, port, "10.0.0.1")).isEqualTo(429);
+    assertThat(status(client, port, "10.0.0.2")).isEqualTo(200);
+  }
+
+  @Test
+  public void testCountsTheTrustedProxiesFromTheRight() {
+    assertThat(RateLimitHandler.forwardedFor("10.0.0.1", 1)).isEqualTo("10.0.0.1");
+    assertThat(RateLimitHandler.forwardedFor("6.6.6.6,10.0.0.1, 10.0.0.2", 1)).isEqualTo("10.0.0.2");
+    assertThat(RateLimitHandler.forwardedFor("6.6.6.6,10.0.0.1, 10.0.0.2", 2)).isEqualTo("10.0.0.1");
+    assertThat(RateLimitHandler.forwardedFor("10.0.0.1, 10.0.0.2", 3)).isEqualTo("10.0.0.1");
+    assertThatThrownBy(() -> limiter(new JsonObject().put("trustedProxies", 0)))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  private static int status(HttpClient client, int port, String forwarded) throws Exception {
+    CompletableFuture<Integer> status = new CompletableFuture<>();
+    client.get(port, "localhost", "/", resp -> status.complete(resp.statusCode()))
+      .putHeader("X-Forwarded-For", forwarded)
+      .exceptionHandler(status::completeExceptionally)
+      .end();
+    return status.get(10, TimeUnit.SECONDS);
+  }
+
+  private RateLimitHandler limiter(JsonObject options) {
+    return new RateLimitHandler(vertx, options.put("sweepInterval", 3600000L), 0);
+  }
+}
@@ -0,0 +1,40 @@
+package io.openshift.booster.service;
+
+import org.junit.Test;
+
+import java.util.NoSuchElementException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that the preallocated store errors stay cheap and unchanged.
+ */
+public class StoreErrorsTest {
+
+  @Test
+  public void testCaptureNoStackTrace() {
+    assertThat(StoreErrors.NOT_FOUND.getStackTrace()).isEmpty();
+    assertThat(new StoreErrors.Invalid("invalid").getStackTrace()).isEmpty();
+    assertThat(StoreErrors.INSUFFICIENT_STOCK.getStackTrace()).isEmpty();
+  }
+
+  @Test
+  public void testKeepTheContractExceptions() {
+    assertThat(StoreErrors.NOT_FOUND).isInstanceOf(NoSuchElementException.class);
+    assertThat(new StoreErrors.Invalid("invalid")).isInstanceOf(IllegalArgumentException.class);
+    assertThat(StoreErrors.INSUFFICIENT_STOCK).isInstanceOf(IllegalStateException.class);
+    assertThat(StoreErrors.NOT_FOUND.status()).isEqualTo(404);
+    assertThat(new StoreErrors.Invalid("invalid").status()).isEqualTo(422);
+    assertThat(StoreErrors.INSUFFICIENT_STOCK.status()).isEqualTo(409);
+  }
+
+  @Test
+  public void testCannotBeGivenACause() {
+    try {
+      StoreErrors.NOT_FOUND.initCause(new RuntimeException());
+    } catch (IllegalStateException e) {
+      // Expected, the cause is set.
+    }
+    assertThat(StoreErrors.NOT_FOUND.getCause()).isNull();
+  }
+}
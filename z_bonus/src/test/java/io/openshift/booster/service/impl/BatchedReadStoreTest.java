@@ -0,0 +1,141 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.Single;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that concurrent reads are sent as one batch, and the multi-gets of the JDBC stores.
+ */
+public class BatchedReadStoreTest {
+
+  private Vertx vertx;
+  private List<List<Long>> batches;
+  private InMemoryProductStore delegate;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    batches = new CopyOnWriteArrayList<>();
+    delegate = new InMemoryProductStore() {
+      @Override
+      public Observable<JsonObject> readMany(List<Long> ids) {
+        batches.add(ids);
+        return super.readMany(ids);
+      }
+    };
+    for (int i = 0; i < 10; i++) {
+      delegate.create(new JsonObject().put("name", "p" + i).put("stock", i)).toBlocking().value();
+    }
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testReadsOfOneTurnShareABatch() throws Exception {
+    BatchedReadStore store = new BatchedReadStore(delegate, vertx, 0, 64);
+    List<Long> ids = Arrays.asList(1L, 2L, 3L, 2L, 42L);
+
+    List<Object> results = readOnContext(store, ids);
+
+    assertThat(batches).containsExactly(Arrays.asList(1L, 2L, 3L, 42L));
+    assertThat(results.get(0)).isEqualTo(delegate.read(1).toBlocking().value());
+    assertThat(results.get(1)).isEqualTo(delegate.read(2).toBlocking().value());
+    assertThat(results.get(3)).isEqualTo(results.get(1)).isNotSameAs(results.get(1));
+    assertThat(results.get(4)).isInstanceOf(NoSuchElementException.class);
+  }
+
+  @Test
+  public void testFullBatchIsSentRightAway() throws Exception {
+    BatchedReadStore store = new BatchedReadStore(delegate, vertx, 0, 4);
+
+    List<Object> results = readOnContext(store, LongStream.rangeClosed(1, 10).boxed().collect(Collectors.toList()));
+
+    assertThat(batches).containsExactly(Arrays.asList(1L, 2L, 3L, 4L), Arrays.asList(5L, 6L, 7L, 8L),
+      Arrays.asList(9L, 10L));
+    assertThat(results).allMatch(result -> result instanceof JsonObject);
+  }
+
+  @Test
+  public void testReadManyKeepsOrderAndSkipsUnknownIds() throws Exception {
+    BatchedReadStore store = new BatchedReadStore(delegate, vertx, 0, 64);
+
+    // From the event loop, so the reads are queued before the batch is sent.
+    CompletableFuture<List<Long>> read = new CompletableFuture<>();
+    vertx.runOnContext(v -> store.readMany(Arrays.asList(3L, 42L, 1L, 3L)).map(json -> json.getLong("id")).toList()
+      .subscribe(read::complete, read::completeExceptionally));
+    List<Long> ids = read.get(10, TimeUnit.SECONDS);
+
+    assertThat(ids).containsExactly(3L, 1L);
+    assertThat(batches).containsExactly(Arrays.asList(3L, 42L, 1L));
+  }
+
+  @Test
+  public void testJdbcStoresReadMany() throws Exception {
+    String url = "jdbc:h2:mem:batched;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    try (Connection conn = DriverManager.getConnection(url, "user", "password");
+         Statement statement = conn.createStatement()) {
+      statement.execute("CREATE TABLE IF NOT EXISTS products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL, "
+        + "stock BIGINT)");
+      statement.execute("INSERT INTO products (name, stock) SELECT 'p' || x, x FROM SYSTEM_RANGE(1, 2000)");
+    }
+    JsonObject config = new JsonObject()
+      .put("url", url)
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "user")
+      .put("password", "password");
+    BlockingJdbcProductStore blocking = new BlockingJdbcProductStore(vertx, config);
+
+    for (int count : new int[]{1, 2, 3, 5, 17, 1500}) {
+      List<Long> ids = LongStream.rangeClosed(1, count).map(id -> id * 3 / 2).boxed().collect(Collectors.toList());
+      ids.add(9999L);
+      List<Long> expected = ids.stream().filter(id -> id <= 2000).distinct().sorted().collect(Collectors.toList());
+
+      assertThat(readIds(new JdbcProductStore(JDBCClient.createShared(vertx, config)), ids)).isEqualTo(expected);
+      assertThat(readIds(blocking, ids)).isEqualTo(expected);
+    }
+    blocking.close();
+  }
+
+  private static List<Long> readIds(io.openshift.booster.service.Store store, List<Long> ids) {
+    return store.readMany(ids).map(json -> json.getLong("id")).toSortedList().toBlocking().single();
+  }
+
+  /**
+   * Issues all the reads from one event loop turn.
+   */
+  private List<Object> readOnContext(BatchedReadStore store, List<Long> ids) throws Exception {
+    CompletableFuture<List<Object>> done = new CompletableFuture<>();
+    vertx.runOnContext(v -> {
+      List<Single<Object>> reads = new ArrayList<>();
+      for (long id : ids) {
+        reads.add(store.read(id).<Object>map(json -> json).onErrorReturn(err -> err));
+      }
+      Single.zip(reads, results -> Arrays.asList(results)).subscribe(done::complete, done::completeExceptionally);
+    });
+    return done.get(10, TimeUnit.SECONDS);
+  }
+}
@@ -0,0 +1,76 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the bounds of the blocking store threads, against an in-memory database whose row lock holds the only thread.
+ */
+public class BlockingJdbcProductStoreTest {
+
+  private Vertx vertx;
+  private String url;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    url = "jdbc:h2:mem:blocking-" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000";
+    try (Connection conn = DriverManager.getConnection(url, "user", "password");
+         Statement statement = conn.createStatement()) {
+      statement.execute("CREATE TABLE products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL, stock BIGINT)");
+      statement.execute("INSERT INTO products (name, stock) VALUES ('iPhone', 10)");
+    }
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testQueuesThenRejectsTheCallsBeyondThePool() throws Exception {
+    BlockingJdbcProductStore store = new BlockingJdbcProductStore(vertx, new JsonObject()
+      .put("url", url)
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "user")
+      .put("password", "password")
+      .put("max_pool_size", 1)
+      .put("max_queue_size", 1));
+    try (Connection lock = DriverManager.getConnection(url, "user", "password");
+         Statement statement = lock.createStatement()) {
+      lock.setAutoCommit(false);
+      statement.executeUpdate("UPDATE products SET stock = 9 WHERE id = 1");
+
+      // Waits for the row lock on the only thread.
+      CompletableFuture<Void> blocked = new CompletableFuture<>();
+      store.update(1, new JsonObject().put("name", "iPhone").put("stock", 8))
+        .subscribe(() -> blocked.complete(null), blocked::completeExceptionally);
+      await().until(() -> Thread.getAllStackTraces().keySet().stream()
+        .anyMatch(thread -> thread.getName().startsWith("product-store-")));
+      CompletableFuture<JsonObject> queued = new CompletableFuture<>();
+      store.read(1).subscribe(queued::complete, queued::completeExceptionally);
+
+      assertThat(store.read(1).toCompletable().get(10, TimeUnit.SECONDS))
+        .isInstanceOf(RejectedExecutionException.class);
+
+      lock.commit();
+      blocked.get(10, TimeUnit.SECONDS);
+      assertThat(queued.get(10, TimeUnit.SECONDS).getLong("stock")).isEqualTo(8);
+    } finally {
+      store.close();
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the pre-encoded product list against the encoding of the products read from the delegate.
+ */
+public class CachedCatalogueStoreTest {
+
+  @Test
+  public void testMatchesEncodedProductsUnderRandomOperations() {
+    InMemoryProductStore delegate = new InMemoryProductStore();
+    CachedCatalogueStore store = new CachedCatalogueStore(delegate);
+    assertThat(encoded(store)).isEqualTo("[ ]");
+
+    List<Long> ids = new ArrayList<>();
+    Random random = new Random(42);
+    for (int i = 0; i < 2000; i++) {
+      int operation = random.nextInt(10);
+      if (operation < 5 || ids.isEmpty()) {
+        ids.add(store.create(product("p" + i + " \"é\"", i)).toBlocking().value().getLong("id"));
+      } else if (operation < 8) {
+        // Extra fields are not stored.
+        store.update(ids.get(random.nextInt(ids.size())), product("u" + i, i).put("extra", true)).await();
+      } else {
+        store.delete(ids.remove(random.nextInt(ids.size()))).await();
+      }
+      if (i % 100 == 0) {
+        assertThat(encoded(store)).isEqualTo(expected(delegate));
+      }
+    }
+    assertThat(encoded(store)).isEqualTo(expected(delegate));
+  }
+
+  @Test
+  public void testReusesBufferUntilWrite() {
+    CachedCatalogueStore store = new CachedCatalogueStore(new InMemoryProductStore());
+    long id = store.create(product("iphone", 10)).toBlocking().value().getLong("id");
+
+    Buffer first = store.encodedAll().toBlocking().value();
+    assertThat(store.encodedAll().toBlocking().value()).isSameAs(first);
+
+    long version = store.version();
+    store.update(id, product("android", 5)).await();
+    assertThat(store.version()).isEqualTo(version + 1);
+    assertThat(store.encodedAll().toBlocking().value()).isNotSameAs(first);
+  }
+
+  @Test
+  public void testIgnoresFailedWrites() {
+    CachedCatalogueStore store = new CachedCatalogueStore(new InMemoryProductStore());
+    long id = store.create(product("iphone", 10)).toBlocking().value().getLong("id");
+    String before = encoded(store);
+
+    store.update(id + 1, product("android", 5)).get();
+    store.update(id, product("", 5)).get();
+    store.delete(id + 1).get();
+
+    assertThat(encoded(store)).isEqualTo(before);
+  }
+
+  private static String encoded(CachedCatalogueStore store) {
+    return store.encodedAll().toBlocking().value().toString();
+  }
+
+  private static String expected(InMemoryProductStore delegate) {
+    return new JsonArray(delegate.readAll().toList().toBlocking().single()).encodePrettily();
+  }
+
+  private static JsonObject product(String name, long stock) {
+    return new JsonObject().put("name", name).put("stock", stock);
+  }
+}
@@ -0,0 +1,117 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Single;
+import rx.subjects.BehaviorSubject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that concurrent stock adjustments are combined, with the outcome of adjustments applied one by one.
+ */
+public class CombinedStockStoreTest {
+
+  private AtomicInteger calls;
+  // Holds the round-trips while false.
+  private BehaviorSubject<Boolean> open;
+  private InMemoryProductStore delegate;
+  private CombinedStockStore store;
+
+  @Before
+  public void setUp() {
+    calls = new AtomicInteger();
+    open = BehaviorSubject.create(true);
+    delegate = new InMemoryProductStore() {
+      @Override
+      public Single<Long> adjustStock(long id, long delta) {
+        calls.incrementAndGet();
+        // A round-trip, during which the next adjustments wait.
+        return open.filter(ready -> ready).first().toSingle()
+          .flatMap(ready -> super.adjustStock(id, delta))
+          .delay(5, TimeUnit.MILLISECONDS);
+      }
+    };
+    store = new CombinedStockStore(delegate);
+  }
+
+  @Test
+  public void testCombinesConcurrentAdjustments() {
+    long id = create(100);
+
+    List<Object> results = adjustConcurrently(id, -1, 100);
+
+    assertThat(results).doesNotHaveDuplicates().allMatch(result -> result instanceof Long);
+    assertThat(results.stream().mapToLong(result -> (Long) result).min().getAsLong()).isEqualTo(0);
+    assertThat(calls.get()).isLessThan(100);
+    assertThat(stock(id)).isEqualTo(0);
+  }
+
+  @Test
+  public void testOnlyAdjustmentsExceedingTheStockFail() {
+    long id = create(5);
+
+    List<Object> results = adjustConcurrently(id, -1, 10);
+
+    assertThat(results.stream().filter(result -> result instanceof Long)).hasSize(5);
+    assertThat(results.stream().filter(result -> result instanceof IllegalStateException)).hasSize(5);
+    assertThat(stock(id)).isEqualTo(0);
+  }
+
+  @Test
+  public void testIncrementsApplyBeforeDecrements() throws Exception {
+    long id = create(0);
+    open.onNext(false);
+
+    List<Single<Object>> adjustments = new ArrayList<>();
+    // Held back by the first one, then combined.
+    adjustments.add(store.adjustStock(id, 0).map(stock -> (Object) stock));
+    adjustments.add(store.adjustStock(id, -3).map(stock -> (Object) stock));
+    adjustments.add(store.adjustStock(id, 5).map(stock -> (Object) stock));
+    Future<List<Object>> pending = Single.zip(adjustments, this::list).toObservable().toBlocking().toFuture();
+    open.onNext(true);
+    List<Object> results = pending.get(10, TimeUnit.SECONDS);
+
+    assertThat(results).containsExactly(0L, 2L, 5L);
+    assertThat(stock(id)).isEqualTo(2);
+  }
+
+  @Test
+  public void testUnknownProduct() {
+    List<Object> results = adjustConcurrently(42, -1, 3);
+
+    assertThat(results).allMatch(result -> result instanceof NoSuchElementException);
+  }
+
+  private List<Object> adjustConcurrently(long id, long delta, int count) {
+    List<Single<Object>> adjustments = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      adjustments.add(store.adjustStock(id, delta).map(stock -> (Object) stock).onErrorReturn(err -> err));
+    }
+    return Single.zip(adjustments, this::list).toBlocking().value();
+  }
+
+  private List<Object> list(Object[] results) {
+    List<Object> list = new ArrayList<>();
+    for (Object result : results) {
+      list.add(result);
+    }
+    return list;
+  }
+
+  private long create(long stock) {
+    return delegate.create(new JsonObject().put("name", "hot").put("stock", stock)).toBlocking().value().getLong("id");
+  }
+
+  private long stock(long id) {
+    return delegate.read(id).toBlocking().value().getLong("stock");
+  }
+}
@@ -0,0 +1,141 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the in-memory store against a reference map, and its snapshots.
+ */
+public class InMemoryProductStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testMatchesReferenceMapUnderRandomOperations() {
+    InMemoryProductStore store = new InMemoryProductStore();
+    Map<Long, JsonObject> reference = new LinkedHashMap<>();
+    List<Long> ids = new ArrayList<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 20000; i++) {
+      int operation = random.nextInt(10);
+      if (operation < 5 || ids.isEmpty()) {
+        JsonObject created = store.create(product("p" + i, i)).toBlocking().value();
+        reference.put(created.getLong("id"), created.copy());
+        ids.add(created.getLong("id"));
+      } else if (operation < 7) {
+        long id = ids.get(random.nextInt(ids.size()));
+        JsonObject item = product("u" + i, i);
+        store.update(id, item).await();
+        reference.put(id, item.put("id", id));
+      } else {
+        long id = ids.remove(random.nextInt(ids.size()));
+        store.delete(id).await();
+        reference.remove(id);
+      }
+    }
+
+    assertThat(ids).isNotEmpty();
+    for (long id : ids) {
+      assertThat(store.read(id).toBlocking().value()).isEqualTo(reference.get(id));
+    }
+    assertThat(readAllIds(store)).containsExactlyElementsOf(reference.keySet());
+  }
+
+  @Test
+  public void testUnknownAndInvalidItems() {
+    InMemoryProductStore store = new InMemoryProductStore();
+    long id = store.create(product("iphone", 5)).toBlocking().value().getLong("id");
+
+    Throwable[] errors = new Throwable[4];
+    store.read(id + 1).subscribe(json -> { }, err -> errors[0] = err);
+    store.update(id + 1, product("android", 1)).subscribe(() -> { }, err -> errors[1] = err);
+    store.delete(id + 1).subscribe(() -> { }, err -> errors[2] = err);
+    store.create(product("", 1)).subscribe(json -> { }, err -> errors[3] = err);
+
+    assertThat(errors[0]).isInstanceOf(NoSuchElementException.class);
+    assertThat(errors[1]).isInstanceOf(NoSuchElementException.class);
+    assertThat(errors[2]).isInstanceOf(NoSuchElementException.class);
+    assertThat(errors[3]).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testDeletesOnceAcrossResizes() {
+    InMemoryProductStore store = new InMemoryProductStore();
+    List<Long> ids = new ArrayList<>();
+    // The 65th product resizes the index, the last ones are deleted before the rows are compacted.
+    for (int i = 0; i < 100; i++) {
+      ids.add(0, store.create(product("p" + i, i)).toBlocking().value().getLong("id"));
+    }
+
+    for (long id : ids) {
+      store.delete(id).await();
+      Throwable[] errors = new Throwable[2];
+      store.read(id).subscribe(json -> { }, err -> errors[0] = err);
+      store.delete(id).subscribe(() -> { }, err -> errors[1] = err);
+      assertThat(errors[0]).isInstanceOf(NoSuchElementException.class);
+      assertThat(errors[1]).isInstanceOf(NoSuchElementException.class);
+    }
+    assertThat(readAllIds(store)).isEmpty();
+  }
+
+  @Test
+  public void testReadAllKeepsInsertionOrderAcrossUpdates() {
+    InMemoryProductStore store = new InMemoryProductStore();
+    long first = store.create(product("a", 1)).toBlocking().value().getLong("id");
+    long second = store.create(product("b", 2)).toBlocking().value().getLong("id");
+    long third = store.create(product("c", 3)).toBlocking().value().getLong("id");
+
+    store.update(first, product("z", 0)).await();
+
+    assertThat(readAllIds(store)).containsExactly(first, second, third);
+  }
+
+  @Test
+  public void testSnapshotRoundTrip() throws Exception {
+    Path file = folder.getRoot().toPath().resolve("products.snapshot");
+    InMemoryProductStore store = new InMemoryProductStore();
+    for (int i = 0; i < 100; i++) {
+      store.create(product("product-" + i + " é", i)).toBlocking().value();
+    }
+    store.delete(1).await();
+    store.snapshot(file);
+
+    InMemoryProductStore restored = new InMemoryProductStore();
+    assertThat(restored.load(file)).isTrue();
+
+    assertThat(restored.readAll().toList().toBlocking().single())
+      .isEqualTo(store.readAll().toList().toBlocking().single());
+    // Ids are not reused after a restart.
+    assertThat(restored.create(product("new", 1)).toBlocking().value().getLong("id")).isEqualTo(101);
+  }
+
+  @Test
+  public void testLoadWithoutSnapshot() throws Exception {
+    assertThat(new InMemoryProductStore().load(folder.getRoot().toPath().resolve("missing"))).isFalse();
+  }
+
+  private static JsonObject product(String name, long stock) {
+    return new JsonObject().put("name", name).put("stock", stock);
+  }
+
+  private static List<Long> readAllIds(InMemoryProductStore store) {
+    return store.readAll().toList().toBlocking().single().stream()
+      .map(json -> json.getLong("id"))
+      .collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,115 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the routing of the JDBC store against a primary and two replica databases. The databases are not replicated,
+ * each replica holds a product named after it, so the reads tell which database served them.
+ */
+public class JdbcProductStoreReplicaTest {
+
+  private Vertx vertx;
+  private JDBCClient primary;
+  private List<JDBCClient> replicas;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    primary = client("primary");
+    replicas = Arrays.asList(client("replica-a"), client("replica-b"));
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testReadsFromReplicasAndWritesToThePrimary() {
+    JdbcProductStore store = new JdbcProductStore(primary, replicas, 1000);
+
+    long id = store.create(new JsonObject().put("name", "new").put("stock", 1)).toBlocking().value().getLong("id");
+
+    // Not replicated yet.
+    assertThat(store.read(id).toCompletable().get()).isInstanceOf(NoSuchElementException.class);
+    assertThat(store.primaryReads().read(id).toBlocking().value().getString("name")).isEqualTo("new");
+    assertThat(names(store.primaryReads())).containsExactly("primary", "new");
+    assertThat(store.primaryReads().readMany(Collections.singletonList(id)).toList().toBlocking().single())
+      .hasSize(1);
+  }
+
+  @Test
+  public void testBalancesIdleReplicas() {
+    JdbcProductStore store = new JdbcProductStore(primary, replicas, 1000);
+
+    List<String> served = Observable.range(0, 4)
+      .concatMap(i -> store.read(1).toObservable())
+      .map(json -> json.getString("name"))
+      .toList().toBlocking().single();
+
+    assertThat(served).containsOnly("replica-a", "replica-b");
+    assertThat(served.stream().filter("replica-a"::equals).count()).isEqualTo(2);
+  }
+
+  @Test
+  public void testSpreadsConcurrentReads() {
+    JdbcProductStore store = new JdbcProductStore(primary, replicas, 1000);
+
+    List<String> served = Observable.range(0, 50)
+      .flatMap(i -> store.read(1).toObservable())
+      .map(json -> json.getString("name"))
+      .toList().toBlocking().single();
+
+    assertThat(served).hasSize(50).contains("replica-a", "replica-b");
+  }
+
+  @Test
+  public void testSessionsReadTheirWritesFromThePrimary() throws Exception {
+    JdbcProductStore store = new JdbcProductStore(primary, replicas, 200);
+
+    long token = store.sessionToken();
+
+    assertThat(store.replicasMayMiss(token)).isTrue();
+    Thread.sleep(250);
+    assertThat(store.replicasMayMiss(token)).isFalse();
+    assertThat(new JdbcProductStore(primary).replicasMayMiss(store.sessionToken())).isFalse();
+  }
+
+  private static List<String> names(io.openshift.booster.service.Store store) {
+    return store.readAll().map(json -> json.getString("name")).toList().toBlocking().single();
+  }
+
+  /**
+   * @return the client of a new database holding a product with the given name, with lower case labels as PostgreSQL
+   */
+  private JDBCClient client(String name) throws Exception {
+    String url = "jdbc:h2:mem:" + name + "-" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE";
+    try (Connection conn = DriverManager.getConnection(url, "user", "password");
+         Statement statement = conn.createStatement()) {
+      statement.execute("CREATE TABLE products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL, stock BIGINT)");
+      statement.execute("INSERT INTO products (name, stock) VALUES ('" + name + "', 10)");
+    }
+    return JDBCClient.createShared(vertx, new JsonObject()
+      .put("url", url)
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "user")
+      .put("password", "password"), name);
+  }
+}
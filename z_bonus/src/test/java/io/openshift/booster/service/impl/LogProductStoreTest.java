@@ -0,0 +1,231 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import rx.Completable;
+import rx.Single;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the log store against a reference map, across restarts, torn writes and compactions.
+ */
+public class LogProductStoreTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private JsonObject config;
+
+  @Before
+  public void setUp() {
+    vertx = Vertx.vertx();
+    config = new JsonObject()
+      .put("path", folder.getRoot().getAbsolutePath())
+      .put("segment_size", 4096)
+      // Compactions are triggered by the tests.
+      .put("compaction_interval", 3600000L);
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testMatchesReferenceMapAcrossRestarts() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config).open();
+    Map<Long, JsonObject> reference = new LinkedHashMap<>();
+    List<Long> ids = new ArrayList<>();
+    Random random = new Random(42);
+
+    for (int i = 0; i < 2000; i++) {
+      int operation = random.nextInt(10);
+      if (operation < 5 || ids.isEmpty()) {
+        JsonObject created = store.create(product("p" + i, i)).toBlocking().value();
+        reference.put(created.getLong("id"), created.copy());
+        ids.add(created.getLong("id"));
+      } else if (operation < 8) {
+        long id = ids.get(random.nextInt(ids.size()));
+        JsonObject item = product("u" + i + " é", i);
+        store.update(id, item).await();
+        reference.put(id, item.put("id", id));
+      } else {
+        long id = ids.remove(random.nextInt(ids.size()));
+        store.delete(id).await();
+        reference.remove(id);
+      }
+    }
+    assertMatches(store, reference);
+    store.close();
+
+    LogProductStore restarted = new LogProductStore(vertx, config).open();
+    assertMatches(restarted, reference);
+    // Ids are not reused after a restart.
+    assertThat(restarted.create(product("new", 1)).toBlocking().value().getLong("id"))
+      .isGreaterThan(ids.get(ids.size() - 1));
+    restarted.close();
+  }
+
+  @Test
+  public void testUnknownAndInvalidItems() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config).open();
+    long id = store.create(product("iphone", 5)).toBlocking().value().getLong("id");
+
+    Throwable[] errors = new Throwable[4];
+    store.read(id + 1).subscribe(json -> { }, err -> errors[0] = err);
+    errors[1] = store.update(id + 1, product("android", 1)).get();
+    errors[2] = store.delete(id + 1).get();
+    store.create(product("", 1)).subscribe(json -> { }, err -> errors[3] = err);
+
+    assertThat(errors[0]).isInstanceOf(NoSuchElementException.class);
+    assertThat(errors[1]).isInstanceOf(NoSuchElementException.class);
+    assertThat(errors[2]).isInstanceOf(NoSuchElementException.class);
+    assertThat(errors[3]).isInstanceOf(IllegalArgumentException.class);
+    store.close();
+  }
+
+  @Test
+  public void testAdjustsStockDurably() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config).open();
+    long id = store.create(product("iphone", 5)).toBlocking().value().getLong("id");
+
+    assertThat(store.adjustStock(id, -3).toBlocking().value()).isEqualTo(2);
+    assertThat(store.adjustStock(id, -3).toCompletable().get()).isInstanceOf(IllegalStateException.class);
+    store.close();
+
+    LogProductStore restarted = new LogProductStore(vertx, config).open();
+    assertThat(restarted.read(id).toBlocking().value()).isEqualTo(product("iphone", 2).put("id", id));
+    restarted.close();
+  }
+
+  @Test
+  public void testGroupCommit() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config.copy().put("segment_size", 1024 * 1024)).open();
+    List<Single<JsonObject>> creates = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      creates.add(store.create(product("p" + i, i)));
+    }
+    Single.merge(rx.Observable.from(creates)).toList().toBlocking().single();
+
+    long[] statistics = store.flushStatistics();
+    assertThat(statistics[1]).isEqualTo(1000);
+    assertThat(statistics[0]).isBetween(1L, 1000L);
+    store.close();
+  }
+
+  @Test
+  public void testDiscardsTornRecord() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config).open();
+    long first = store.create(product("a", 1)).toBlocking().value().getLong("id");
+    long second = store.create(product("b", 2)).toBlocking().value().getLong("id");
+    store.close();
+
+    // Corrupts the name of the last record.
+    Path segment = segments().get(segments().size() - 1);
+    try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      channel.read(buffer, 0);
+      int end = 16;
+      int last = end;
+      while (buffer.getInt(end) != 0) {
+        last = end;
+        end += 8 + buffer.getInt(end);
+      }
+      channel.write(ByteBuffer.wrap(new byte[]{'x'}), end - 1);
+      assertThat(last).isGreaterThan(16);
+    }
+
+    LogProductStore restarted = new LogProductStore(vertx, config).open();
+    assertThat(restarted.read(first).toBlocking().value().getString("name")).isEqualTo("a");
+    assertThat(restarted.read(second).toCompletable().get()).isInstanceOf(NoSuchElementException.class);
+    restarted.close();
+  }
+
+  @Test
+  public void testDropsBlankTrailingSegment() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config).open();
+    long id = store.create(product("a", 1)).toBlocking().value().getLong("id");
+    store.close();
+
+    // A segment rolled right before a crash, mapped but never written.
+    Path last = segments().get(segments().size() - 1);
+    long sequence = Long.parseLong(last.getFileName().toString().replaceAll("\\D", ""));
+    Path blank = last.resolveSibling(String.format("products-%020d.log", sequence + 1));
+    Files.write(blank, new byte[4096]);
+
+    LogProductStore restarted = new LogProductStore(vertx, config).open();
+    assertThat(restarted.read(id).toBlocking().value().getString("name")).isEqualTo("a");
+    restarted.close();
+    // The segment rolled by the restart replaced the blank one.
+    assertThat(ByteBuffer.wrap(Files.readAllBytes(blank)).getInt(0)).isNotZero();
+  }
+
+  @Test
+  public void testCompactsSupersededSegments() throws Exception {
+    LogProductStore store = new LogProductStore(vertx, config).open();
+    Map<Long, JsonObject> reference = new LinkedHashMap<>();
+    for (int i = 0; i < 10; i++) {
+      JsonObject created = store.create(product("p" + i, i)).toBlocking().value();
+      reference.put(created.getLong("id"), created.copy());
+    }
+    long deleted = reference.keySet().iterator().next();
+    store.delete(deleted).await();
+    reference.remove(deleted);
+    // Rewrites the products over and over, filling segments with superseded records.
+    List<Completable> updates = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      for (Map.Entry<Long, JsonObject> entry : reference.entrySet()) {
+        JsonObject item = product("p" + entry.getKey() + "-" + i, i);
+        updates.add(store.update(entry.getKey(), item));
+        entry.setValue(item.copy().put("id", entry.getKey()));
+      }
+    }
+    Completable.merge(updates).await();
+    int before = segments().size();
+
+    assertThat(store.compact()).isGreaterThan(0);
+    assertThat(segments().size()).isLessThan(before);
+    assertMatches(store, reference);
+    store.close();
+
+    LogProductStore restarted = new LogProductStore(vertx, config).open();
+    assertMatches(restarted, reference);
+    restarted.close();
+  }
+
+  private List<Path> segments() throws IOException {
+    return Files.list(folder.getRoot().toPath()).sorted().collect(Collectors.toList());
+  }
+
+  private static void assertMatches(LogProductStore store, Map<Long, JsonObject> reference) {
+    for (Map.Entry<Long, JsonObject> entry : reference.entrySet()) {
+      assertThat(store.read(entry.getKey()).toBlocking().value()).isEqualTo(entry.getValue());
+    }
+    assertThat(store.readAll().toList().toBlocking().single()).containsExactlyElementsOf(reference.values());
+  }
+
+  private static JsonObject product(String name, long stock) {
+    return new JsonObject().put("name", name).put("stock", stock);
+  }
+}
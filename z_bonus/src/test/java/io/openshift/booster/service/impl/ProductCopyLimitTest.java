@@ -0,0 +1,72 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the limit of the concurrent copies against a server accepting the connections and never answering, so the
+ * copies hang while logging in. Unlike {@link ProductCopyTest}, it needs no PostgreSQL server and also runs as root.
+ */
+public class ProductCopyLimitTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private Vertx vertx;
+  private ServerSocket database;
+  private ProductCopy copy;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    database = new ServerSocket(0);
+    database.setSoTimeout(10000);
+    copy = new ProductCopy(io.vertx.rxjava.core.Vertx.newInstance(vertx), new JsonObject()
+      .put("url", "jdbc:postgresql://localhost:" + database.getLocalPort() + "/my_data")
+      .put("user", "user")
+      .put("password", "password"), 1);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    database.close();
+    copy.close();
+    vertx.close();
+  }
+
+  @Test
+  public void testRejectsTheCopiesBeyondTheLimit() throws Exception {
+    CompletableFuture<Throwable> hanging = new CompletableFuture<>();
+    copy.export(ProductCopy.Format.CSV, file("hanging.csv")).subscribe(() -> hanging.complete(null), hanging::complete);
+    Socket connection = database.accept();
+
+    assertThat(copy.export(ProductCopy.Format.CSV, file("rejected.csv")).get(10, TimeUnit.SECONDS))
+      .isInstanceOf(RejectedExecutionException.class);
+
+    // The failed copy gives its turn back.
+    connection.close();
+    assertThat(hanging.get(10, TimeUnit.SECONDS)).isNotNull().isNotInstanceOf(RejectedExecutionException.class);
+    database.close();
+    assertThat(copy.export(ProductCopy.Format.CSV, file("refused.csv")).get(10, TimeUnit.SECONDS))
+      .isNotNull().isNotInstanceOf(RejectedExecutionException.class);
+  }
+
+  private AsyncFile file(String name) throws Exception {
+    return vertx.fileSystem().openBlocking(folder.newFile(name).getPath(), new OpenOptions());
+  }
+}
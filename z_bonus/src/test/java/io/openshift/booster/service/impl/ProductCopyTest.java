@@ -0,0 +1,215 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.http.HttpClient;
+import io.vertx.core.http.HttpClientRequest;
+import io.vertx.core.http.HttpMethod;
+import io.vertx.core.http.HttpServer;
+import io.vertx.core.json.JsonObject;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports and imports the products over HTTP, against an embedded PostgreSQL server. PostgreSQL refuses to run as
+ * root, the tests are skipped then.
+ */
+public class ProductCopyTest {
+
+  private static final int PRODUCTS = 20000;
+
+  private static EmbeddedPostgres postgres;
+  private static String url;
+  private static Vertx vertx;
+  private static ProductCopy copy;
+  private static HttpServer server;
+  private static HttpClient client;
+
+  @BeforeClass
+  public static void setUp() throws Exception {
+    Assume.assumeFalse("PostgreSQL cannot run as root", "root".equals(System.getProperty("user.name")));
+    postgres = EmbeddedPostgres.start();
+    url = postgres.getJdbcUrl("postgres", "postgres");
+
+    vertx = Vertx.vertx();
+    copy = new ProductCopy(io.vertx.rxjava.core.Vertx.newInstance(vertx),
+      new JsonObject().put("url", url).put("user", "postgres").put("password", ""));
+    // Serves the copies like the application.
+    CompletableFuture<HttpServer> listening = new CompletableFuture<>();
+    vertx.createHttpServer()
+      .requestHandler(request -> {
+        ProductCopy.Format format = ProductCopy.Format.valueOf(request.getParam("format"));
+        if (request.method() == HttpMethod.GET) {
+          request.response().setChunked(true);
+          copy.export(format, request.response()).subscribe(request.response()::end, err -> request.response()
+            .setStatusCode(500).end());
+        } else {
+          copy.importFrom(format, "true".equals(request.getParam("replace")), request)
+            .subscribe(
+              count -> request.response().end(String.valueOf(count)),
+              err -> request.response()
+                .setStatusCode(err instanceof IllegalArgumentException ? 422
+                  : err instanceof IllegalStateException ? 409 : 500)
+                .end(String.valueOf(err.getMessage())));
+        }
+      })
+      .listen(0, ar -> {
+        if (ar.succeeded()) {
+          listening.complete(ar.result());
+        } else {
+          listening.completeExceptionally(ar.cause());
+        }
+      });
+    server = listening.get(30, TimeUnit.SECONDS);
+    client = vertx.createHttpClient();
+  }
+
+  @AfterClass
+  public static void tearDown() throws Exception {
+    if (postgres != null) {
+      copy.close();
+      vertx.close();
+      postgres.close();
+    }
+  }
+
+  @Before
+  public void resetProducts() throws Exception {
+    try (Connection conn = DriverManager.getConnection(url, "postgres", "");
+         Statement statement = conn.createStatement()) {
+      statement.execute("DROP TABLE IF EXISTS products");
+      statement.execute("CREATE TABLE products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL, stock BIGINT)");
+      try (PreparedStatement insert = conn.prepareStatement("INSERT INTO products (name, stock) VALUES (?, ?)")) {
+        for (int i = 0; i < PRODUCTS; i++) {
+          // Separators, quotes, escapes and non ASCII characters survive the copies.
+          insert.setString(1, "p" + i + (i % 3 == 0 ? ", \"quoted\" \\ é" : ""));
+          if (i % 7 == 0) {
+            insert.setNull(2, java.sql.Types.BIGINT);
+          } else {
+            insert.setLong(2, i);
+          }
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+    }
+  }
+
+  @Test
+  public void testExportsCsv() throws Exception {
+    String csv = send(HttpMethod.GET, "/?format=CSV", null).body;
+
+    String[] lines = csv.split("\n");
+    assertThat(lines).hasSize(PRODUCTS + 1);
+    assertThat(lines[0]).isEqualTo("id,name,stock");
+    assertThat(lines[1]).isEqualTo("1,\"p0, \"\"quoted\"\" \\ é\",");
+    assertThat(lines[2]).isEqualTo("2,p1,1");
+  }
+
+  @Test
+  public void testExportsNdjson() throws Exception {
+    String ndjson = send(HttpMethod.GET, "/?format=NDJSON", null).body;
+
+    String[] lines = ndjson.split("\n");
+    assertThat(lines).hasSize(PRODUCTS);
+    assertThat(new JsonObject(lines[0]))
+      .isEqualTo(new JsonObject().put("id", 1).put("name", "p0, \"quoted\" \\ é").putNull("stock"));
+    assertThat(new JsonObject(lines[1])).isEqualTo(new JsonObject().put("id", 2).put("name", "p1").put("stock", 1));
+  }
+
+  @Test
+  public void testRoundTrips() throws Exception {
+    List<String> before = products();
+    for (ProductCopy.Format format : ProductCopy.Format.values()) {
+      Buffer export = Buffer.buffer(send(HttpMethod.GET, "/?format=" + format, null).body);
+
+      Response imported = send(HttpMethod.POST, "/?replace=true&format=" + format, export);
+
+      assertThat(imported.status).isEqualTo(200);
+      assertThat(imported.body).isEqualTo(String.valueOf(PRODUCTS));
+      assertThat(products()).isEqualTo(before);
+    }
+    // The next ids follow the imported ones.
+    try (Connection conn = DriverManager.getConnection(url, "postgres", "");
+         Statement statement = conn.createStatement();
+         ResultSet rs = statement.executeQuery("INSERT INTO products (name) VALUES ('new') RETURNING id")) {
+      rs.next();
+      assertThat(rs.getLong(1)).isEqualTo(PRODUCTS + 1);
+    }
+  }
+
+  @Test
+  public void testImportsNdjsonWithoutIds() throws Exception {
+    Buffer ndjson = Buffer.buffer("{\"name\":\"a\",\"stock\":1}\n{\"name\":\"b\"}\n");
+
+    assertThat(send(HttpMethod.POST, "/?format=NDJSON", ndjson).body).isEqualTo("2");
+    assertThat(products()).hasSize(PRODUCTS + 2).endsWith((PRODUCTS + 1) + ",a,1", (PRODUCTS + 2) + ",b,null");
+  }
+
+  @Test
+  public void testRejectsInvalidAndConflictingProducts() throws Exception {
+    List<String> before = products();
+
+    assertThat(send(HttpMethod.POST, "/?format=CSV", Buffer.buffer("id,name,stock\n1,a,many\n")).status)
+      .isEqualTo(422);
+    assertThat(send(HttpMethod.POST, "/?format=CSV", Buffer.buffer("id,name,stock\n1,a,1\n")).status)
+      .isEqualTo(409);
+    assertThat(products()).isEqualTo(before);
+  }
+
+  private static List<String> products() throws Exception {
+    List<String> products = new ArrayList<>();
+    try (Connection conn = DriverManager.getConnection(url, "postgres", "");
+         Statement statement = conn.createStatement();
+         ResultSet rs = statement.executeQuery("SELECT id, name, stock FROM products ORDER BY id")) {
+      while (rs.next()) {
+        products.add(rs.getLong(1) + "," + rs.getString(2) + "," + rs.getObject(3));
+      }
+    }
+    return products;
+  }
+
+  private static Response send(HttpMethod method, String uri, Buffer body) throws Exception {
+    CompletableFuture<Response> done = new CompletableFuture<>();
+    HttpClientRequest request = client.request(method, server.actualPort(), "localhost", uri, response ->
+      response.bodyHandler(buffer -> done.complete(new Response(response.statusCode(), buffer.toString("UTF-8")))));
+    request.exceptionHandler(done::completeExceptionally);
+    if (body == null) {
+      request.end();
+    } else {
+      request.setChunked(true);
+      // Sent in chunks, so the import reads a stream.
+      for (int i = 0; i < body.length(); i += 8192) {
+        request.write(body.getBuffer(i, Math.min(body.length(), i + 8192)));
+      }
+      request.end();
+    }
+    return done.get(60, TimeUnit.SECONDS);
+  }
+
+  private static final class Response {
+    private final int status;
+    private final String body;
+
+    private Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+}
@@ -0,0 +1,232 @@
+package io.openshift.booster.service.impl;
+
+import io.openshift.booster.service.Store;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the JDBC client store, with and without batched reads, with the blocking JDBC store under the same concurrent
+ * load: 90% reads and 10% updates of random products, with a fixed number of requests in flight and the same number of
+ * connections. The in-memory and
+ * log stores run the same load over the same products, as baselines without database.
+ * <p>
+ * Runs against an in-memory H2 database in PostgreSQL mode, or the database given by the {@code bench.url},
+ * {@code bench.user} and {@code bench.password} system properties. Run with {@code mvn verify -Pbenchmark}, tuned with
+ * the {@code bench.duration} (seconds per store), {@code bench.concurrency} and {@code bench.connections} system
+ * properties.
+ */
+public class ProductStoreBenchmarkIT {
+
+  private static final String URL = System.getProperty("bench.url", "jdbc:h2:mem:bench;MODE=PostgreSQL;DB_CLOSE_DELAY=-1");
+  private static final String USER = System.getProperty("bench.user", "user");
+  private static final String PASSWORD = System.getProperty("bench.password", "password");
+  private static final int DURATION = Integer.getInteger("bench.duration", 10);
+  private static final int CONCURRENCY = Integer.getInteger("bench.concurrency", 256);
+  private static final int CONNECTIONS = Integer.getInteger("bench.connections", 15);
+  private static final int PRODUCTS = 1000;
+  private static final long WARM_UP = TimeUnit.SECONDS.toNanos(3);
+
+  private Vertx vertx;
+  private long[] ids;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    try (Connection conn = DriverManager.getConnection(URL, USER, PASSWORD)) {
+      try (InputStream ddl = getClass().getClassLoader().getResourceAsStream("ddl.sql");
+           Statement statement = conn.createStatement()) {
+        for (String sql : new Scanner(ddl, "UTF-8").useDelimiter("\\A").next().split(";")) {
+          if (!sql.trim().isEmpty()) {
+            statement.execute(sql);
+          }
+        }
+      }
+      try (PreparedStatement insert = conn.prepareStatement("INSERT INTO products (name, stock) VALUES (?, ?)")) {
+        for (int i = 0; i < PRODUCTS; i++) {
+          insert.setString(1, "product-" + i);
+          insert.setLong(2, i);
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+      try (Statement statement = conn.createStatement();
+           ResultSet rs = statement.executeQuery("SELECT id FROM products")) {
+        List<Long> all = new ArrayList<>();
+        while (rs.next()) {
+          all.add(rs.getLong(1));
+        }
+        ids = all.stream().mapToLong(Long::longValue).toArray();
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    CompletableFuture<Void> closed = new CompletableFuture<>();
+    vertx.close(ar -> closed.complete(null));
+    closed.get(30, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void compareStores() throws Exception {
+    JsonObject config = new JsonObject()
+      .put("url", URL)
+      .put("driver_class", DriverManager.getDriver(URL).getClass().getName())
+      .put("user", USER)
+      .put("password", PASSWORD)
+      .put("max_pool_size", CONNECTIONS);
+
+    Result client = run(new JdbcProductStore(JDBCClient.createShared(vertx, config, "benchmark")));
+    Result batched = run(new BatchedReadStore(new JdbcProductStore(JDBCClient.createShared(vertx, config, "benchmark")),
+      vertx, 0, 64));
+    BlockingJdbcProductStore blockingStore = new BlockingJdbcProductStore(vertx, config);
+    Result blocking = run(blockingStore);
+    blockingStore.close();
+    InMemoryProductStore memoryStore = new InMemoryProductStore();
+    ids = new long[PRODUCTS];
+    for (int i = 0; i < PRODUCTS; i++) {
+      ids[i] = memoryStore.create(new JsonObject().put("name", "product-" + i).put("stock", i)).toBlocking().value()
+        .getLong("id");
+    }
+    Result memory = run(memoryStore);
+    LogProductStore logStore = new LogProductStore(vertx,
+      new JsonObject().put("path", Files.createTempDirectory("products-log").toString())).open();
+    ids = new long[PRODUCTS];
+    for (int i = 0; i < PRODUCTS; i++) {
+      ids[i] = logStore.create(new JsonObject().put("name", "product-" + i).put("stock", i)).toBlocking().value()
+        .getLong("id");
+    }
+    Result log = run(logStore);
+    logStore.close();
+
+    System.out.printf("%nProduct store benchmark: %ds per store, %d requests in flight, %d connections, %s%n%n",
+      DURATION, CONCURRENCY, CONNECTIONS, URL);
+    System.out.printf("%-14s %10s %8s %9s %9s %9s %9s%n", "store", "req/s", "errors", "p50(ms)", "p90(ms)", "p99(ms)",
+      "max(ms)");
+    client.print("jdbc-client");
+    batched.print("batched-reads");
+    blocking.print("blocking-jdbc");
+    memory.print("in-memory");
+    log.print("log");
+
+    assertThat(client.errors).isZero();
+    assertThat(batched.errors).isZero();
+    assertThat(blocking.errors).isZero();
+    assertThat(memory.errors).isZero();
+    assertThat(log.errors).isZero();
+  }
+
+  private Result run(Store store) throws Exception {
+    CompletableFuture<Result> done = new CompletableFuture<>();
+    vertx.runOnContext(v -> new Load(store, done).start());
+    return done.get(DURATION + 60, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Keeps {@link #CONCURRENCY} requests in flight from the event loop, records once warmed up.
+   */
+  private class Load {
+    private final Store store;
+    private final CompletableFuture<Result> done;
+    private final Result result = new Result();
+    private long start;
+    private long end;
+    private int inFlight;
+    private boolean sending;
+
+    private Load(Store store, CompletableFuture<Result> done) {
+      this.store = store;
+      this.done = done;
+    }
+
+    private void start() {
+      start = System.nanoTime() + WARM_UP;
+      end = start + TimeUnit.SECONDS.toNanos(DURATION);
+      for (int i = 0; i < CONCURRENCY; i++) {
+        send();
+      }
+    }
+
+    private void send() {
+      long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+      long sent = System.nanoTime();
+      inFlight++;
+      sending = true;
+      if (ThreadLocalRandom.current().nextInt(10) == 0) {
+        store.update(id, new JsonObject().put("name", "product-" + id).put("stock", sent % 100))
+          .subscribe(() -> completed(sent, false), err -> completed(sent, true));
+      } else {
+        store.read(id).subscribe(json -> completed(sent, false), err -> completed(sent, true));
+      }
+      sending = false;
+    }
+
+    private void completed(long sent, boolean failed) {
+      inFlight--;
+      long now = System.nanoTime();
+      if (sent >= start && now < end) {
+        result.record(now - sent, failed);
+      }
+      if (now < end && sending) {
+        // Completed synchronously, the next request goes through the event loop instead of the stack.
+        vertx.runOnContext(v -> send());
+      } else if (now < end) {
+        send();
+      } else if (inFlight == 0) {
+        done.complete(result);
+      }
+    }
+  }
+
+  private static class Result {
+    private long[] latencies = new long[1 << 16];
+    private int count;
+    private int errors;
+
+    private void record(long latency, boolean failed) {
+      if (count == latencies.length) {
+        latencies = Arrays.copyOf(latencies, count * 2);
+      }
+      latencies[count++] = latency;
+      if (failed) {
+        errors++;
+      }
+    }
+
+    private void print(String name) {
+      long[] sorted = Arrays.copyOf(latencies, count);
+      Arrays.sort(sorted);
+      System.out.printf("%-14s %10d %8d %9.2f %9.2f %9.2f %9.2f%n", name, count / DURATION, errors,
+        millis(sorted, 0.5), millis(sorted, 0.9), millis(sorted, 0.99), millis(sorted, 1));
+    }
+
+    private static double millis(long[] sorted, double percentile) {
+      if (sorted.length == 0) {
+        return 0;
+      }
+      int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+      return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+  }
+}
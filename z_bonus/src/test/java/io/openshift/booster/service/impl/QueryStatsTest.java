@@ -0,0 +1,125 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.jayway.awaitility.Awaitility.await;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the timing of the JDBC store statements against an in-memory database.
+ */
+public class QueryStatsTest {
+
+  private Vertx vertx;
+  private JDBCClient jdbc;
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    String url = "jdbc:h2:mem:stats-" + System.nanoTime() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE";
+    try (Connection conn = DriverManager.getConnection(url, "user", "password");
+         Statement statement = conn.createStatement()) {
+      statement.execute("CREATE TABLE products (id SERIAL PRIMARY KEY, name VARCHAR(40) NOT NULL, stock BIGINT)");
+    }
+    jdbc = JDBCClient.createShared(vertx, new JsonObject()
+      .put("url", url)
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "user")
+      .put("password", "password"), url);
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testTimesEachStatementByPhase() {
+    QueryStats stats = new QueryStats(new JsonObject());
+    JdbcProductStore store = new JdbcProductStore(jdbc, Collections.emptyList(), 0, stats);
+
+    long id = store.create(new JsonObject().put("name", "new").put("stock", 1)).toBlocking().value().getLong("id");
+    store.read(id).toBlocking().value();
+    store.read(id + 1).toCompletable().get();
+    store.readAll().toList().toBlocking().single();
+    store.update(id, new JsonObject().put("name", "renamed").put("stock", 2)).await();
+    store.delete(id).await();
+    // Timed once the connection is released, after the result.
+    await().until(() -> stats.histograms().stream()
+      .mapToLong(json -> ((JsonObject) json).getJsonObject("total").getLong("count")).sum() == 6);
+
+    JsonArray histograms = stats.histograms();
+    assertThat(names(histograms)).containsExactlyInAnyOrder("INSERT", "SELECT_ONE", "SELECT_ALL", "UPDATE", "DELETE");
+    for (Object statement : histograms) {
+      JsonObject json = (JsonObject) statement;
+      long count = "SELECT_ONE".equals(json.getString("statement")) ? 2 : 1;
+      for (String phase : new String[]{"acquire", "execute", "mapping", "total"}) {
+        assertThat(json.getJsonObject(phase).getLong("count")).isEqualTo(count);
+      }
+      assertThat(json.getJsonObject("total").getLong("max"))
+        .isGreaterThanOrEqualTo(json.getJsonObject("execute").getLong("max"));
+    }
+    assertThat(names(stats.slowest(2))).hasSize(2);
+    assertThat(stats.slowest(10).getJsonObject(0).getLong("max"))
+      .isGreaterThanOrEqualTo(stats.slowest(10).getJsonObject(4).getLong("max"));
+  }
+
+  @Test
+  public void testTimesNothingWithoutStats() {
+    JdbcProductStore store = new JdbcProductStore(jdbc);
+
+    store.create(new JsonObject().put("name", "new")).toBlocking().value();
+
+    assertThat(QueryStats.NONE.histograms()).isEmpty();
+  }
+
+  @Test
+  public void testSlidesTheWindow() throws Exception {
+    // A statement stays in the window from 500 ms, a slot, to 1000 ms.
+    QueryStats stats = new QueryStats(new JsonObject().put("window", 1000).put("slots", 2));
+    JdbcProductStore store = new JdbcProductStore(jdbc, Collections.emptyList(), 0, stats);
+
+    store.readAll().toList().toBlocking().single();
+    await().pollDelay(0, TimeUnit.MILLISECONDS).pollInterval(10, TimeUnit.MILLISECONDS)
+      .until(() -> stats.slowest(10).size() == 1);
+    assertThat(names(stats.slowest(10))).containsExactly("SELECT_ALL");
+
+    Thread.sleep(1100);
+    assertThat(stats.slowest(10)).isEmpty();
+    // The histograms are kept.
+    assertThat(names(stats.histograms())).containsExactly("SELECT_ALL");
+  }
+
+  @Test
+  public void testBucketsWithinAnEighth() {
+    for (long micros : new long[]{0, 1, 7, 8, 9, 15, 16, 17, 100, 1000, 123456, Long.MAX_VALUE / 1000}) {
+      long upper = QueryStats.upperBound(QueryStats.bucket(micros));
+      assertThat(upper).isGreaterThanOrEqualTo(micros);
+      assertThat(upper - micros).isLessThanOrEqualTo(micros / 8);
+    }
+  }
+
+  @Test
+  public void testRedactsTheParameters() {
+    assertThat(QueryStats.redact(new JsonArray().add("secret").add(42L).addNull()))
+      .isEqualTo("[String, Long, null]");
+  }
+
+  private static List<String> names(JsonArray statements) {
+    return statements.stream().map(json -> ((JsonObject) json).getString("statement")).collect(Collectors.toList());
+  }
+}
@@ -0,0 +1,171 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Observable;
+import rx.observers.AssertableSubscriber;
+import rx.subjects.PublishSubject;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the ranking of the searches, and that the indexes follow the writes.
+ */
+public class SearchIndexStoreTest {
+
+  private InMemoryProductStore delegate;
+  private SearchIndexStore store;
+
+  @Before
+  public void setUp() {
+    delegate = new InMemoryProductStore();
+    store = new SearchIndexStore(delegate);
+    for (String name : new String[]{"Smart Phone", "iPhone", "Phone", "Phone case", "Headphones", "Android"}) {
+      create(name, name.length());
+    }
+    store.load().await();
+  }
+
+  @Test
+  public void testRanksMatches() {
+    assertThat(names("phone")).containsExactly("Phone", "Phone case", "Smart Phone", "iPhone", "Headphones");
+    assertThat(names("PHONES")).containsExactly("Headphones");
+    assertThat(names("phone c")).containsExactly("Phone case");
+    assertThat(names("tablet")).isEmpty();
+  }
+
+  @Test
+  public void testMatchesWordPrefixesWithShortQueries() {
+    assertThat(names("ph")).containsExactly("Phone", "Phone case", "Smart Phone");
+    assertThat(names("a")).containsExactly("Android");
+    assertThat(names("on")).isEmpty();
+  }
+
+  @Test
+  public void testFiltersAndRanksByStock() {
+    assertThat(names("phone", 10)).containsExactly("Phone case", "Smart Phone", "Headphones");
+    assertThat(names("", 7)).containsExactly("Smart Phone", "Phone case", "Headphones", "Android");
+    assertThat(store.search(null, 0, 0, 100).toBlocking().value().getInteger("total")).isEqualTo(6);
+  }
+
+  @Test
+  public void testPaginates() {
+    JsonObject page = store.search("phone", 0, 1, 2).toBlocking().value();
+
+    assertThat(page.getInteger("total")).isEqualTo(5);
+    assertThat(page.getInteger("offset")).isEqualTo(1);
+    assertThat(names(page)).containsExactly("Phone case", "Smart Phone");
+    assertThat(names(store.search("", 7, 2, 10).toBlocking().value())).containsExactly("Headphones", "Android");
+    assertThat(names(store.search("phone", 0, 5, 2).toBlocking().value())).isEmpty();
+  }
+
+  @Test
+  public void testFollowsWrites() {
+    long id = store.create(new JsonObject().put("name", "Cordless phone").put("stock", 3)).toBlocking().value()
+      .getLong("id");
+    assertThat(names("cordless")).containsExactly("Cordless phone");
+
+    store.update(id, new JsonObject().put("name", "Wired phone")).await();
+    assertThat(names("cordless")).isEmpty();
+    assertThat(names("wired", 1)).isEmpty();
+
+    store.adjustStock(id, 5).toBlocking().value();
+    assertThat(names("wired", 5)).containsExactly("Wired phone");
+
+    store.delete(id).await();
+    assertThat(names("wired")).isEmpty();
+  }
+
+  @Test
+  public void testReloadsWhenInvalidated() {
+    // Not seen by the indexes.
+    delegate.create(new JsonObject().put("name", "Phone charger").put("stock", 1)).toBlocking().value();
+    assertThat(names("charger")).isEmpty();
+
+    store.invalidate();
+
+    assertThat(names("charger")).containsExactly("Phone charger");
+  }
+
+  @Test
+  public void testSharesTheLoadAndReplaysTheWritesMeanwhile() {
+    SlowStore slow = new SlowStore();
+    SearchIndexStore indexed = new SearchIndexStore(slow);
+    slow.create(new JsonObject().put("name", "Phone").put("stock", 1)).toBlocking().value();
+    long headphones = slow.create(new JsonObject().put("name", "Headphones").put("stock", 1)).toBlocking().value()
+      .getLong("id");
+
+    AssertableSubscriber<JsonObject> first = indexed.search("phone", 0, 0, 10).test();
+    AssertableSubscriber<JsonObject> second = indexed.search("phone", 0, 0, 10).test();
+    // Completed after the products were read.
+    indexed.create(new JsonObject().put("name", "Phone case").put("stock", 1)).toBlocking().value();
+    indexed.delete(headphones).await();
+    slow.released.onNext(true);
+
+    assertThat(slow.loads).isEqualTo(1);
+    assertThat(names(first.assertCompleted().getOnNextEvents().get(0))).containsExactly("Phone", "Phone case");
+    assertThat(names(second.assertCompleted().getOnNextEvents().get(0))).containsExactly("Phone", "Phone case");
+    // Installed.
+    assertThat(names(indexed.search("phone", 0, 0, 10).toBlocking().value())).containsExactly("Phone", "Phone case");
+    assertThat(slow.loads).isEqualTo(1);
+  }
+
+  @Test
+  public void testServesTheInstalledIndexesDuringARefresh() {
+    SlowStore slow = new SlowStore();
+    SearchIndexStore indexed = new SearchIndexStore(slow);
+    slow.create(new JsonObject().put("name", "Phone").put("stock", 1)).toBlocking().value();
+    AssertableSubscriber<Void> load = indexed.load().test();
+    slow.released.onNext(true);
+    load.assertCompleted();
+    // Not seen by the indexes.
+    slow.create(new JsonObject().put("name", "Phone charger").put("stock", 1)).toBlocking().value();
+
+    AssertableSubscriber<Void> refresh = indexed.refresh().test();
+    indexed.create(new JsonObject().put("name", "Phone case").put("stock", 1)).toBlocking().value();
+
+    refresh.assertNotCompleted();
+    assertThat(names(indexed.search("phone", 0, 0, 10).toBlocking().value())).containsExactly("Phone", "Phone case");
+    slow.released.onNext(true);
+    refresh.assertCompleted();
+    assertThat(names(indexed.search("phone", 0, 0, 10).toBlocking().value()))
+      .containsExactly("Phone", "Phone case", "Phone charger");
+    assertThat(slow.loads).isEqualTo(2);
+  }
+
+  private List<String> names(String query) {
+    return names(query, 0);
+  }
+
+  private List<String> names(String query, long minStock) {
+    return names(store.search(query, minStock, 0, 100).toBlocking().value());
+  }
+
+  private static List<String> names(JsonObject page) {
+    return page.getJsonArray("products").stream()
+      .map(product -> ((JsonObject) product).getString("name"))
+      .collect(Collectors.toList());
+  }
+
+  private void create(String name, long stock) {
+    store.create(new JsonObject().put("name", name).put("stock", stock)).toBlocking().value();
+  }
+
+  /**
+   * Reads the products when subscribed to, and emits them once released, as a slow database would.
+   */
+  private static final class SlowStore extends InMemoryProductStore {
+    private final PublishSubject<Boolean> released = PublishSubject.create();
+    private int loads;
+
+    @Override
+    public Observable<JsonObject> readAll() {
+      loads++;
+      return super.readAll().toList().zipWith(released, (all, ignored) -> all).flatMap(Observable::from);
+    }
+  }
+}
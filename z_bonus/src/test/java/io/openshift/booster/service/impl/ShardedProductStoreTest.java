@@ -0,0 +1,188 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.rxjava.core.Vertx;
+import io.vertx.rxjava.ext.jdbc.JDBCClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import rx.Completable;
+import rx.Observable;
+import rx.observers.TestSubscriber;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks the sharded store against three H2 databases. H2 has no {@code UPDATE ... RETURNING}, so the stock
+ * adjustments are left to the PostgreSQL tests.
+ */
+public class ShardedProductStoreTest {
+
+  private Vertx vertx;
+  // The JDBC URLs of the shards, by name.
+  private final Map<String, String> urls = new HashMap<>();
+  private final Map<String, JdbcProductStore> shards = new LinkedHashMap<>();
+
+  @Before
+  public void setUp() throws Exception {
+    vertx = Vertx.vertx();
+    for (String name : new String[]{"a", "b", "c"}) {
+      shards.put(name, new JdbcProductStore(client(name)));
+    }
+  }
+
+  @After
+  public void tearDown() {
+    vertx.close();
+  }
+
+  @Test
+  public void testSpreadsTheProductsOverTheShards() throws Exception {
+    ShardedProductStore store = new ShardedProductStore(shards, new SnowflakeIdGenerator(1));
+
+    List<Long> ids = create(store, 300);
+
+    for (String name : shards.keySet()) {
+      assertThat(ids(name).size()).isBetween(50, 150);
+    }
+    List<Long> all = store.readAll().map(json -> json.getLong("id")).toList().toBlocking().single();
+    assertThat(all).isEqualTo(ids.stream().sorted().collect(Collectors.toList()));
+    assertThat(store.read(ids.get(42)).toBlocking().value().getString("name")).isEqualTo("p42");
+    assertThat(store.readMany(Arrays.asList(ids.get(1), ids.get(2), 1L)).map(json -> json.getString("name"))
+      .toList().toBlocking().single()).containsOnly("p1", "p2");
+  }
+
+  @Test
+  public void testWritesToTheOwner() {
+    ShardedProductStore store = new ShardedProductStore(shards, new SnowflakeIdGenerator(1));
+    long id = create(store, 1).get(0);
+
+    store.update(id, new JsonObject().put("name", "updated").put("stock", 5)).await();
+    assertThat(store.read(id).toBlocking().value().getString("name")).isEqualTo("updated");
+    store.delete(id).await();
+
+    assertThat(store.read(id).toCompletable().get()).isInstanceOf(NoSuchElementException.class);
+    assertThat(store.delete(id).get()).isInstanceOf(NoSuchElementException.class);
+    assertThat(store.update(id, new JsonObject().put("name", "gone")).get())
+      .isInstanceOf(NoSuchElementException.class);
+  }
+
+  @Test
+  public void testMergesInIdOrder() {
+    List<Observable<JsonObject>> sources = Arrays.asList(
+      products(1, 4, 9), products(), products(2, 3, 10, 11), products(5));
+
+    List<Long> merged = ShardedProductStore.mergeById(sources).map(json -> json.getLong("id"))
+      .toList().toBlocking().single();
+
+    assertThat(merged).containsExactly(1L, 2L, 3L, 4L, 5L, 9L, 10L, 11L);
+    assertThat(ShardedProductStore.mergeById(Collections.emptyList()).isEmpty().toBlocking().single()).isTrue();
+  }
+
+  @Test
+  public void testMergesOnlyTheRequestedProducts() {
+    List<Observable<JsonObject>> sources = Arrays.asList(products(1, 4, 9), products(2, 3, 10, 11));
+    TestSubscriber<Long> subscriber = TestSubscriber.create(0);
+
+    ShardedProductStore.mergeById(sources).map(json -> json.getLong("id")).subscribe(subscriber);
+    subscriber.assertNoValues();
+    subscriber.requestMore(3);
+    subscriber.assertValues(1L, 2L, 3L);
+    subscriber.assertNotCompleted();
+    subscriber.requestMore(Long.MAX_VALUE);
+    subscriber.assertValues(1L, 2L, 3L, 4L, 9L, 10L, 11L);
+    subscriber.assertCompleted();
+  }
+
+  @Test
+  public void testReshardsWhileWriting() throws Exception {
+    Map<String, JdbcProductStore> two = new LinkedHashMap<>(shards);
+    two.remove("c");
+    ShardedProductStore store = new ShardedProductStore(two, new SnowflakeIdGenerator(1));
+    List<Long> ids = create(store, 200);
+
+    // Each product gets one more stock, and a few are deleted or created, while moving to three shards.
+    Completable writes = Observable.range(0, ids.size())
+      .flatMap(i -> i % 10 == 0 ? store.delete(ids.get(i)).<Object>toObservable() : store.update(ids.get(i),
+        new JsonObject().put("name", "p" + i).put("stock", 11)).<Object>toObservable(), 4)
+      .mergeWith(Observable.range(200, 20)
+        .concatMap(i -> store.create(new JsonObject().put("name", "p" + i).put("stock", 10)).<Object>map(json -> json)
+          .toObservable()))
+      .toCompletable();
+    Completable.merge(writes, store.reshard(shards)).await();
+
+    assertThat(store.shards()).containsExactly("a", "b", "c");
+    List<JsonObject> all = store.readAll().toList().toBlocking().single();
+    assertThat(all).hasSize(200 - 20 + 20);
+    for (JsonObject product : all) {
+      int index = Integer.parseInt(product.getString("name").substring(1));
+      assertThat(product.getLong("stock")).as(product.encode()).isEqualTo(index < 200 ? 11 : 10);
+    }
+    // Each product is held by its owner only.
+    int held = 0;
+    for (String name : shards.keySet()) {
+      held += ids(name).size();
+    }
+    assertThat(held).isEqualTo(all.size());
+    assertThat(ids("c").size()).isBetween(30, 110);
+  }
+
+  private static List<Long> create(ShardedProductStore store, int count) {
+    return Observable.range(0, count)
+      .concatMap(i -> store.create(new JsonObject().put("name", "p" + i).put("stock", 10)).toObservable())
+      .map(json -> json.getLong("id"))
+      .toList().toBlocking().single();
+  }
+
+  private static Observable<JsonObject> products(long... ids) {
+    List<JsonObject> products = new ArrayList<>();
+    for (long id : ids) {
+      products.add(new JsonObject().put("id", id));
+    }
+    return Observable.from(products);
+  }
+
+  private List<Long> ids(String shard) throws Exception {
+    List<Long> ids = new ArrayList<>();
+    try (Connection conn = DriverManager.getConnection(urls.get(shard), "user", "password");
+         Statement statement = conn.createStatement();
+         ResultSet rs = statement.executeQuery("SELECT id FROM products")) {
+      while (rs.next()) {
+        ids.add(rs.getLong(1));
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * @return the client of a new shard, with lower case labels as PostgreSQL
+   */
+  private JDBCClient client(String name) throws Exception {
+    String url = "jdbc:h2:mem:shard-" + name + "-" + System.nanoTime()
+      + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1;DATABASE_TO_UPPER=FALSE";
+    try (Connection conn = DriverManager.getConnection(url, "user", "password");
+         Statement statement = conn.createStatement()) {
+      statement.execute("CREATE TABLE products (id BIGINT PRIMARY KEY, name VARCHAR(40) NOT NULL, stock BIGINT)");
+    }
+    urls.put(name, url);
+    return JDBCClient.createShared(vertx, new JsonObject()
+      .put("url", url)
+      .put("driver_class", "org.h2.Driver")
+      .put("user", "user")
+      .put("password", "password"), "shard-" + name);
+  }
+}
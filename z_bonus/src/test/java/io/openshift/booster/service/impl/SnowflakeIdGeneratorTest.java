@@ -0,0 +1,83 @@
+package io.openshift.booster.service.impl;
+
+import io.vertx.core.Vertx;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class SnowflakeIdGeneratorTest {
+
+  @Test
+  public void testIncreasesWithinAndAcrossMilliseconds() {
+    AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH + 1000);
+    SnowflakeIdGenerator ids = new SnowflakeIdGenerator(5, clock::get);
+
+    long first = ids.next();
+    long second = ids.next();
+    clock.incrementAndGet();
+    long third = ids.next();
+
+    assertThat(second).isEqualTo(first + 1);
+    assertThat(third).isGreaterThan(second);
+    assertThat(first >>> 22).isEqualTo(1000);
+    assertThat(SnowflakeIdGenerator.worker(first)).isEqualTo(5);
+  }
+
+  @Test
+  public void testRunsAheadOfTheClockInsteadOfWaiting() {
+    AtomicLong clock = new AtomicLong(SnowflakeIdGenerator.EPOCH + 1000);
+    SnowflakeIdGenerator ids = new SnowflakeIdGenerator(1, clock::get);
+
+    long last = -1;
+    for (int i = 0; i < 3 * 4096; i++) {
+      long id = ids.next();
+      assertThat(id).isGreaterThan(last);
+      last = id;
+    }
+    assertThat(last >>> 22).isEqualTo(1002);
+
+    // Neither does the clock going back repeat ids.
+    clock.addAndGet(-500);
+    assertThat(ids.next()).isGreaterThan(last);
+  }
+
+  @Test
+  public void testSeparatesTheWorkers() {
+    AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+
+    long a = new SnowflakeIdGenerator(0, clock::get).next();
+    long b = new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER, clock::get).next();
+
+    assertThat(a).isNotEqualTo(b);
+    assertThat(SnowflakeIdGenerator.worker(b)).isEqualTo(SnowflakeIdGenerator.MAX_WORKER);
+    assertThatThrownBy(() -> new SnowflakeIdGenerator(SnowflakeIdGenerator.MAX_WORKER + 1))
+      .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  public void testSharesTheGeneratorOfAWorker() {
+    Vertx vertx = Vertx.vertx();
+    try {
+      SnowflakeIdGenerator ids = SnowflakeIdGenerator.create(vertx, 7);
+
+      assertThat(SnowflakeIdGenerator.create(vertx, 7)).isSameAs(ids);
+      assertThat(SnowflakeIdGenerator.create(vertx, 8)).isNotSameAs(ids);
+    } finally {
+      vertx.close();
+    }
+  }
+
+  @Test
+  public void testReadsTheOrdinalOfStatefulSetPods() {
+    assertThat(SnowflakeIdGenerator.podOrdinal("crud-vertx-0")).isEqualTo(0);
+    assertThat(SnowflakeIdGenerator.podOrdinal("crud-vertx-12")).isEqualTo(12);
+    // Deployment and deployment config pods.
+    assertThat(SnowflakeIdGenerator.podOrdinal("crud-vertx-5d8f7c9b4-24567")).isEqualTo(-1);
+    assertThat(SnowflakeIdGenerator.podOrdinal("crud-vertx-1-x7k2p")).isEqualTo(-1);
+    assertThat(SnowflakeIdGenerator.podOrdinal("")).isEqualTo(-1);
+    assertThat(SnowflakeIdGenerator.podOrdinal("localhost")).isEqualTo(-1);
+  }
+}